@@ -0,0 +1,195 @@
+package org.rdswitchboard.utils.neo4j.sync.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.graphdb.factory.GraphDatabaseSettings;
+import org.rdswitchboard.utils.neo4j.sync.enums.Types;
+
+/**
+ * Throwaway embedded database with nodes of the Research Graph schema, used as a benchmark fixture.
+ * <p>
+ * Every node has a unique key and DOI, researchers have a unique ORCID instead of a DOI. 
+ * Relationship endpoints are skewed towards the first nodes, so the degree distribution 
+ * follows a power law with a few hubs and a long tail of nodes with few relationships.
+ */
+public class BenchmarkGraph {
+	public static final String PROPERTY_KEY = "key";
+	public static final String PROPERTY_SOURCE = "source";
+	public static final String PROPERTY_TYPE = "type";
+	public static final String PROPERTY_DOI = "doi";
+	public static final String PROPERTY_ORCID = "orcid";
+	
+	public static final RelationshipType RELATED_TO = RelationshipType.withName("relatedTo");
+	
+	public static final Label[] TYPES = { Types.publication, Types.dataset, Types.grant, Types.researcher };
+	
+	private static final String PAGE_CACHE = "256m";
+	private static final int CHUNK_SIZE = 10000;
+	
+	private final Path folder;
+	private final GraphDatabaseService graphDb;
+	
+	/**
+	 * Creates an empty database in a new temporary folder
+	 * 
+	 * @param name prefix of the folder name
+	 */
+	public BenchmarkGraph(String name) throws IOException {
+		this.folder = Files.createTempDirectory(name);
+		this.graphDb = new GraphDatabaseFactory()
+				.newEmbeddedDatabaseBuilder(folder.toFile())
+				.setConfig(GraphDatabaseSettings.pagecache_memory, PAGE_CACHE)
+				.newGraphDatabase();
+	}
+	
+	public GraphDatabaseService getGraphDb() {
+		return graphDb;
+	}
+	
+	/**
+	 * Creates nodes and relationships between them
+	 * 
+	 * @param source source name stored in every node
+	 * @param nodes number of nodes
+	 * @param relationships number of relationships
+	 * @param skew skew of relationship endpoints, 1 for uniform degrees, higher values create bigger hubs
+	 * @param properties number of additional string properties of every node
+	 * @param seed random seed
+	 * @return id of the first created node, the rest of nodes have consecutive ids
+	 */
+	public long populate(String source, int nodes, int relationships, double skew, int properties, long seed) {
+		Random random = new Random(seed);
+		long first = -1;
+		
+		for (int start = 0; start < nodes; start += CHUNK_SIZE) 
+			try (Transaction tx = graphDb.beginTx()) {
+				for (int i = start; i < nodes && i < start + CHUNK_SIZE; ++i) {
+					Node node = createNode(source, i, properties);
+					if (first < 0)
+						first = node.getId();
+				}
+				
+				tx.success();
+			}
+		
+		for (int start = 0; start < relationships; start += CHUNK_SIZE) 
+			try (Transaction tx = graphDb.beginTx()) {
+				for (int i = start; i < relationships && i < start + CHUNK_SIZE; ++i) {
+					long from = first + (long) (Math.pow(random.nextDouble(), skew) * nodes);
+					long to = first + random.nextInt(nodes);
+					if (from != to)
+						graphDb.getNodeById(from).createRelationshipTo(graphDb.getNodeById(to), RELATED_TO);
+				}
+				
+				tx.success();
+			}
+		
+		return first;
+	}
+	
+	/**
+	 * Creates a node related to the given number of new nodes
+	 * 
+	 * @param degree number of relationships of the hub
+	 * @return id of the hub node
+	 */
+	public long createHub(int degree) {
+		long hub;
+		try (Transaction tx = graphDb.beginTx()) {
+			hub = createNode("hub", -1, 0).getId();
+			
+			tx.success();
+		}
+		
+		for (int start = 0; start < degree; start += CHUNK_SIZE) 
+			try (Transaction tx = graphDb.beginTx()) {
+				Node node = graphDb.getNodeById(hub);
+				for (int i = start; i < degree && i < start + CHUNK_SIZE; ++i) 
+					node.createRelationshipTo(createNode("hub", i, 0), RELATED_TO);
+				
+				tx.success();
+			}
+		
+		return hub;
+	}
+	
+	/**
+	 * Creates indexes of the property on all node types and waits until they are online
+	 * 
+	 * @param property property name
+	 */
+	public void createIndexes(String property) {
+		try (Transaction tx = graphDb.beginTx()) {
+			for (Label type : TYPES)
+				graphDb.schema().indexFor(type).on(property).create();
+			
+			tx.success();
+		}
+		
+		try (Transaction ignored = graphDb.beginTx()) {
+			graphDb.schema().awaitIndexesOnline(1, TimeUnit.HOURS);
+		}
+	}
+	
+	/**
+	 * Shuts the database down and removes its folder
+	 */
+	public void close() throws IOException {
+		graphDb.shutdown();
+		
+		FileUtils.deleteDirectory(folder.toFile());
+	}
+	
+	/**
+	 * @param n node number
+	 * @return DOI of the n-th node which is not a researcher
+	 */
+	public static String getDoi(int n) {
+		return "10.1000/" + n;
+	}
+
+	/**
+	 * @param n node number
+	 * @return ORCID of the n-th node which is a researcher
+	 */
+	public static String getOrcid(int n) {
+		return String.format("0000-0001-%04d-%04d", n / 10000, n % 10000);
+	}
+	
+	/**
+	 * @param n node number
+	 * @return type of the n-th node
+	 */
+	public static Label getType(int n) {
+		return TYPES[n % TYPES.length];
+	}
+	
+	private Node createNode(String source, int n, int properties) {
+		Label type = getType(Math.max(n, 0));
+		
+		Node node = graphDb.createNode(type, Label.label(source));
+		node.setProperty(PROPERTY_KEY, source + "/" + type.name() + "/" + n);
+		node.setProperty(PROPERTY_SOURCE, source);
+		node.setProperty(PROPERTY_TYPE, type.name());
+		if (type.equals(Types.researcher))
+			node.setProperty(PROPERTY_ORCID, getOrcid(n));
+		else
+			node.setProperty(PROPERTY_DOI, getDoi(n));
+		
+		for (int i = 0; i < properties; ++i)
+			node.setProperty("property_" + i, "Value of the property " + i + " of the node " + n);
+		
+		return node;
+	}
+}
@@ -0,0 +1,97 @@
+package org.rdswitchboard.utils.neo4j.sync.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rdswitchboard.utils.neo4j.sync.match.HashJoinMatcher;
+import org.rdswitchboard.utils.neo4j.sync.match.IndexMatcher;
+import org.rdswitchboard.utils.neo4j.sync.match.Matcher;
+
+/**
+ * Lookups per second of a destination value in the source database, as done by matchNode 
+ * for every value of every key. Half of the looked up values have no match.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MatcherBenchmark {
+	private static final long MATCH_MEMORY = 1L << 30;
+	
+	@Param({ "index", "hash" })
+	public String matcher;
+	
+	@Param({ "100000" })
+	public int nodes;
+	
+	private BenchmarkGraph graph;
+	private Matcher instance;
+	
+	@State(Scope.Thread)
+	public static class Lookup {
+		private Transaction tx;
+		private final List<Long> matches = new ArrayList<Long>();
+		private int next;
+		
+		@Setup(Level.Iteration)
+		public void begin(MatcherBenchmark benchmark) {
+			tx = benchmark.graph.getGraphDb().beginTx();
+		}
+		
+		@TearDown(Level.Iteration)
+		public void end() {
+			tx.close();
+		}
+	}
+	
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		graph = new BenchmarkGraph("matcher_");
+		graph.populate("nexus", nodes, 0, 1, 0, 1);
+		graph.createIndexes(BenchmarkGraph.PROPERTY_DOI);
+		
+		if (matcher.equals("hash"))
+			instance = new HashJoinMatcher(graph.getGraphDb(), Arrays.asList(BenchmarkGraph.TYPES), 
+					Arrays.asList(BenchmarkGraph.PROPERTY_DOI), MATCH_MEMORY);
+		else
+			instance = new IndexMatcher(graph.getGraphDb());
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		graph.close();
+	}
+
+	@Benchmark
+	public int lookup(Lookup lookup) {
+		// nodes with the numbers beyond the graph size are looked up to measure misses
+		int n = lookup.next;
+		lookup.next = (n + 7919) % (nodes * 2);
+		
+		Label type = BenchmarkGraph.getType(n);
+		lookup.matches.clear();
+		instance.match(type, BenchmarkGraph.PROPERTY_DOI, BenchmarkGraph.getDoi(n), lookup.matches);
+		
+		return lookup.matches.size();
+	}
+}
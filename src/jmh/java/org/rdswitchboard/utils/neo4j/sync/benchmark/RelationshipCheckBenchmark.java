@@ -0,0 +1,121 @@
+package org.rdswitchboard.utils.neo4j.sync.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rdswitchboard.utils.neo4j.sync.collections.LongArrayAllocator;
+import org.rdswitchboard.utils.neo4j.sync.collections.LongPairSet;
+
+/**
+ * Cost of checking whether two nodes are related against the degree of the node, as done before 
+ * every relationship is created. The scan checks every relationship of the node like the original 
+ * isRelated, the lookup checks the in-run pair set, which is seeded once per node.
+ * Half of the checked pairs are related.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class RelationshipCheckBenchmark {
+	private static final long HEAP_BUDGET = 1L << 30;
+	
+	@Param({ "10", "100", "1000", "10000" })
+	public int degree;
+	
+	private BenchmarkGraph graph;
+	private LongArrayAllocator allocator;
+	private LongPairSet related;
+	private Transaction tx;
+	private Node hub;
+	private long[] candidates;
+	private int next;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		graph = new BenchmarkGraph("related_");
+		long hubId = graph.createHub(degree);
+		
+		allocator = new LongArrayAllocator(HEAP_BUDGET, Paths.get(System.getProperty("java.io.tmpdir")));
+		related = new LongPairSet(allocator);
+		
+		tx = graph.getGraphDb().beginTx();
+		hub = graph.getGraphDb().getNodeById(hubId);
+		
+		// related neighbours interleaved with ids of nodes which do not exist
+		candidates = new long[degree * 2];
+		int n = 0;
+		for (Relationship rel : hub.getRelationships()) {
+			long other = rel.getOtherNodeId(hubId);
+			related.add(Math.min(hubId, other), Math.max(hubId, other));
+			
+			candidates[n++] = other;
+			candidates[n++] = Long.MAX_VALUE - n;
+		}
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		related.close();
+		tx.close();
+		graph.close();
+	}
+	
+	@Benchmark
+	public boolean scan() {
+		long to = nextCandidate();
+		
+		for (Relationship rel : hub.getRelationships())
+			if (rel.getOtherNodeId(hub.getId()) == to)
+				return true;
+		
+		return false;
+	}
+
+	@Benchmark
+	public boolean lookup() {
+		long to = nextCandidate();
+		long from = hub.getId();
+		
+		return related.contains(Math.min(from, to), Math.max(from, to));
+	}
+	
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public long seed() throws IOException {
+		try (LongPairSet set = new LongPairSet(allocator)) {
+			long from = hub.getId();
+			for (Relationship rel : hub.getRelationships()) {
+				long other = rel.getOtherNodeId(from);
+				set.add(Math.min(from, other), Math.max(from, other));
+			}
+			
+			return set.size();
+		}
+	}
+	
+	private long nextCandidate() {
+		long candidate = candidates[next];
+		next = (next + 1) % candidates.length;
+		
+		return candidate;
+	}
+}
@@ -0,0 +1,102 @@
+package org.rdswitchboard.utils.neo4j.sync.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rdswitchboard.utils.neo4j.sync.output.TransactionalWriter;
+
+/**
+ * Throughput of copying source nodes with their properties and creating relationships in the 
+ * target database through the transactional writer. Writes are rolled back in batches, 
+ * so the target does not grow during the benchmark, and the rollback cost is included.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class WriterBenchmark {
+	private static final int SOURCE_NODES = 10000;
+	private static final int TARGET_NODES = 10000;
+	private static final int BATCH_SIZE = 1000;
+	
+	@Param({ "5", "20", "50" })
+	public int properties;
+	
+	private BenchmarkGraph source;
+	private BenchmarkGraph target;
+	private long firstSource;
+	private long firstTarget;
+	
+	private Transaction srcTx;
+	private Transaction dstTx;
+	private TransactionalWriter writer;
+	private int batch;
+	private int next;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		source = new BenchmarkGraph("source_");
+		firstSource = source.populate("nexus", SOURCE_NODES, 0, 1, properties, 1);
+		
+		target = new BenchmarkGraph("target_");
+		firstTarget = target.populate("client", TARGET_NODES, 0, 1, 0, 2);
+		
+		srcTx = source.getGraphDb().beginTx();
+		dstTx = target.getGraphDb().beginTx();
+		writer = new TransactionalWriter(target.getGraphDb());
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		dstTx.close();
+		srcTx.close();
+		target.close();
+		source.close();
+	}
+	
+	@Benchmark
+	public long copyNode() {
+		Node node = source.getGraphDb().getNodeById(firstSource + next);
+		next = (next + 1) % SOURCE_NODES;
+		
+		long id = writer.createNode(node);
+		rollbackBatch();
+		
+		return id;
+	}
+
+	@Benchmark
+	public void createRelationship() {
+		long from = firstTarget + next;
+		long to = firstTarget + (next * 31 + 17) % TARGET_NODES;
+		next = (next + 1) % TARGET_NODES;
+		
+		writer.createRelationship(from, to, BenchmarkGraph.RELATED_TO);
+		rollbackBatch();
+	}
+	
+	private void rollbackBatch() {
+		if (++batch == BATCH_SIZE) {
+			dstTx.close();
+			dstTx = target.getGraphDb().beginTx();
+			batch = 0;
+		}
+	}
+}
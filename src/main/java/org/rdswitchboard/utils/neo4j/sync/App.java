@@ -1,18 +1,20 @@
 package org.rdswitchboard.utils.neo4j.sync;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -20,25 +22,35 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.apache.commons.lang.StringUtils;
+import org.rdswitchboard.utils.neo4j.sync.s3.MultipartOutputStream;
+import org.rdswitchboard.utils.neo4j.sync.s3.ParallelRangeInputStream;
+import org.rdswitchboard.utils.neo4j.sync.s3.PartDigest;
+import org.rdswitchboard.utils.neo4j.sync.s3.RangeSource;
+import org.rdswitchboard.utils.neo4j.sync.s3.S3PartTarget;
 import org.rdswitchboard.utils.neo4j.sync.s3.S3Path;
+import org.rdswitchboard.utils.neo4j.sync.s3.S3RangeSource;
+import org.rdswitchboard.utils.neo4j.sync.stage.FolderStager;
+import org.rdswitchboard.utils.neo4j.sync.zip.ParallelZipExtractor;
+import org.rdswitchboard.utils.neo4j.sync.zip.ParallelZipWriter;
 
 import com.amazonaws.auth.InstanceProfileCredentialsProvider;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3Client;
-import com.amazonaws.services.s3.model.GetObjectRequest;
-import com.amazonaws.services.s3.model.ObjectMetadata;
-import com.amazonaws.services.s3.model.PutObjectRequest;
-import com.amazonaws.services.s3.model.S3Object;
 
 public class App {
-	private static final String DEF_PATH_TMP = "tmp";
+	private static final int BUFFER_SIZE = 64 * 1024;
 	private static final String DEF_PATH_ZIP = ".zip";
 	private static final String DEF_SYNC_HOME = "sync";
 	private static final String DEF_SYNC_PREFIX = "sync_";
@@ -46,11 +58,65 @@ public class App {
 	private static final String DEF_SYNC_LEVEL = "3";	
 	private static final String DEF_SOURCE_DB = "neo4j-source";
 	private static final String DEF_TARGET_DB = "neo4j-target";
+	private static final String DEF_DOWNLOAD_THREADS = "4";
+	private static final String DEF_DOWNLOAD_PART = "16";
+	private static final String DEF_UPLOAD_THREADS = "4";
+	private static final String DEF_UPLOAD_PART = "16";
+	private static final String DEF_ZIP_LEVEL = "6";
+	private static final String DEF_ZIP_BLOCK = "1024";
+	private static final String DEF_STAGE_THREADS = "4";
+	private static final String DEF_TARGET_THREADS = "1";
 
 
 	private static Path work;	
 	private static Set<String> keys; 
 	private static AmazonS3 s3client;
+	private static int downloadThreads;
+	private static int downloadPart;
+	private static int uploadThreads;
+	private static int uploadPart;
+	private static int zipThreads;
+	private static int zipLevel;
+	private static int zipBlock;
+	private static List<PathMatcher> zipStore;
+	private static int unzipThreads;
+	private static String stageMode;
+	private static int stageThreads;
+	
+	/**
+	 * Target database with its staged folder, published drop and configuration
+	 */
+	public static class Job {
+		private String target;
+		private Path targetDb;
+		private String drop;
+		private Properties properties;
+		private Process process;
+		
+		public String getTarget() {
+			return target;
+		}
+		
+		public Path getTargetDb() {
+			return targetDb;
+		}
+		
+		public String getDrop() {
+			return drop;
+		}
+		
+		public Properties getProperties() {
+			return properties;
+		}
+		
+		public Process getProcess() {
+			return process;
+		}
+		
+		public void setProcess(Process process) {
+			this.process = process;
+		}
+	}
 
 	public static void main(String[] args) {
 		try {
@@ -66,12 +132,28 @@ public class App {
 	        String source = properties.getProperty(Configuration.PROPERTY_SYNC_SOURCE);
 	        if (StringUtils.isEmpty(source))
 	            throw new IllegalArgumentException("Source Neo4j can not be empty");
-	        System.out.println("Nexus Neo4j: " + source);
+	        // several sources are matched in one scan, the first source listed wins shared keys
+	        List<String> sources = new ArrayList<String>();
+	        for (String s : StringUtils.split(source, ','))
+	        	if (!s.trim().isEmpty())
+	        		sources.add(s.trim());
+	        for (String s : sources)
+	        	System.out.println("Nexus Neo4j: " + s);
 
 	        String target = properties.getProperty(Configuration.PROPERTY_SYNC_TARGET);
 	        if (StringUtils.isEmpty(target))
 	            throw new IllegalArgumentException("Target Neo4j can not be empty");
-	        System.out.println("Input Neo4j: " + target);
+	        // several targets are augmented from one staged and opened source
+	        List<String> targets = new ArrayList<String>();
+	        for (String t : StringUtils.split(target, ','))
+	        	if (!t.trim().isEmpty())
+	        		targets.add(t.trim());
+	        for (String t : targets)
+	        	System.out.println("Input Neo4j: " + t);
+
+	        int targetThreads = Integer.parseInt(properties.getProperty(Configuration.PROPERTY_SYNC_TARGET_THREADS, DEF_TARGET_THREADS));
+	        if (targetThreads < 1)
+	            throw new IllegalArgumentException("sync.target.threads must be a positive number");
 
 	        String bucket = properties.getProperty(Configuration.PROPERTY_SYNC_BUCKET);
 	        
@@ -80,6 +162,8 @@ public class App {
 
             int syncLevel = Integer.parseInt(properties.getProperty(Configuration.PROPERTY_SYNC_LEVEL, DEF_SYNC_LEVEL));
 
+            configure(properties);
+
             String keysList = properties.getProperty(Configuration.PROPERTY_SYNC_KEYS, DEF_KEYS_LIST);
             System.out.println("KeyList:" + keysList );
 
@@ -109,44 +193,44 @@ public class App {
             Files.createDirectories(home);
             work = Files.createTempDirectory(home, DEF_SYNC_PREFIX);
 
-            Path sourceDb;
-            Path targetDb;
+            List<Path> sourceDbs = new ArrayList<Path>();
 
             if (!StringUtils.isEmpty(bucket)) {
-                System.out.println("Output Neo4j: s3://" + bucket + "/" + drop + ".zip");
-
                 s3client = new AmazonS3Client(new InstanceProfileCredentialsProvider());
 
-                sourceDb = getPath(DEF_SOURCE_DB);
-                targetDb = getPath(DEF_TARGET_DB);
-
-                System.out.println("Install Nexus database");
-                downloadDatabase(source, sourceDb);
-
-                System.out.println("Install Input database");
-                downloadDatabase(target, targetDb);
+                for (int i = 0; i < sources.size(); ++i) {
+                    Path sourceDb = getPath(sources.size() > 1 ? DEF_SOURCE_DB + "-" + (i + 1) : DEF_SOURCE_DB);
 
+                    System.out.println("Install Nexus database " + sources.get(i));
+                    // the run writes indexes and normalized properties to the source, so it is always staged as a copy
+                    downloadDatabase(sources.get(i), sourceDb);
+                    sourceDbs.add(sourceDb);
+                }
             }else{
 
-                sourceDb = Paths.get(source);
-                targetDb = Paths.get(target);
-
+                for (String s : sources)
+                    sourceDbs.add(Paths.get(s));
             }
 
-            Process.synthesis(sourceDb, targetDb, keys, syncLevel);
-
-            if (!StringUtils.isEmpty(bucket)) {
-                System.out.println("Archive database");
+            List<Job> jobs = createJobs(targets, drop, bucket, properties);
+            for (Job job : jobs)
+                if (!StringUtils.isEmpty(bucket))
+                    System.out.println("Output Neo4j: s3://" + bucket + "/" + job.drop + ".zip");
 
-                Path zipFile = getPath(drop + ".zip");
-                zipFile(zipFile, targetDb, drop);
+            List<SourceGraph> sourceGraphs = new ArrayList<SourceGraph>();
+            try {
+                for (Path sourceDb : sourceDbs)
+                    sourceGraphs.add(new SourceGraph(sourceDb));
 
-                System.out.println("Publish database");
+                // configuration of every job is checked before any target is staged
+                for (Job job : jobs)
+                    job.setProcess(new Process(sourceGraphs, job.targetDb, keys, syncLevel, job.properties));
 
-                if (!StringUtils.isEmpty(bucket))
-                    uploadDatabase(zipFile, bucket);
+                syncTargets(jobs, bucket, targetThreads);
+            } finally {
+                for (SourceGraph sourceGraph : sourceGraphs)
+                    sourceGraph.close();
             }
-	        
 		} catch (Exception e) {
 			e.printStackTrace();
 			
@@ -154,6 +238,199 @@ public class App {
 		}
 	}
 
+	/**
+	 * Names the drop, the staged folder and the files written by the run of every target
+	 * 
+	 * @param targets target database locations
+	 * @param drop name of the published drop
+	 * @param bucket S3 bucket of the published drops, or null if targets are synthesized in place
+	 * @param properties configuration
+	 * @return target jobs
+	 */
+	public static List<Job> createJobs(List<String> targets, String drop, String bucket, Properties properties) {
+		List<Job> jobs = new ArrayList<Job>();
+		Set<String> names = new HashSet<String>();
+		for (String t : targets) {
+			Job job = new Job();
+			job.target = t;
+			job.properties = properties;
+
+			// a single target keeps the original drop and folder names
+			if (targets.size() > 1) {
+				String name = getTargetName(t);
+				for (int n = 2; !names.add(name); ++n)
+					name = getTargetName(t) + "-" + n;
+
+				job.drop = drop + "-" + name;
+				job.targetDb = StringUtils.isEmpty(bucket) ? Paths.get(t) : getPath(DEF_TARGET_DB + "-" + name);
+
+				// every target needs its own progress journal and report, an empty report disables it
+				job.properties = new Properties();
+				job.properties.putAll(properties);
+				for (String property : new String[] { Configuration.PROPERTY_SYNC_JOURNAL, Configuration.PROPERTY_SYNC_REPORT }) {
+					String file = properties.getProperty(property);
+					if (!StringUtils.isEmpty(file))
+						job.properties.setProperty(property, getTargetFile(file, name));
+				}
+				
+				// CSV files of every target are written into a folder of its own
+				String outputFolder = properties.getProperty(Configuration.PROPERTY_SYNC_OUTPUT_FOLDER);
+				if (!StringUtils.isEmpty(outputFolder))
+					job.properties.setProperty(Configuration.PROPERTY_SYNC_OUTPUT_FOLDER, Paths.get(outputFolder, name).toString());
+			} else {
+				job.drop = drop;
+				job.targetDb = StringUtils.isEmpty(bucket) ? Paths.get(t) : getPath(DEF_TARGET_DB);
+			}
+
+			jobs.add(job);
+		}
+
+		return jobs;
+	}
+
+	/**
+	 * Stages, synthesizes and publishes every target, either one after another or on several 
+	 * threads. A failure of one target does not stop the others.
+	 * 
+	 * @param jobs target jobs
+	 * @param bucket S3 bucket of the published drops, or null if targets are synthesized in place
+	 * @param threads number of targets processed at once
+	 */
+	public static void syncTargets(final List<Job> jobs, final String bucket, int threads) throws Exception {
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (final Job job : jobs)
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						if (!StringUtils.isEmpty(bucket)) {
+							System.out.println("Install Input database " + job.target);
+							downloadDatabase(job.target, job.targetDb);
+						}
+						
+						job.getProcess().run();
+						
+						if (!StringUtils.isEmpty(bucket)) {
+							System.out.println("Archive and publish database " + job.drop);
+							uploadDatabase(job.targetDb, bucket, job.drop);
+							
+							// staged copies of finished targets are not needed any more
+							if (jobs.size() > 1)
+								FileUtils.deleteDirectory(job.targetDb.toFile());
+						}
+						
+						return null;
+					}
+				}));
+		} finally {
+			executor.shutdown();
+		}
+		
+		int failed = 0;
+		for (int i = 0; i < futures.size(); ++i)
+			try {
+				futures.get(i).get();
+			} catch (ExecutionException e) {
+				System.out.println("Unable to sync " + jobs.get(i).target + ": " + e.getCause());
+				e.getCause().printStackTrace();
+				++failed;
+			}
+		
+		if (failed > 0)
+			throw new Exception("Unable to sync " + failed + " of " + jobs.size() + " targets");
+	}
+	
+	/**
+	 * @param target target database location
+	 * @return name of the target, the last element of its path without the zip extension
+	 */
+	private static String getTargetName(String target) {
+		String name = StringUtils.stripEnd(target, "/");
+		name = name.substring(name.lastIndexOf('/') + 1);
+		if (name.endsWith(DEF_PATH_ZIP))
+			name = name.substring(0, name.length() - DEF_PATH_ZIP.length());
+		
+		return name;
+	}
+	
+	/**
+	 * @param file file path
+	 * @param name target name
+	 * @return file path with the target name inserted before the extension of the file name
+	 */
+	private static String getTargetFile(String file, String name) {
+		int slash = Math.max(file.lastIndexOf('/'), file.lastIndexOf(File.separatorChar));
+		int dot = file.lastIndexOf('.');
+		
+		return dot > slash + 1 ? file.substring(0, dot) + "-" + name + file.substring(dot) : file + "-" + name;
+	}
+	
+	/**
+	 * Reads settings of staging, download, upload and archiving of databases
+	 * 
+	 * @param properties sync configuration
+	 */
+	public static void configure(Properties properties) {
+		downloadThreads = Integer.parseInt(properties.getProperty(Configuration.PROPERTY_SYNC_DOWNLOAD_THREADS, DEF_DOWNLOAD_THREADS));
+		if (downloadThreads < 1)
+			throw new IllegalArgumentException("sync.download.threads must be positive");
+
+		downloadPart = Integer.parseInt(properties.getProperty(Configuration.PROPERTY_SYNC_DOWNLOAD_PART, DEF_DOWNLOAD_PART)) * 1024 * 1024;
+		if (downloadPart < 1)
+			throw new IllegalArgumentException("sync.download.part must be positive");
+
+		uploadThreads = Integer.parseInt(properties.getProperty(Configuration.PROPERTY_SYNC_UPLOAD_THREADS, DEF_UPLOAD_THREADS));
+		if (uploadThreads < 1)
+			throw new IllegalArgumentException("sync.upload.threads must be positive");
+
+		uploadPart = Integer.parseInt(properties.getProperty(Configuration.PROPERTY_SYNC_UPLOAD_PART, DEF_UPLOAD_PART)) * 1024 * 1024;
+		if (uploadPart < MultipartOutputStream.MIN_PART_SIZE)
+			throw new IllegalArgumentException("sync.upload.part must be at least 5 MB");
+
+		zipThreads = Integer.parseInt(properties.getProperty(Configuration.PROPERTY_SYNC_ZIP_THREADS, 
+				String.valueOf(Runtime.getRuntime().availableProcessors())));
+		if (zipThreads < 1)
+			throw new IllegalArgumentException("sync.zip.threads must be positive");
+
+		zipLevel = Integer.parseInt(properties.getProperty(Configuration.PROPERTY_SYNC_ZIP_LEVEL, DEF_ZIP_LEVEL));
+		if (zipLevel < 0 || zipLevel > 9)
+			throw new IllegalArgumentException("sync.zip.level must be between 0 and 9");
+
+		zipBlock = Integer.parseInt(properties.getProperty(Configuration.PROPERTY_SYNC_ZIP_BLOCK, DEF_ZIP_BLOCK)) * 1024;
+		if (zipBlock < ParallelZipWriter.MIN_BLOCK_SIZE)
+			throw new IllegalArgumentException("sync.zip.block must be at least 64 KB");
+
+		unzipThreads = Integer.parseInt(properties.getProperty(Configuration.PROPERTY_SYNC_UNZIP_THREADS, 
+				String.valueOf(Runtime.getRuntime().availableProcessors())));
+		if (unzipThreads < 1)
+			throw new IllegalArgumentException("sync.unzip.threads must be positive");
+
+		stageMode = properties.getProperty(Configuration.PROPERTY_SYNC_STAGE, FolderStager.MODE_AUTO);
+		stageThreads = Integer.parseInt(properties.getProperty(Configuration.PROPERTY_SYNC_STAGE_THREADS, DEF_STAGE_THREADS));
+		if (stageThreads < 1)
+			throw new IllegalArgumentException("sync.stage.threads must be positive");
+
+		// comma separated file name patterns, like *.index,*.id, which are archived without compression
+		zipStore = new ArrayList<PathMatcher>();
+		for (String pattern : StringUtils.split(properties.getProperty(Configuration.PROPERTY_SYNC_ZIP_STORE, ""), ','))
+			if (!pattern.trim().isEmpty())
+				zipStore.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern.trim()));
+	}
+	
+	/**
+	 * Archives the database into a local zip file, the same way it is archived when published
+	 * 
+	 * @param input database folder
+	 * @param zipFile archive file
+	 * @param drop name of the root folder in the archive
+	 */
+	public static void archiveDatabase(Path input, Path zipFile, String drop) throws IOException {
+		try (OutputStream os = Files.newOutputStream(zipFile)) {
+			zipStream(os, input, drop);
+		}
+	}
+
 	private static boolean isZip(String path) {
 		return path.trim().toLowerCase().endsWith(DEF_PATH_ZIP);
 	}
@@ -170,153 +447,114 @@ public class App {
 		return Paths.get(work.toString(), path);
 	}
 
-	private static Path getTmpPath() {
-		return getPath(DEF_PATH_TMP);
-	}
-	
-	private static void downloadFileS3(S3Path path, Path output) throws FileNotFoundException, IOException {
-		S3Object object = s3client.getObject(new GetObjectRequest(path.getBucket(), path.getKey()));
-		byte[] buffer = new byte[1024];
-		int n;
-		
-		try (InputStream is = object.getObjectContent()) {
-			try (OutputStream os = new FileOutputStream(output.toFile())) {
-				while((n = is.read(buffer)) > 0) {
-				    os.write(buffer, 0, n); 
-				}
-			}
-		}	
-	}
-	
-	private static void zipFile(Path zipFile, Path input, String rootName) throws IOException {
-		try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipFile.toFile()))) {
-			zipEntry(zos, input, input, rootName);
+	private static void zipStream(OutputStream os, Path input, String rootName) throws IOException {
+		try (ParallelZipWriter zip = new ParallelZipWriter(new BufferedOutputStream(os, BUFFER_SIZE), zipLevel, zipThreads, zipBlock)) {
+			zipEntry(zip, input, input, rootName);
 		}
 	}
 	
-	private static void zipEntry(ZipOutputStream zos, Path root, Path source, String rootName) throws IOException {
+	private static void zipEntry(ParallelZipWriter zip, Path root, Path source, String rootName) throws IOException {
 		Path relative = root.relativize(source);
 		Path local = Paths.get(rootName, relative.toString());
 		
 		//System.out.println("zip: " + local);
 		
 		if (Files.isDirectory(source)) {
-			zos.putNextEntry(new ZipEntry(local.toString() + "/"));
+			zip.addDirectory(local.toString() + "/", Files.getLastModifiedTime(source).toMillis());
 			
 			File files[] = source.toFile().listFiles();
     		for (File file : files) 
-    			zipEntry(zos, root, file.toPath(), rootName);
-	    } else {
-			ZipEntry ze = new ZipEntry(local.toString());
-			zos.putNextEntry(ze);
-
-			try (InputStream in = new FileInputStream(source.toString())) {
-	    		byte[] buffer = new byte[1024];
-    			int n;
-    	        
-				//copy the file content in bytes 
-    			while ((n = in.read(buffer)) > 0) {
-        			zos.write(buffer, 0, n);
-        		}
-    		}
-	    	
-	    	zos.closeEntry();
-    	}
+    			zipEntry(zip, root, file.toPath(), rootName);
+	    } else 
+	    	zip.addFile(local.toString(), source, isStored(source));
+	}
+	
+	private static boolean isStored(Path file) {
+		for (PathMatcher matcher : zipStore)
+			if (matcher.matches(file.getFileName()))
+				return true;
+		
+		return false;
 	}
 	
 	private static void unzipFile(Path zipFile, Path output) throws IOException {
-		try (ZipInputStream zis = new ZipInputStream(new FileInputStream(zipFile.toFile()))) {
+		// local archives are read through the central directory, so the entries can be inflated in parallel
+		new ParallelZipExtractor(unzipThreads).extract(zipFile, Paths.get(getFolderName(zipFile.toFile().getName())), output);
+	}
+	
+	private static void unzipS3(S3Path path, Path output) throws IOException {
+		RangeSource source = new S3RangeSource(s3client, path);
+		String expected = source.getChecksum();
+		PartDigest digest = new PartDigest(source.getPartSize());
 		
-			Path base = Paths.get(getFolderName(zipFile.toFile().getName()));
-			byte[] buffer = new byte[1024];
-			Path file;
-			int n;
-
-			ZipEntry ze = zis.getNextEntry();
-			while (ze != null) {
-	        	file = Paths.get(ze.getName());
-				
-	        	if (file.toString().startsWith(base.toString()))
-					file = base.relativize(file);
-
-		      //  System.out.println("unzip : "+ file.toString());
-	        	
-				file = Paths.get(output.toString(), file.toString());
-
-		        if (ze.isDirectory()) 
-		        	Files.createDirectories(file);
-	        	else {
-		        	// create all non exists folders
-		        	// else you will hit FileNotFoundException for compressed folder
-				      
-		            try (OutputStream os = new FileOutputStream(file.toFile())) {             
-			        	while ((n = zis.read(buffer)) > 0) {
-			        		os.write(buffer, 0, n);
-			            }
-		            }
-		        }
-		        		
-	        	ze = zis.getNextEntry();
-	    	}
-		    	
-		    zis.closeEntry();
+		System.out.println("Streaming " + source.getLength() + " bytes in " + downloadPart + " byte parts over " + downloadThreads + " threads");
+		
+		try (InputStream is = new TeeInputStream(new ParallelRangeInputStream(source, downloadPart, downloadThreads, downloadThreads * 2), digest)) {
+			// ZipInputStream stops at the central directory, so it is drained afterwards to complete the digest 
+			ZipInputStream zis = new ZipInputStream(is);
+			unzipStream(zis, Paths.get(getFolderName(path.getFile())), output);
+			
+			byte[] buffer = new byte[BUFFER_SIZE];
+			while (is.read(buffer) >= 0);
 		}
+		
+		String actual = digest.getChecksum();
+		if (null == expected)
+			System.out.println("The archive has no checksum, computed: " + actual);
+		else if (!expected.equalsIgnoreCase(actual))
+			throw new IOException("Checksum mismatch for " + path + ", expected: " + expected + ", actual: " + actual);
+		else
+			System.out.println("Checksum verified: " + actual);
 	}
 	
-	public static void copyFolder(Path src, Path dest) throws IOException{
-	    if (Files.isDirectory(src)) {
-	    	// if directory not exists, create it
-	    	if (!Files.exists(dest)) {
-	    		System.out.println("Create Directory " + dest);
-	    		
-	    		Files.createDirectories(dest);	    		
-    		}
-	    		
-    		// list all the directory contents
-    		String files[] = src.toFile().list();
-    		
-    		for (String file : files) {
-    			// construct the src and dest file structure
-    			Path srcFile = Paths.get(src.toString(), file);
-    			Path destFile = Paths.get(dest.toString(), file);
-    		  
-    			// recursive copy
-    			copyFolder(srcFile,destFile);
-    		}
-	    } else {
-	    	System.out.println("Copy File " + dest);
-	    	
-    		// if file, then copy it
-    		// Use bytes stream to support all file types
-    		try (InputStream in = new FileInputStream(src.toFile())) {
-    			try (OutputStream out = new FileOutputStream(dest.toFile())) { 
-    	                     
-    				byte[] buffer = new byte[1024];
-    				int n;
-    	        
-    				//copy the file content in bytes 
-    				while ((n = in.read(buffer)) > 0){
-    					out.write(buffer, 0, n);
-    				}
-    			}
-    		}
+	private static void unzipStream(ZipInputStream zis, Path base, Path output) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		Path file;
+		int n;
+
+		ZipEntry ze = zis.getNextEntry();
+		while (ze != null) {
+        	file = Paths.get(ze.getName());
+			
+        	if (file.toString().startsWith(base.toString()))
+				file = base.relativize(file);
+
+	      //  System.out.println("unzip : "+ file.toString());
+        	
+			file = Paths.get(output.toString(), file.toString());
+
+	        if (ze.isDirectory()) 
+	        	Files.createDirectories(file);
+        	else {
+	        	// create all non exists folders
+	        	// else you will hit FileNotFoundException for compressed folder
+	        	Files.createDirectories(file.getParent());
+			      
+	            try (OutputStream os = new FileOutputStream(file.toFile())) {             
+		        	while ((n = zis.read(buffer)) > 0) {
+		        		os.write(buffer, 0, n);
+		            }
+	            }
+	        }
+	        		
+        	ze = zis.getNextEntry();
     	}
+	    	
+	    zis.closeEntry();
+	}
+	
+	public static void copyFolder(Path src, Path dest) throws IOException {
+		new FolderStager(stageMode, stageThreads).stage(src, dest);
 	}
 
-	private static void downloadDatabase(String from, Path to) throws FileNotFoundException, IOException {
+	public static void downloadDatabase(String from, Path to) throws FileNotFoundException, IOException {
 		System.out.println("Downloading database from " + from + " to " + to);
 		S3Path path = S3Path.parse(from);
 		if (null != path && path.isValud()) {
 			System.out.println("The file is hosted on S3 bucket: " + path.getBucket() + ", key: " + path.getKey() + ", file: " + path.getFile());
 			if (isZip(path.getFile())) {
-				// the from path is a path to S3 file 
-				Path tmp = Paths.get(getTmpPath().toString(), path.getFile());
-				Files.createDirectories(tmp.getParent());
-				
-				System.out.println("Tmp path: " + tmp);
-			
-				downloadFileS3(path, tmp);
-				unzipFile(tmp, to);
+				// the from path is a path to S3 file, it is extracted while being downloaded 
+				unzipS3(path, to);
 			} else 
 				throw new IllegalArgumentException("Only Zip archives are supported for S3");
 		} else {
@@ -334,20 +572,24 @@ public class App {
 		}			
 	}
 	
-	private static void uploadDatabase(Path zipFile, String bucket) throws FileNotFoundException, IOException {
-		try (InputStream is = new FileInputStream(zipFile.toFile())) {
-        	
-        	byte[] bytes = IOUtils.toByteArray(is);
-        	
-        	ObjectMetadata metadata = new ObjectMetadata();
-        	metadata.setContentLength(bytes.length);
-        	
-        	InputStream inputStream = new ByteArrayInputStream(bytes);
-        	
-        	PutObjectRequest request = new PutObjectRequest(bucket, zipFile.getFileName().toString(), inputStream, metadata);
-        	
-	        s3client.putObject(request);
-        }  
+	private static void uploadDatabase(Path input, String bucket, String drop) throws IOException {
+		String key = drop + DEF_PATH_ZIP;
+		
+		// the archive is written straight into the upload, so no local copy of it is created 
+		MultipartOutputStream os = new MultipartOutputStream(new S3PartTarget(s3client, bucket, key, uploadPart), 
+				uploadPart, uploadThreads, uploadThreads * 2);
+		try {
+			// the upload is completed only when the archive has been written in full 
+			zipStream(new CloseShieldOutputStream(os), input, drop);
+		} catch (IOException | RuntimeException e) {
+			os.abort();
+			
+			throw e;
+		}
+		
+		os.close();
+		
+		System.out.println("Uploaded " + os.getUploaded() + " bytes to s3://" + bucket + "/" + key);
 	}
 	
 	
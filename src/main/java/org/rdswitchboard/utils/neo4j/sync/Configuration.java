@@ -14,9 +14,66 @@ public class Configuration {
 	public static final String PROPERTY_SYNC_HOME = "sync.home";
 	public static final String PROPERTY_SYNC_SOURCE = "sync.source";
 	public static final String PROPERTY_SYNC_TARGET = "sync.target";
+	public static final String PROPERTY_SYNC_TARGET_THREADS = "sync.target.threads";
 	public static final String PROPERTY_SYNC_KEYS = "sync.keys";
 	public static final String PROPERTY_SYNC_LEVEL = "sync.level";
 	public static final String PROPERTY_SYNC_BUCKET = "sync.bucket";
+	public static final String PROPERTY_SYNC_THREADS = "sync.threads";
+	public static final String PROPERTY_SYNC_MAP_HEAP = "sync.map.heap";
+	public static final String PROPERTY_SYNC_MAP_SPILL = "sync.map.spill";
+	public static final String PROPERTY_SYNC_MATCH = "sync.match";
+	public static final String PROPERTY_SYNC_MATCH_MEMORY = "sync.match.memory";
+	public static final String PROPERTY_SYNC_SORT_FOLDER = "sync.sort.folder";
+	public static final String PROPERTY_SYNC_SORT_MEMORY = "sync.sort.memory";
+	public static final String PROPERTY_SYNC_SORT_DISK = "sync.sort.disk";
+	public static final String PROPERTY_SYNC_OUTPUT = "sync.output";
+	public static final String PROPERTY_SYNC_OUTPUT_FOLDER = "sync.output.folder";
+	public static final String PROPERTY_SYNC_COMMIT = "sync.commit";
+	public static final String PROPERTY_SYNC_COMMIT_OPERATIONS = "sync.commit.operations";
+	public static final String PROPERTY_SYNC_COMMIT_BYTES = "sync.commit.bytes";
+	public static final String PROPERTY_SYNC_COMMIT_TIME = "sync.commit.time";
+	public static final String PROPERTY_SYNC_INCREMENTAL = "sync.incremental";
+	public static final String PROPERTY_SYNC_JOURNAL = "sync.journal";
+	public static final String PROPERTY_SYNC_NORMALIZE = "sync.normalize";
+	public static final String PROPERTY_SYNC_STATISTICS = "sync.statistics";
+	public static final String PROPERTY_SYNC_STATISTICS_BACKGROUND = "sync.statistics.background";
+	public static final String PROPERTY_SYNC_PROGRESS = "sync.progress";
+	public static final String PROPERTY_SYNC_JMX = "sync.jmx";
+	public static final String PROPERTY_SYNC_LOG_LEVEL = "sync.log.level";
+	public static final String PROPERTY_SYNC_LOG_SAMPLE = "sync.log.sample";
+	public static final String PROPERTY_SYNC_REPORT = "sync.report";
+	public static final String PROPERTY_SYNC_DOWNLOAD_THREADS = "sync.download.threads";
+	public static final String PROPERTY_SYNC_DOWNLOAD_PART = "sync.download.part";
+	public static final String PROPERTY_SYNC_UPLOAD_THREADS = "sync.upload.threads";
+	public static final String PROPERTY_SYNC_UPLOAD_PART = "sync.upload.part";
+	public static final String PROPERTY_SYNC_ZIP_THREADS = "sync.zip.threads";
+	public static final String PROPERTY_SYNC_ZIP_LEVEL = "sync.zip.level";
+	public static final String PROPERTY_SYNC_ZIP_BLOCK = "sync.zip.block";
+	public static final String PROPERTY_SYNC_ZIP_STORE = "sync.zip.store";
+	public static final String PROPERTY_SYNC_UNZIP_THREADS = "sync.unzip.threads";
+	public static final String PROPERTY_SYNC_STAGE = "sync.stage";
+	public static final String PROPERTY_SYNC_STAGE_THREADS = "sync.stage.threads";
+	
+	// Generator
+	public static final String PROPERTY_GENERATOR_GROUP = "generator.group";
+	public static final String PROPERTY_GENERATOR_SCALE = "generator.scale";
+	public static final String PROPERTY_GENERATOR_POOL = "generator.pool";
+	public static final String PROPERTY_GENERATOR_OVERLAP = "generator.overlap";
+	public static final String PROPERTY_GENERATOR_NOISE = "generator.noise";
+	public static final String PROPERTY_GENERATOR_EXPONENT = "generator.exponent";
+	public static final String PROPERTY_GENERATOR_SEED = "generator.seed";
+	public static final String PROPERTY_GENERATOR_OUTPUT = "generator.output";
+	public static final String PROPERTY_GENERATOR_FOLDER = "generator.folder";
+	
+	// Benchmark
+	public static final String PROPERTY_BENCHMARK_SCALES = "benchmark.scales";
+	public static final String PROPERTY_BENCHMARK_LEVELS = "benchmark.levels";
+	public static final String PROPERTY_BENCHMARK_TARGET = "benchmark.target";
+	public static final String PROPERTY_BENCHMARK_OVERLAP = "benchmark.overlap";
+	public static final String PROPERTY_BENCHMARK_FOLDER = "benchmark.folder";
+	public static final String PROPERTY_BENCHMARK_OUTPUT = "benchmark.output";
+	public static final String PROPERTY_BENCHMARK_BASELINE = "benchmark.baseline";
+	public static final String PROPERTY_BENCHMARK_THRESHOLD = "benchmark.threshold";
 	
 	// Neo4j
 	public static final String PROPERTY_NEO4J = "neo4j";
@@ -7,18 +7,59 @@ import org.neo4j.graphdb.factory.GraphDatabaseSettings;
 import org.neo4j.graphdb.schema.ConstraintDefinition;
 import org.neo4j.graphdb.schema.IndexDefinition;
 import org.neo4j.graphdb.schema.Schema;
+import org.neo4j.kernel.impl.store.id.IdGeneratorFactory;
+import org.neo4j.kernel.impl.store.id.IdType;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.rdswitchboard.utils.neo4j.sync.collections.LongArrayAllocator;
+import org.rdswitchboard.utils.neo4j.sync.collections.LongLongMap;
+import org.rdswitchboard.utils.neo4j.sync.collections.LongPairList;
+import org.rdswitchboard.utils.neo4j.sync.collections.LongPairSet;
+import org.rdswitchboard.utils.neo4j.sync.commit.AdaptivePolicy;
+import org.rdswitchboard.utils.neo4j.sync.commit.CommitPolicy;
+import org.rdswitchboard.utils.neo4j.sync.commit.ElapsedTimePolicy;
+import org.rdswitchboard.utils.neo4j.sync.commit.OperationCountPolicy;
+import org.rdswitchboard.utils.neo4j.sync.commit.TransactionSizePolicy;
 import org.rdswitchboard.utils.neo4j.sync.enums.Types;
 import org.rdswitchboard.utils.neo4j.sync.exceptions.Neo4jException;
+import org.rdswitchboard.utils.neo4j.sync.incremental.Watermark;
+import org.rdswitchboard.utils.neo4j.sync.journal.Checkpoint;
+import org.rdswitchboard.utils.neo4j.sync.journal.Journal;
+import org.rdswitchboard.utils.neo4j.sync.match.IndexMatcher;
+import org.rdswitchboard.utils.neo4j.sync.match.Matcher;
+import org.rdswitchboard.utils.neo4j.sync.match.SortMergeJoin;
+import org.rdswitchboard.utils.neo4j.sync.metrics.LogSampler;
+import org.rdswitchboard.utils.neo4j.sync.metrics.RunProfile;
+import org.rdswitchboard.utils.neo4j.sync.metrics.SyncMetrics;
+import org.rdswitchboard.utils.neo4j.sync.normalize.Normalizers;
+import org.rdswitchboard.utils.neo4j.sync.output.CsvWriter;
+import org.rdswitchboard.utils.neo4j.sync.output.GraphWriter;
+import org.rdswitchboard.utils.neo4j.sync.output.TransactionalWriter;
+import org.rdswitchboard.utils.neo4j.sync.stats.GraphStatistics;
 
 import org.rdswitchboard.utils.neo4j.sync.enums.Relationships;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.HashMap;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 public class Process {
@@ -29,71 +70,351 @@ public class Process {
     private static final String PROPERTY_SOURCE = "source";
     private static final String PROPERTY_TYPE = "type";
 
-    //private static int syncLevel;
-    private static long processedCounter = 0;
-    private static long nodeCounter = 0;
-    private static long relCounter = 0;
-    private static long chunksCounter = 0;
-    private static long chunkSize = 0;
-
-
-    //private static final String DEF_NEO4J_DB = "neo4j";
-    //private static final String DEF_NEO4J_ZIP = "neo4j.zip";
+    private static final String DEF_SYNC_THREADS = "1";
+    private static final String DEF_SYNC_MAP_HEAP = "512";
+    private static final String DEF_SYNC_MATCH_MEMORY = "1024";
+    private static final String DEF_SYNC_SORT_MEMORY = "256";
+    private static final String DEF_SYNC_SORT_DISK = "0";
+
+    // matching modes
+    public static final String MATCH_INDEX = "index";
+    public static final String MATCH_HASH = "hash";
+    public static final String MATCH_SORT = "sort";
+
+    // output modes
+    public static final String OUTPUT_TRANSACTIONAL = "transactional";
+    public static final String OUTPUT_CSV = "csv";
+
+    private static final String DEF_OUTPUT_FOLDER = "import";
+
+    // commit policies
+    public static final String COMMIT_OPERATIONS = "operations";
+    public static final String COMMIT_BYTES = "bytes";
+    public static final String COMMIT_TIME = "time";
+    public static final String COMMIT_ADAPTIVE = "adaptive";
+
+    private static final String DEF_COMMIT_OPERATIONS = "1000";
+    private static final String DEF_COMMIT_BYTES = "64";
+    private static final String DEF_COMMIT_TIME = "10000";
+
+    // seconds between progress lines
+    private static final String DEF_SYNC_PROGRESS = "10";
+    private static final String DEF_SYNC_LOG_SAMPLE = "1";
+    private static final String DEF_SYNC_REPORT_SUFFIX = "-report.json";
+
+    // number of id ranges handed out to every matching worker
+    private static final int RANGES_PER_THREAD = 8;
+    // number of match results a worker collects before passing them to the writer
+    private static final int MATCH_BATCH_SIZE = 100;
+    // milliseconds the matching threads wait on the queue before checking for a failure of the other side
+    private static final long MATCH_QUEUE_TIMEOUT = 100;
+
+    // phases of a run
+    public static final String PHASE_OPEN = "open";
+    public static final String PHASE_PREPARE = "prepare";
+    public static final String PHASE_MATCHING = "matching";
+    public static final String PHASE_SIBLINGS = "siblings";
+    public static final String PHASE_FINISH = "finish";
+
+    private final Path targetDb;
+    private final Set<String> keys;
+    private final int syncLevel;
+    private final Properties properties;
+    private final int syncThreads;
+    private final String syncMatch;
+    private final String syncOutput;
+    private final boolean syncIncremental;
+    private final String syncJournal;
+    private final long syncProgress;
+    private final boolean syncJmx;
+    private final Path syncReport;
+    private final Set<Label> types;
+    private final String statisticsMode;
+    private final boolean statisticsBackground;
+    // heap budget of all id maps in bytes
+    private final long mapHeap;
+    private final Path mapSpill;
+    private boolean started;
+
+    //private int syncLevel;
+    private long processedCounter = 0;
+    private long nodeCounter = 0;
+    private long relCounter = 0;
+    private long chunksCounter = 0;
+    private long chunkSize = 0;
+    private long chunkBytes = 0;
+    private long chunkStarted = 0;
+
+    private SyncMetrics metrics;
+    private LogSampler logSampler;
+    private RunProfile profile;
+
+
+    //private final String DEF_NEO4J_DB = "neo4j";
+    //private final String DEF_NEO4J_ZIP = "neo4j.zip";
     public static final String NEO4J_CONF = "/conf/neo4j.conf";
     public static final String NEO4J_DB = "/data/databases/graph.db";
 
-    private static Map<Long, Long> mapImported;
+    // id maps of the source whose nodes are being copied
+    private LongLongMap mapImported;
+    // source node id -> the largest level the node's neighbourhood has already been expanded with
+    private LongLongMap mapExpanded;
+    // pairs of related destination node ids, the smaller id is always stored first
+    private LongPairSet setRelated;
+    // destination node ids whose relationships are already stored in the setRelated
+    private LongLongMap mapSeeded;
+    // number of nodes expanded at every sibling level
+    private long[] frontierCounters;
+
+    // sources in the order of precedence, a node with the same key in several sources is copied from the first of them
+    private final List<SourceGraph> sources;
+    // id maps, matchers and matches waiting for the sources of higher precedence to be synced, by source
+    private LongLongMap[] importedMaps;
+    private LongLongMap[] expandedMaps;
+    private Matcher[] matchers;
+    private LongPairList[] deferredMatches;
+    // source whose nodes are being copied
+    private SourceGraph source;
+    private GraphDatabaseService srcGraphDb;
+    private GraphDatabaseService dstGraphDb;
+
+    private Normalizers normalizers;
+    private GraphWriter writer;
+    private CommitPolicy commitPolicy;
+    // watermark of the previous run, null if every node has to be synced
+    private Watermark watermark;
+    // unchanged destination node ids which have to be matched again, because they share a key with a changed source node
+    private LongLongMap mapRematched;
+
+    // progress journal, null if the run can not be resumed
+    private Journal journal;
+    // phase, position and end of the phase recorded with every committed chunk
+    private int journalPhase;
+    private long journalPosition;
+    private long journalLimit;
+
+    /**
+     * Prints statistics of the database, either right away or once they have been collected
+     * by a background thread
+     *
+     * @param name database name
+     * @param graphDB database
+     * @param statistics statistics collector
+     * @param background true if the statistics should be collected in background
+     * @return future of the background collection or null if it is not running
+     */
+    static Future<?> printStatistics(final String name, final GraphDatabaseService graphDB,
+                                             final GraphStatistics statistics, boolean background) {
+        if (statistics.getMode().equals(GraphStatistics.MODE_NONE))
+            return null;
+
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                statistics.collect(graphDB);
 
-    private static GraphDatabaseService srcGraphDb;
-    private static GraphDatabaseService dstGraphDb;
+                // the summary is printed at once, so it is not interleaved with the sync output
+                System.out.print("Statistics of " + name + " database:\n" + statistics.getSummary());
+            }
+        };
 
-    private static void printStatistics(GraphDatabaseService graphDB) throws Exception{
-        Result result;
+        if (!background) {
+            task.run();
+            return null;
+        }
 
-        System.out.println("Number of nodes/type:");
-        result =graphDB.execute("Match (n) return n.type as TYPE, count(n) as COUNT");
-        System.out.println(result.resultAsString());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            return executor.submit(task);
+        } finally {
+            executor.shutdown();
+        }
+    }
 
-        System.out.println("Number of nodes with DOI/type:");
-        result =graphDB.execute("Match (n) where exists(n.doi) return n.type as TYPE, count(n) as COUNT");
-        System.out.println(result.resultAsString());
+    private static void awaitStatistics(Future<?> statistics) throws InterruptedException {
+        if (null != statistics)
+            try {
+                statistics.get();
+            } catch (ExecutionException e) {
+                System.out.println("Unable to collect statistics: " + e.getCause());
+            }
+    }
 
-        System.out.println("Number of unique DOI/type:");
-        result =graphDB.execute("Match (n) return n.type as TYPE, count(distinct(n.doi)) as COUNT");
-        System.out.println(result.resultAsString());
+    public static void synthesis(Path sourceDb, Path targetDb, Set<String> keys, int syncLevel) throws Exception {
+        synthesis(sourceDb, targetDb, keys, syncLevel, new Properties());
+    }
 
-        System.out.println("Sample of DOI:");
-        result =graphDB.execute("Match (n) where exists(n.doi) return n.doi limit 10");
-        System.out.println(result.resultAsString());
+    /**
+     * Synthesizes one target database with the source database, which is opened for the run only
+     */
+    public static void synthesis(Path sourceDb, Path targetDb, Set<String> keys, int syncLevel, Properties properties) throws Exception {
+        try (SourceGraph source = new SourceGraph(sourceDb)) {
+            new Process(source, targetDb, keys, syncLevel, properties).run();
+        }
+    }
 
-        System.out.println("Number of nodes with ORCID/type:");
-        result =graphDB.execute("Match (n) where exists(n.orcid) return n.type as TYPE, count(n) as ORCID");
-        System.out.println(result.resultAsString());
+    /**
+     * Creates a synthesis job of one target database. Jobs of different targets can run at once
+     * and share the opened source database. The configuration is checked here, the target
+     * database is opened and closed by the run.
+     *
+     * @param source opened source (Nexus) database
+     * @param targetDb target (Client) database instance folder
+     * @param keys set of properties used to match nodes
+     * @param syncLevel sibling expansion level
+     * @param properties sync configuration
+     */
+    public Process(SourceGraph source, Path targetDb, Set<String> keys, int syncLevel, Properties properties) {
+        this(Collections.singletonList(source), targetDb, keys, syncLevel, properties);
+    }
 
-        System.out.println("Sample of unique ORCID/type:");
-        result =graphDB.execute("Match (n) return n.type as TYPE, count(distinct(n.orcid)) as COUNT");
-        System.out.println(result.resultAsString());
+    /**
+     * Creates a synthesis job enriching one target database from several source databases.
+     * Every destination node is matched against all sources in one scan. When the same node key
+     * exists in more than one source, the node is copied from the source listed first.
+     *
+     * @param sources opened source (Nexus) databases in the order of precedence
+     * @param targetDb target (Client) database instance folder
+     * @param keys set of properties used to match nodes
+     * @param syncLevel sibling expansion level
+     * @param properties sync configuration
+     */
+    public Process(List<SourceGraph> sources, Path targetDb, Set<String> keys, int syncLevel, Properties properties) {
+        if (sources.isEmpty())
+            throw new IllegalArgumentException("At least one source database is required");
+
+        this.sources = new ArrayList<SourceGraph>(sources);
+        this.targetDb = targetDb;
+        this.keys = keys;
+        this.syncLevel = syncLevel;
+        this.properties = properties;
+
+        syncThreads = Integer.parseInt(properties.getProperty(Configuration.PROPERTY_SYNC_THREADS, DEF_SYNC_THREADS));
+        if (syncThreads < 1)
+            throw new IllegalArgumentException("sync.threads must be a positive number");
+
+        syncMatch = properties.getProperty(Configuration.PROPERTY_SYNC_MATCH, MATCH_INDEX);
+        if (!syncMatch.equals(MATCH_INDEX) && !syncMatch.equals(MATCH_HASH) && !syncMatch.equals(MATCH_SORT))
+            throw new IllegalArgumentException("Unknown matching mode: " + syncMatch);
+
+        syncOutput = properties.getProperty(Configuration.PROPERTY_SYNC_OUTPUT, OUTPUT_TRANSACTIONAL);
+        if (!syncOutput.equals(OUTPUT_TRANSACTIONAL) && !syncOutput.equals(OUTPUT_CSV))
+            throw new IllegalArgumentException("Unknown output mode: " + syncOutput);
+
+        commitPolicy = getCommitPolicy(properties);
+
+        syncIncremental = Boolean.parseBoolean(properties.getProperty(Configuration.PROPERTY_SYNC_INCREMENTAL));
+        if (syncIncremental && syncOutput.equals(OUTPUT_CSV))
+            throw new IllegalArgumentException("Incremental mode requires transactional output");
+
+        syncJournal = properties.getProperty(Configuration.PROPERTY_SYNC_JOURNAL);
+        if (null != syncJournal && syncOutput.equals(OUTPUT_CSV))
+            throw new IllegalArgumentException("Resumable runs require transactional output");
+
+        if (sources.size() > 1) {
+            if (syncMatch.equals(MATCH_SORT))
+                throw new IllegalArgumentException("Sort-merge join requires a single source");
+            if (syncIncremental)
+                throw new IllegalArgumentException("Incremental mode requires a single source");
+            if (null != syncJournal)
+                throw new IllegalArgumentException("Resumable runs require a single source");
+        }
+
+        syncProgress = Long.parseLong(properties.getProperty(Configuration.PROPERTY_SYNC_PROGRESS, DEF_SYNC_PROGRESS));
+        syncJmx = Boolean.parseBoolean(properties.getProperty(Configuration.PROPERTY_SYNC_JMX, "true"));
+        logSampler = new LogSampler(properties.getProperty(Configuration.PROPERTY_SYNC_LOG_LEVEL, LogSampler.LEVEL_INFO),
+                Long.parseLong(properties.getProperty(Configuration.PROPERTY_SYNC_LOG_SAMPLE, DEF_SYNC_LOG_SAMPLE)));
 
-        System.out.println("Sample of ORCID:");
-        result =graphDB.execute("Match (n) where exists(n.orcid) return n.orcid limit 10");
-        System.out.println(result.resultAsString());
+        // the report is written next to the target folder by default, so it is not published with the database
+        String report = properties.getProperty(Configuration.PROPERTY_SYNC_REPORT);
+        syncReport = null == report ? targetDb.resolveSibling(targetDb.getFileName() + DEF_SYNC_REPORT_SUFFIX)
+                : report.isEmpty() ? null : Paths.get(report);
 
+        normalizers = new Normalizers(properties.getProperty(Configuration.PROPERTY_SYNC_NORMALIZE), keys);
 
+        types = new HashSet<Label>();
+        types.add(Types.dataset);
+        types.add(Types.grant);
+        types.add(Types.researcher);
+        types.add(Types.publication);
+
+        statisticsMode = properties.getProperty(Configuration.PROPERTY_SYNC_STATISTICS, GraphStatistics.MODE_EXACT);
+        statisticsBackground = Boolean.parseBoolean(properties.getProperty(Configuration.PROPERTY_SYNC_STATISTICS_BACKGROUND));
+
+        mapHeap = Long.parseLong(properties.getProperty(Configuration.PROPERTY_SYNC_MAP_HEAP, DEF_SYNC_MAP_HEAP)) << 20;
+        mapSpill = Paths.get(properties.getProperty(Configuration.PROPERTY_SYNC_MAP_SPILL, System.getProperty("java.io.tmpdir")));
     }
-    public static void synthesis(Path sourceDb, Path targetDb, Set<String> keys, int syncLevel) throws Exception {
 
-        mapImported = new HashMap<Long, Long>();
+    /**
+     * Runs the synthesis. The target database is opened at the start and shut down at the end
+     * of the run, also when it fails. A job can only be run once.
+     */
+    public void run() throws Exception {
+        synchronized (this) {
+            if (started)
+                throw new IllegalStateException("The synthesis of " + targetDb + " has already been run");
+            started = true;
+        }
 
-        System.out.println("Connecting to Nexus database");
-        srcGraphDb = new GraphDatabaseFactory()
-                .newEmbeddedDatabaseBuilder( GetDbPath(sourceDb.toString()) )
-                .loadPropertiesFromFile( GetConfPath(sourceDb.toString()).toString() )
-                .setConfig( GraphDatabaseSettings.read_only, "false" )
-                .newGraphDatabase();
+        try {
+            synthesis();
+        } finally {
+            if (null != writer) {
+                writer.close();
+                writer = null;
+            }
+            if (null != journal) {
+                journal.close();
+                journal = null;
+            }
+
+            closeMaps();
+
+            if (null != metrics)
+                metrics.close();
+
+            if (null != dstGraphDb) {
+                System.out.println("Shutdown target (Client) database");
+
+                dstGraphDb.shutdown();
+                dstGraphDb = null;
+            }
+        }
+    }
+
+    private void synthesis() throws Exception {
+        GraphStatistics dstStatistics = new GraphStatistics(statisticsMode, types);
 
-        registerShutdownHook( srcGraphDb );
+        LongArrayAllocator allocator = new LongArrayAllocator(mapHeap, mapSpill);
 
-        printStatistics(srcGraphDb);
+        importedMaps = new LongLongMap[sources.size()];
+        expandedMaps = new LongLongMap[sources.size()];
+        deferredMatches = new LongPairList[sources.size()];
+        for (int i = 0; i < sources.size(); ++i) {
+            importedMaps[i] = new LongLongMap(allocator);
+            expandedMaps[i] = new LongLongMap(allocator);
+            if (i > 0)
+                deferredMatches[i] = new LongPairList(allocator);
+        }
+        selectSource(0);
+
+        setRelated = new LongPairSet(allocator);
+        mapSeeded = new LongLongMap(allocator);
+        frontierCounters = new long[Math.max(syncLevel, 0) + 1];
+
+        metrics = new SyncMetrics(targetDb.toString());
+        profile = new RunProfile();
+        if (syncJmx)
+            metrics.register();
+        if (syncProgress > 0)
+            metrics.startReporting(syncProgress);
+
+        startPhase(PHASE_OPEN);
+
+        // statistics of a shared source are only collected by the first job
+        List<Future<?>> srcStatisticsFutures = new ArrayList<Future<?>>();
+        for (SourceGraph sourceGraph : sources)
+            srcStatisticsFutures.add(sourceGraph.printStatistics(new GraphStatistics(statisticsMode, types), statisticsBackground));
 
         System.out.println("Connecting to Input database");
 
@@ -105,103 +426,656 @@ public class Process {
 
         registerShutdownHook( dstGraphDb );
 
-        printStatistics(dstGraphDb);
+        Future<?> dstStatisticsFuture = printStatistics("target (Client)", dstGraphDb, dstStatistics, statisticsBackground);
+
+        DateTime startedAt = DateTime.now();
+        int[] sourceNodes = null;
+
+        if (syncIncremental) {
+            watermark = Watermark.read(Watermark.getFile(targetDb));
+
+            try ( Transaction ignored = srcGraphDb.beginTx() ) {
+                sourceNodes = Watermark.getFingerprints(srcGraphDb);
+            }
+
+            if (null == watermark)
+                System.out.println("No watermark found in target (Client) database, all nodes will be synced");
+            else
+                System.out.println("Sync nodes changed since " + watermark.getSyncedAt());
+        }
+
+        startPhase(PHASE_PREPARE);
 
         System.out.println("Create global operation's driver");
 
-        Set<Label> types = new HashSet<Label>();
-        types.add(Types.dataset);
-        types.add(Types.grant);
-        types.add(Types.researcher);
-        types.add(Types.publication);
+        for (SourceGraph sourceGraph : sources)
+            sourceGraph.prepare(types, keys, normalizers);
 
-        System.out.println("Create indexes in source (Nexus) database");
-        try ( Transaction tx = srcGraphDb.beginTx() ) {
-            Schema schema = srcGraphDb.schema();
+        if (syncOutput.equals(OUTPUT_CSV)) {
+            Path outputFolder = Paths.get(properties.getProperty(Configuration.PROPERTY_SYNC_OUTPUT_FOLDER,
+                    Paths.get(targetDb.toString(), DEF_OUTPUT_FOLDER).toString()));
 
-            for (Label type : types) {
-                for (String key : keys)
-                    createIndex(schema, type, key);
+            System.out.println("Write augmented database to " + outputFolder);
+
+            // nodes created by the sync get virtual ids above any id of the target (Client) database
+            writer = new CsvWriter(dstGraphDb, outputFolder, types, getHighestNodeId(dstGraphDb), allocator);
+        } else {
+            System.out.println("Create constraints in target (Client) database");
+            try ( Transaction tx = dstGraphDb.beginTx() ) {
+                Schema schema = dstGraphDb.schema();
+
+                for (Label type : types) {
+                    createConstraint(schema, type, PROPERTY_KEY);
+                }
+
+                tx.success();
             }
 
-            tx.success();
+            writer = new TransactionalWriter(dstGraphDb);
         }
 
-        System.out.println("Create constraints in target (Client) database");
-        try ( Transaction tx = dstGraphDb.beginTx() ) {
-            Schema schema = dstGraphDb.schema();
+        matchers = new Matcher[sources.size()];
+        for (int i = 0; i < sources.size(); ++i) {
+            GraphDatabaseService graphDb = sources.get(i).getGraphDb();
 
-            for (Label type : types) {
-                createConstraint(schema, type, PROPERTY_KEY);
-            }
+            if (syncMatch.equals(MATCH_HASH)) {
+                try ( Transaction ignored = graphDb.beginTx() ) {
+                    // wait for the indexes used by the fallback lookups
+                    graphDb.schema().awaitIndexesOnline(1, TimeUnit.DAYS);
+                }
 
-            tx.success();
+                long matchMemory = Long.parseLong(properties.getProperty(Configuration.PROPERTY_SYNC_MATCH_MEMORY, DEF_SYNC_MATCH_MEMORY)) << 20;
+                Set<String> matchProperties = new HashSet<String>();
+                for (String key : keys)
+                    matchProperties.add(normalizers.getProperty(key));
+
+                matchers[i] = sources.get(i).getHashMatcher(types, matchProperties, matchMemory);
+            } else
+                matchers[i] = new IndexMatcher(graphDb);
         }
 
-        try ( Transaction ignored = srcGraphDb.beginTx() )
-        {
-            Transaction tx = dstGraphDb.beginTx();
-            try {
+        Checkpoint checkpoint = null;
+        if (null != syncJournal) {
+            journal = new Journal(Paths.get(syncJournal), source.getPath() + "|" + targetDb + "|" + syncLevel + "|" + new TreeSet<String>(keys) + "|" + normalizers);
+            checkpoint = journal.getCheckpoint();
 
-                System.out.println("Sync nodes");
-                for (Node dstNode : dstGraphDb.getAllNodes()) {
+            if (null != checkpoint) {
+                journal.replay(mapImported, mapExpanded);
+                restoreCounters(checkpoint.getCounters());
 
-                    syncNode(dstNode, keys);
+                System.out.println("Resuming from chunk " + chunksCounter + " with " + mapImported.size() + " imported nodes");
+            }
+        }
 
-                    if (chunkSize > 1000) {
+        // a run interrupted in the sibling phase does not need to match nodes again
+        boolean resumeSiblings = null != checkpoint && checkpoint.getPhase() == Journal.PHASE_SIBLINGS;
 
-                        chunkSize = 0;
-                        ++chunksCounter;
+        List<Transaction> srcTransactions = beginSourceTransactions();
+        try
+        {
+            Transaction tx = beginChunk();
+            try {
+
+                startPhase(PHASE_MATCHING);
 
-                        System.out.println("Writing " + chunksCounter + " chunk to database");
+                if (null != watermark) {
+                    System.out.println("Find roots of changed source (Nexus) neighbourhoods");
+
+                    mapRematched = new LongLongMap(allocator);
+                    findChangedRoots(keys, syncLevel, allocator);
+                }
 
-                        tx.success();
-                        tx.close();
-                        tx = dstGraphDb.beginTx();
+                // only the serial scan has a position to be resumed from, other modes match all nodes again,
+                // but only those which existed before the interrupted run
+                journalPhase = Journal.PHASE_MATCHING;
+                journalPosition = -1;
+                journalLimit = null == checkpoint ? getHighestNodeId(dstGraphDb) : checkpoint.getLimit();
+
+                if (resumeSiblings) {
+                    System.out.println("Nodes have been synced by the interrupted run");
+                } else if (syncMatch.equals(MATCH_SORT)) {
+                    System.out.println("Sync nodes using sort-merge join");
+
+                    // the rescan counts every node again, only the serial scan continues the restored count
+                    processedCounter = 0;
+                    tx = syncNodesSorted(tx, types, keys, journalLimit, properties);
+                } else if (syncThreads > 1) {
+                    System.out.println("Sync nodes using " + syncThreads + " threads");
+
+                    processedCounter = 0;
+                    tx = syncNodesParallel(tx, keys, journalLimit, syncThreads);
+                } else {
+                    System.out.println("Sync nodes");
+
+                    // nodes are scanned in the id order, so every node up to the position has been committed
+                    long resumePosition = null == checkpoint ? -1 : checkpoint.getPosition();
+                    for (Node dstNode : dstGraphDb.getAllNodes()) {
+                        if (dstNode.getId() <= resumePosition)
+                            continue;
+                        syncNode(dstNode, keys);
+
+                        journalPosition = dstNode.getId();
+                        tx = commitChunk(tx);
                     }
                 }
 
                 System.out.println("Found " + mapImported.size() + " unique nodes");
 
-                System.out.println("Sync synblings");
+                for (int index = 0; index < sources.size(); ++index) {
+                    selectSource(index);
 
-                Map<Long,Long> map = new HashMap<Long,Long>(mapImported);
-                for (Map.Entry<Long,Long> entry : map.entrySet()) {
-                    Node srcNode = srcGraphDb.getNodeById(entry.getKey());
-                    Node dstNode = dstGraphDb.getNodeById(entry.getValue());
+                    if (index > 0) {
+                        startPhase(PHASE_MATCHING);
 
-                    copySyblings(srcNode, dstNode, syncLevel);
+                        System.out.println("Sync matches of source (Nexus) database " + source.getPath());
 
-                    if (chunkSize > 1000) {
+                        // matches of a source are only imported once all sources before it have been synced,
+                        // so a node existing in several sources is always copied from the first of them
+                        journalLimit = deferredMatches[index].size();
+                        for (long i = 0; i < journalLimit; ++i) {
+                            importMatch(deferredMatches[index].firstAt(i), deferredMatches[index].secondAt(i));
 
-                        chunkSize = 0;
-                        ++chunksCounter;
+                            journalPosition = i + 1;
+                            tx = commitChunk(tx);
+                        }
 
-                        System.out.println("Writing " + chunksCounter + " chunk to database");
+                        System.out.println("Found " + mapImported.size() + " unique nodes");
+                    }
+
+                    startPhase(PHASE_SIBLINGS);
+
+                    System.out.println("Sync synblings");
+
+                    // nodes imported by the sibling phase itself are already expanded by their closures,
+                    // so only the entries found by the matching phase are used as roots
+                    journalPhase = Journal.PHASE_SIBLINGS;
+                    journalLimit = resumeSiblings ? checkpoint.getLimit() : mapImported.size();
+                    for (long i = resumeSiblings ? checkpoint.getPosition() : 0; i < journalLimit; ++i) {
+                        Node srcNode = srcGraphDb.getNodeById(mapImported.keyAt(i));
+
+                        copySyblings(srcNode, mapImported.valueAt(i), syncLevel);
 
-                        tx.success();
-                        tx.close();
-                        tx = dstGraphDb.beginTx();
+                        journalPosition = i + 1;
+                        tx = commitChunk(tx);
                     }
                 }
 
+                for (int level = 0; level < frontierCounters.length; ++level)
+                    System.out.println("Expanded " + frontierCounters[level] + " nodes at level " + level);
+
+                startPhase(PHASE_FINISH);
+
                 System.out.println("Writing final chunk to database");
 
-                nodeCounter += chunkSize;
-                tx.success();
+                tx = commitChunk(tx, true);
             } finally {
                 tx.close();
             }
+        } finally {
+            closeTransactions(srcTransactions);
         }
 
+        if (syncIncremental) {
+            System.out.println("Write watermark to " + Watermark.getFile(targetDb));
+
+            int[] targetNodes;
+            try ( Transaction ignored = dstGraphDb.beginTx() ) {
+                targetNodes = Watermark.getFingerprints(dstGraphDb);
+            }
+
+            new Watermark(startedAt, targetNodes, sourceNodes).write(Watermark.getFile(targetDb));
+        }
+
+        writer.close();
+        writer = null;
+
+        if (null != journal) {
+            journal.finish();
+            journal = null;
+        }
+
+        metrics.update(processedCounter, nodeCounter, relCounter, chunksCounter, mapImported.size());
+
         System.out.println("Processed " + processedCounter + " nodes. Imported " + nodeCounter + " nodes and " + relCounter + " relationships");
 
-        System.out.println("Shutdown database");
+        boolean spilled = mapSeeded.isSpilled();
+        for (int i = 0; i < sources.size(); ++i)
+            spilled |= importedMaps[i].isSpilled() || expandedMaps[i].isSpilled();
+        if (spilled)
+            System.out.println("Node id maps exceeded the heap budget and were spilled to " + mapSpill);
+
+        closeMaps();
+
+        startPhase(null);
+        metrics.close();
+
+        if (null != syncReport) {
+            Map<String, Object> run = new LinkedHashMap<String, Object>();
+            List<String> sourcePaths = new ArrayList<String>();
+            for (SourceGraph sourceGraph : sources)
+                sourcePaths.add(sourceGraph.getPath().toString());
+            run.put("source", sourcePaths.size() == 1 ? sourcePaths.get(0) : sourcePaths);
+            run.put("target", targetDb.toString());
+            run.put("keys", new TreeSet<String>(keys));
+            run.put("level", syncLevel);
+            run.put("match", syncMatch);
+            run.put("output", syncOutput);
+            run.put("threads", syncThreads);
+            run.put("started_at", startedAt.toString());
+            run.put("finished_at", DateTime.now().toString());
+            run.put("processed_nodes", processedCounter);
+            run.put("imported_nodes", nodeCounter);
+            run.put("imported_relationships", relCounter);
+            run.put("commits", chunksCounter);
+            run.put("matches", metrics.getMatches());
+
+            profile.write(syncReport, run, metrics.getPhaseTimes());
+            System.out.println("Run report has been written to " + syncReport);
+        }
+
+        for (Future<?> srcStatisticsFuture : srcStatisticsFutures)
+            awaitStatistics(srcStatisticsFuture);
+        awaitStatistics(dstStatisticsFuture);
+    }
+
+    private void closeMaps() throws IOException {
+        mapImported = null;
+        mapExpanded = null;
+        if (null != importedMaps) {
+            for (int i = 0; i < importedMaps.length; ++i) {
+                if (null != importedMaps[i])
+                    importedMaps[i].close();
+                if (null != expandedMaps[i])
+                    expandedMaps[i].close();
+                if (null != deferredMatches[i])
+                    deferredMatches[i].close();
+            }
+            importedMaps = null;
+            expandedMaps = null;
+            deferredMatches = null;
+        }
+        if (null != setRelated) {
+            setRelated.close();
+            setRelated = null;
+        }
+        if (null != mapSeeded) {
+            mapSeeded.close();
+            mapSeeded = null;
+        }
+        if (null != mapRematched) {
+            mapRematched.close();
+            mapRematched = null;
+        }
+    }
+
+    /**
+     * @return milliseconds spent in every phase of the run, in the order of phases
+     */
+    public Map<String, Long> getPhaseTimes() {
+        return null == metrics ? new LinkedHashMap<String, Long>() : metrics.getPhaseTimes();
+    }
+
+    /**
+     * @return live metrics of the run, null until the run has started
+     */
+    public SyncMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return number of destination nodes processed by the run
+     */
+    public long getProcessedCounter() {
+        return processedCounter;
+    }
+
+    /**
+     * @return number of nodes imported by the run
+     */
+    public long getNodeCounter() {
+        return nodeCounter;
+    }
+
+    /**
+     * @return number of relationships created by the run
+     */
+    public long getRelCounter() {
+        return relCounter;
+    }
+
+    /**
+     * Makes the source the one whose nodes are copied and expanded
+     *
+     * @param index index of the source
+     */
+    private void selectSource(int index) {
+        source = sources.get(index);
+        srcGraphDb = source.getGraphDb();
+        mapImported = importedMaps[index];
+        mapExpanded = expandedMaps[index];
+    }
+
+    private List<Transaction> beginSourceTransactions() {
+        List<Transaction> transactions = new ArrayList<Transaction>();
+        for (SourceGraph sourceGraph : sources)
+            transactions.add(sourceGraph.getGraphDb().beginTx());
+
+        return transactions;
+    }
+
+    private static void closeTransactions(List<Transaction> transactions) {
+        for (Transaction transaction : transactions)
+            transaction.close();
+    }
 
-        srcGraphDb.shutdown();
-        srcGraphDb = null;
-        dstGraphDb.shutdown();
-        dstGraphDb = null;
+    private void startPhase(String phase) {
+        metrics.startPhase(phase);
+        metrics.setPosition(-1, 0);
+    }
+
+    private static CommitPolicy getCommitPolicy(Properties properties) {
+        String syncCommit = properties.getProperty(Configuration.PROPERTY_SYNC_COMMIT, COMMIT_OPERATIONS);
+        long operations = Long.parseLong(properties.getProperty(Configuration.PROPERTY_SYNC_COMMIT_OPERATIONS, DEF_COMMIT_OPERATIONS));
+        // estimated transaction state size in megabytes
+        long bytes = Long.parseLong(properties.getProperty(Configuration.PROPERTY_SYNC_COMMIT_BYTES, DEF_COMMIT_BYTES)) << 20;
+        // transaction duration in milliseconds
+        long time = Long.parseLong(properties.getProperty(Configuration.PROPERTY_SYNC_COMMIT_TIME, DEF_COMMIT_TIME));
+
+        if (syncCommit.equals(COMMIT_OPERATIONS))
+            return new OperationCountPolicy(operations);
+        else if (syncCommit.equals(COMMIT_BYTES))
+            return new TransactionSizePolicy(bytes);
+        else if (syncCommit.equals(COMMIT_TIME))
+            return new ElapsedTimePolicy(time);
+        else if (syncCommit.equals(COMMIT_ADAPTIVE))
+            return new AdaptivePolicy(operations, bytes);
+        else
+            throw new IllegalArgumentException("Unknown commit policy: " + syncCommit);
+    }
+
+    private Transaction beginChunk() {
+        chunkSize = 0;
+        chunkBytes = writer.getWrittenBytes();
+        chunkStarted = System.currentTimeMillis();
+
+        return dstGraphDb.beginTx();
+    }
+
+    private Transaction commitChunk(Transaction tx) throws IOException {
+        return commitChunk(tx, false);
+    }
+
+    /**
+     * Commits the current transaction if the commit policy requests it
+     *
+     * @param tx current write transaction of the destination database
+     * @param force commit the transaction regardless of the commit policy
+     * @return write transaction to be used after this call
+     */
+    private Transaction commitChunk(Transaction tx, boolean force) throws IOException {
+        metrics.update(processedCounter, nodeCounter, relCounter, chunksCounter, mapImported.size());
+        metrics.setPosition(journalPosition, journalLimit);
+
+        long bytes = writer.getWrittenBytes() - chunkBytes;
+        long elapsed = System.currentTimeMillis() - chunkStarted;
+
+        if (force || commitPolicy.shouldCommit(chunkSize, bytes, elapsed)) {
+            long operations = chunkSize;
+            ++chunksCounter;
+
+            long started = System.currentTimeMillis();
+            tx.success();
+            tx.close();
+            long latency = System.currentTimeMillis() - started;
+            metrics.committed(latency);
+            profile.committed(metrics.getPhase(), operations, bytes, latency);
+
+            System.out.println("Writing " + chunksCounter + " chunk to database: " + operations + " operations, ~"
+                    + (bytes >> 10) + " KB, open " + elapsed + " ms, commit " + latency + " ms");
+
+            commitPolicy.committed(operations, bytes, elapsed, latency);
+
+            if (null != journal)
+                journal.commit(new Checkpoint(journalPhase, journalPosition, journalLimit, getCounters()));
+
+            tx = beginChunk();
+        }
+
+        return tx;
+    }
+
+    private long[] getCounters() {
+        long[] counters = new long[4 + frontierCounters.length];
+        counters[0] = processedCounter;
+        counters[1] = nodeCounter;
+        counters[2] = relCounter;
+        counters[3] = chunksCounter;
+        System.arraycopy(frontierCounters, 0, counters, 4, frontierCounters.length);
+
+        return counters;
+    }
+
+    private void restoreCounters(long[] counters) {
+        processedCounter = counters[0];
+        nodeCounter = counters[1];
+        relCounter = counters[2];
+        chunksCounter = counters[3];
+        System.arraycopy(counters, 4, frontierCounters, 0, Math.min(counters.length - 4, frontierCounters.length));
+    }
+
+    /**
+     * Matches destination nodes on several threads. The destination node-id space is split into
+     * ranges, every worker claims the next free range and runs read-only lookups against the
+     * source database in its own transactions. Match results are passed back to the calling
+     * thread, which stays the only writer to the destination database.
+     *
+     * @param tx current write transaction of the destination database
+     * @param keys set of properties used to match nodes
+     * @param highId node id after the last destination node to be matched
+     * @param threads number of matching workers
+     * @return write transaction to be used after the matching phase
+     */
+    private Transaction syncNodesParallel(Transaction tx, final Set<String> keys, final long highId, int threads) throws Exception {
+        final long rangeSize = Math.max(1, (highId + threads * RANGES_PER_THREAD - 1) / (threads * RANGES_PER_THREAD));
+        final AtomicLong nextRange = new AtomicLong(0);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final BlockingQueue<MatchBatch> queue = new ArrayBlockingQueue<MatchBatch>(threads * 4);
+
+        System.out.println("Matching " + highId + " node ids in ranges of " + rangeSize);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int i = 0; i < threads; ++i)
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            long start;
+                            while (failure.get() == null && (start = nextRange.getAndAdd(rangeSize)) < highId)
+                                if (!matchRange(start, Math.min(start + rangeSize, highId), keys, queue, failure))
+                                    break;
+                        } catch (Throwable e) {
+                            failure.compareAndSet(null, e);
+                        } finally {
+                            // after a failure nobody waits for the marker, the writer stops on the failure itself
+                            try {
+                                putBatch(queue, MatchBatch.END, failure);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                    }
+                });
+
+            try {
+                int running = threads;
+                while (running > 0 && failure.get() == null) {
+                    MatchBatch batch = queue.poll(MATCH_QUEUE_TIMEOUT, TimeUnit.MILLISECONDS);
+                    if (null == batch)
+                        continue;
+                    if (batch == MatchBatch.END) {
+                        --running;
+                        continue;
+                    }
+
+                    processedCounter += batch.processed;
+
+                    for (MatchResult result : batch.results) {
+                        importMatches(result.dstId, result.srcIds);
+
+                        tx = commitChunk(tx);
+                    }
+                }
+            } catch (Throwable e) {
+                // stops the workers, which would otherwise wait for the writer to take their batches
+                failure.compareAndSet(null, e);
+                throw e;
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        if (failure.get() != null)
+            throw new Exception("Unable to match nodes: " + failure.get().getMessage(), failure.get());
+
+        return tx;
+    }
+
+    /**
+     * Matches destination nodes by sorting (label, key, value, node id) tuples of both databases
+     * into temporary run files and merge-joining them. Memory and temporary disk use are bounded by
+     * sync.sort.memory and sync.sort.disk, so the join works for graphs larger than memory.
+     *
+     * @param tx current write transaction of the destination database
+     * @param types labels of nodes to be matched
+     * @param keys set of properties used to match nodes
+     * @param highId node id after the last destination node to be matched
+     * @param properties sync configuration
+     * @return write transaction to be used after the matching phase
+     */
+    private Transaction syncNodesSorted(Transaction tx, Set<Label> types, Set<String> keys, long highId, Properties properties) throws IOException {
+        Path sortFolder = Paths.get(properties.getProperty(Configuration.PROPERTY_SYNC_SORT_FOLDER, System.getProperty("java.io.tmpdir")));
+        long sortMemory = Long.parseLong(properties.getProperty(Configuration.PROPERTY_SYNC_SORT_MEMORY, DEF_SYNC_SORT_MEMORY)) << 20;
+        long sortDisk = Long.parseLong(properties.getProperty(Configuration.PROPERTY_SYNC_SORT_DISK, DEF_SYNC_SORT_DISK)) << 20;
+
+        final Transaction[] current = { tx };
+
+        try (SortMergeJoin join = new SortMergeJoin(sortFolder, sortMemory, sortDisk)) {
+            System.out.println("Sort source (Nexus) keys");
+            for (Label type : types)
+                for (String key : keys)
+                    try (ResourceIterator<Node> nodes = srcGraphDb.findNodes(type)) {
+                        while (nodes.hasNext()) {
+                            Node srcNode = nodes.next();
+
+                            // a schema index lookup by a string never matches elements of an array property
+                            Object value = srcNode.getProperty(normalizers.getProperty(key), null);
+                            if (value instanceof String)
+                                join.addSource(type, key, (String) value, srcNode.getId());
+                        }
+                    }
+
+            System.out.println("Sort target (Client) keys");
+            for (Node dstNode : dstGraphDb.getAllNodes()) {
+                if (dstNode.getId() >= highId || !isPending(dstNode))
+                    continue;
+
+                Label labelType = getLabelType(dstNode);
+                if (null == labelType)
+                    continue;
+
+                ++processedCounter;
+
+                for (String property : keys) {
+                    if (dstNode.hasProperty(property)) {
+                        Object values = dstNode.getProperty(property);
+
+                        if (values instanceof String)
+                            addTarget(join, labelType, property, (String) values, dstNode.getId());
+                        else if (values instanceof String[])
+                            for (String value : (String[]) values)
+                                addTarget(join, labelType, property, value, dstNode.getId());
+                    }
+                }
+            }
+
+            join.join(new SortMergeJoin.Listener() {
+                @Override
+                public void match(long targetId, long sourceId) throws IOException {
+                    metrics.matched(1);
+                    importMatch(targetId, sourceId);
+
+                    current[0] = commitChunk(current[0]);
+                }
+            });
+        }
+
+        return current[0];
+    }
+
+    private void addTarget(SortMergeJoin join, Label labelType, String property, String value, long dstId) throws IOException {
+        String normalized = normalizers.normalize(property, value);
+        if (null != normalized)
+            join.addTarget(labelType, property, normalized, dstId);
+    }
+
+    /**
+     * @return false if the matching has failed and the worker has to stop
+     */
+    private boolean matchRange(long start, long end, Set<String> keys, BlockingQueue<MatchBatch> queue,
+                               AtomicReference<Throwable> failure) throws InterruptedException {
+        List<Transaction> srcTransactions = beginSourceTransactions();
+        try ( Transaction dstTx = dstGraphDb.beginTx() )
+        {
+            MatchBatch batch = new MatchBatch();
+            for (long id = start; id < end; ++id) {
+                Node dstNode;
+                try {
+                    dstNode = dstGraphDb.getNodeById(id);
+                } catch (NotFoundException e) {
+                    continue;
+                }
+
+                long[][] matches = findMatches(dstNode, keys);
+                if (null == matches)
+                    continue;
+
+                ++batch.processed;
+                if (hasMatches(matches))
+                    batch.results.add(new MatchResult(id, matches));
+
+                if (batch.results.size() >= MATCH_BATCH_SIZE) {
+                    if (!putBatch(queue, batch, failure))
+                        return false;
+                    batch = new MatchBatch();
+                }
+            }
+
+            return putBatch(queue, batch, failure);
+        } finally {
+            closeTransactions(srcTransactions);
+        }
+    }
+
+    /**
+     * Waits for a free place in the queue until the batch is queued or the matching fails
+     *
+     * @return false if the batch has been dropped because the matching has failed
+     */
+    private static boolean putBatch(BlockingQueue<MatchBatch> queue, MatchBatch batch, AtomicReference<Throwable> failure) throws InterruptedException {
+        while (failure.get() == null)
+            if (queue.offer(batch, MATCH_QUEUE_TIMEOUT, TimeUnit.MILLISECONDS))
+                return true;
+
+        return false;
+    }
+
+    static long getHighestNodeId(GraphDatabaseService graphDb) {
+        return ((GraphDatabaseAPI) graphDb).getDependencyResolver()
+                .resolveDependency(IdGeneratorFactory.class)
+                .get(IdType.NODE)
+                .getHighId();
     }
 
     public static File GetDbPath(final String folder) throws Neo4jException, IOException
@@ -253,7 +1127,7 @@ public class Process {
         }
     }
 
-    private static void createIndex(Schema schema, Label label, String key) {
+    static void createIndex(Schema schema, Label label, String key) {
         if (!isConstraintExists(schema, label, key) && !isIndexExists(schema, label, key)) {
             System.out.println("Creating Index on: " + label.toString() + "(" + key + ")");
 
@@ -264,22 +1138,89 @@ public class Process {
         }
     }
 
-    private static void copySyblings(Node src, Node dst, int synblingLevel) {
+    /**
+     * Copies the neighbourhood of the source node breadth first. Every source node is expanded at
+     * most once, at the shallowest level it has been reached from, and a node is never expanded
+     * again with a level lower than the one it has already been expanded with by previous roots.
+     *
+     * @param src source node
+     * @param dst id of the source node copy in the destination database
+     * @param synblingLevel number of levels to expand after the node own relationships
+     */
+    private void copySyblings(Node src, long dst, int synblingLevel) throws IOException {
+        if (!markExpanded(src.getId(), synblingLevel))
+            return;
 
-        //	System.out.println("Copy syblings with level: " + synblingLevel);
+        long started = System.currentTimeMillis();
+        long importedNodes = nodeCounter;
+        long importedRels = relCounter;
+        long expanded = 0;
+        long walked = 0;
 
-        // Iterate throigh all node relationships
-        Iterable<Relationship> rels = src.getRelationships();
-        for (Relationship rel : rels) {
-            // find node sitting on other end of relationship
-            Node other = rel.getOtherNode(src);
-            Node copy = copyNode(other);
+        List<Node> frontier = new ArrayList<Node>();
+        List<Long> copies = new ArrayList<Long>();
+        frontier.add(src);
+        copies.add(dst);
+
+        for (int level = 0; !frontier.isEmpty(); ++level) {
+            frontierCounters[level] += frontier.size();
+            expanded += frontier.size();
+
+            int remaining = synblingLevel - level;
+            List<Node> next = new ArrayList<Node>();
+            List<Long> nextCopies = new ArrayList<Long>();
+
+            for (int i = 0; i < frontier.size(); ++i) {
+                Node node = frontier.get(i);
+
+                // Iterate throigh all node relationships
+                long degree = 0;
+                Iterable<Relationship> rels = node.getRelationships();
+                for (Relationship rel : rels) {
+                    ++degree;
 
-            createRelationship(dst, copy, rel.getType());
+                    // find node sitting on other end of relationship
+                    Node other = rel.getOtherNode(node);
+                    long copy = copyNode(other);
+
+                    createRelationship(copies.get(i), copy, rel.getType());
+
+                    if (remaining > 0 && markExpanded(other.getId(), remaining - 1)) {
+                        next.add(other);
+                        nextCopies.add(copy);
+                    }
+                }
 
-            if (synblingLevel > 0)
-                copySyblings(other, copy, synblingLevel-1);
+                walked += degree;
+                if (profile.isHub(degree))
+                    profile.hub(node.getId(), node.getProperty(PROPERTY_KEY, null), node.getProperty(PROPERTY_NODE_TYPE, null), degree);
+            }
+
+            frontier = next;
+            copies = nextCopies;
         }
+
+        if (profile.isLargeNeighbourhood(walked))
+            profile.neighbourhood(src.getId(), src.getProperty(PROPERTY_KEY, null), expanded, walked,
+                    nodeCounter - importedNodes, relCounter - importedRels, System.currentTimeMillis() - started);
+    }
+
+    private boolean markExpanded(long srcId, int synblingLevel) throws IOException {
+        long level = mapExpanded.get(srcId);
+        if (level != LongLongMap.NO_VALUE && level >= synblingLevel)
+            return false;
+
+        mapExpanded.put(srcId, synblingLevel);
+        if (null != journal)
+            journal.expanded(srcId, synblingLevel);
+
+        return true;
+    }
+
+    private void putImported(long srcId, long dstId) throws IOException {
+        mapImported.put(srcId, dstId);
+        if (null != journal)
+            journal.imported(srcId, dstId);
     }
 
     private static boolean isConstraintExists(Schema schema, Label label, String key) {
@@ -300,23 +1241,48 @@ public class Process {
         return false;
     }
 
-    private static boolean isRelated(Node from, Node to) {
-        if (from.getId() == to.getId())
+    /**
+     * Checks whether two destination nodes are connected by a relationship of any type and direction.
+     * Relationships of a node are loaded into the setRelated the first time the node is checked, and
+     * every relationship created by the sync is added to it, so once either node has been seeded the
+     * check does not depend on the node degree.
+     */
+    private boolean isRelated(long from, long to) throws IOException {
+        if (from == to)
             return true;
 
-        Iterable<Relationship> rels = from.getRelationships();
-        for (Relationship rel : rels)
-            if (rel.getOtherNode(from).getId() == to.getId())
-                return true;
+        long first = Math.min(from, to);
+        long second = Math.max(from, to);
+        if (setRelated.contains(first, second))
+            return true;
 
-        return false;
+        if (mapSeeded.containsKey(from) || mapSeeded.containsKey(to))
+            return false;
+
+        // seed the node with the smaller degree, hub nodes are seeded only when they are checked against other hubs
+        Node fromNode = dstGraphDb.getNodeById(from);
+        Node toNode = dstGraphDb.getNodeById(to);
+        seedRelationships(fromNode.getDegree() <= toNode.getDegree() ? fromNode : toNode);
+
+        return setRelated.contains(first, second);
     }
 
-    private static Node copyNode(Node srcNode) {
+    private void seedRelationships(Node node) throws IOException {
+        Iterable<Relationship> rels = node.getRelationships();
+        for (Relationship rel : rels) {
+            long other = rel.getOtherNodeId(node.getId());
+
+            setRelated.add(Math.min(node.getId(), other), Math.max(node.getId(), other));
+        }
+
+        mapSeeded.put(node.getId(), 1);
+    }
+
+    private long copyNode(Node srcNode) throws IOException {
         // first check did we already have imported that node
-        Long id = mapImported.get(srcNode.getId());
-        if (id != null)
-            return dstGraphDb.getNodeById(id);
+        long id = mapImported.get(srcNode.getId());
+        if (id != LongLongMap.NO_VALUE)
+            return id;
 
         // Acquire source node key and type
         // We are in the RDS ecosystem now, therefore all keys must be strings,
@@ -328,33 +1294,16 @@ public class Process {
         Label type = Label.label(srcType);
 
         // let try find same node in the dst database
-        Node dstNode = dstGraphDb.findNode(type, PROPERTY_KEY, srcKey);
-        if (dstNode == null) {
+        id = writer.findNode(type, srcKey);
+        if (id == GraphWriter.NO_NODE) {
 
             //		System.out.println("Creting new node");
 
             // if the node does not exists, create it
-            dstNode = dstGraphDb.createNode();
-
-            // copy all node properties
-            for (String p : srcNode.getPropertyKeys())
-                dstNode.setProperty(p, srcNode.getProperty(p));
-
-            // add a new label for augmented date and time
-                dstNode.setProperty("augmented_at", DateTime.now().toString());
-
-            // copy all node labels
-            for (Label l : srcNode.getLabels())
-                dstNode.addLabel(l);
-
-            //add researchgraph label to show the node is added to the neo4j by Research Graph Augment Services
-                dstNode.addLabel(new Label() {
-                    @Override
-                    public String name() {
-                        return "researchgraph";
-                    }
-                });
+            id = writer.createNode(srcNode);
 
+            // a new node has no relationships yet
+            mapSeeded.put(id, 1);
 
             // increase nodes count
             ++nodeCounter;
@@ -365,17 +1314,18 @@ public class Process {
         }
 
         // store node id in the map, so we do not need to search it again
-        mapImported.put(srcNode.getId(), dstNode.getId());
+        putImported(srcNode.getId(), id);
 
-        return dstNode;
+        return id;
     }
 
-    private static void createRelationship(Node from, Node to, RelationshipType type) {
+    private void createRelationship(long from, long to, RelationshipType type) throws IOException {
         // create relationship to the node if needed
         if (!isRelated(from, to)) {
             //		System.out.println("Creating new relationship");
 
-            from.createRelationshipTo(to, type);
+            writer.createRelationship(from, to, type);
+            setRelated.add(Math.min(from, to), Math.max(from, to));
 
             // increase relationships count
             ++relCounter;
@@ -385,7 +1335,187 @@ public class Process {
         }
     }
 
-    private static void syncNode(Node dstNode, Set<String> keys) throws Exception {
+    private void syncNode(Node dstNode, Set<String> keys) throws IOException {
+        long[][] matches = findMatches(dstNode, keys);
+        if (null != matches) {
+            ++processedCounter;
+
+            importMatches(dstNode.getId(), matches);
+        }
+    }
+
+    /**
+     * Searches every source database for nodes matching the destination node. This method only
+     * reads from the databases, so it can be called from several threads at once.
+     *
+     * @param dstNode destination node
+     * @param keys set of properties used to match nodes
+     * @return ids of the matched source nodes by source or null if the node can not be synced
+     */
+    private long[][] findMatches(Node dstNode, Set<String> keys) {
+        if (!isPending(dstNode))
+            return null;
+
+        Label labelType = getLabelType(dstNode);
+        if (null == labelType)
+            return null;
+
+        long[][] result = new long[matchers.length][];
+        List<Long> matches = new ArrayList<Long>();
+
+        for (int source = 0; source < matchers.length; ++source) {
+            matches.clear();
+
+            // check if node has one of property required for syncing
+            for (String property : keys) {
+                if (dstNode.hasProperty(property)) {
+                    Object values = dstNode.getProperty(property);
+
+                    // we only interesting in String or String[] properties at this point
+                    if (values instanceof String)
+                        matchNode(matchers[source], labelType, property, (String) values, matches);
+                    else if (values instanceof String[])
+                        for (String value : (String[]) values)
+                            matchNode(matchers[source], labelType, property, value, matches);
+                }
+            }
+
+            result[source] = new long[matches.size()];
+            for (int i = 0; i < matches.size(); ++i)
+                result[source][i] = matches.get(i);
+        }
+
+        return result;
+    }
+
+    private static boolean hasMatches(long[][] matches) {
+        for (long[] sourceMatches : matches)
+            if (sourceMatches.length > 0)
+                return true;
+
+        return false;
+    }
+
+    /**
+     * @param dstNode destination node
+     * @return true if the node has to be matched in this run
+     */
+    private boolean isPending(Node dstNode) {
+        if (null == watermark)
+            return true;
+
+        // nodes created by previous runs are re-expanded through their source nodes instead
+        return !dstNode.hasProperty(GraphWriter.PROPERTY_AUGMENTED_AT)
+                && (watermark.isTargetChanged(dstNode) || mapRematched.containsKey(dstNode.getId()));
+    }
+
+    /**
+     * Finds what a change of the source database affects. A changed source node can match
+     * unchanged destination nodes, which are found by one scan of the destination database for
+     * the changed key values. It can also alter the neighbourhood of every root up to one level
+     * further than the sibling level, so the search walks that far from all changed nodes at once,
+     * visiting every source node once. The roots found are source nodes whose copies have been
+     * augmented to target nodes by previous runs.
+     *
+     * @param keys set of properties used to match nodes
+     * @param synblingLevel sibling expansion level
+     * @param allocator allocator of the visited set
+     */
+    private void findChangedRoots(Set<String> keys, int synblingLevel, LongArrayAllocator allocator) throws IOException {
+        try (LongLongMap visited = new LongLongMap(allocator)) {
+            Set<String> changedValues = new HashSet<String>();
+            List<Node> frontier = new ArrayList<Node>();
+            for (Node srcNode : srcGraphDb.getAllNodes())
+                if (watermark.isSourceChanged(srcNode)) {
+                    frontier.add(srcNode);
+                    visited.put(srcNode.getId(), 0);
+
+                    Object type = srcNode.getProperty(PROPERTY_NODE_TYPE, null);
+                    for (String key : keys) {
+                        // index lookups only match string properties of the source nodes
+                        Object value = srcNode.getProperty(normalizers.getProperty(key), null);
+                        if (type instanceof String && value instanceof String)
+                            changedValues.add(getMatchKey((String) type, key, (String) value));
+                    }
+                }
+
+            System.out.println("Found " + frontier.size() + " changed source (Nexus) nodes");
+
+            if (!changedValues.isEmpty())
+                for (Node dstNode : dstGraphDb.getAllNodes())
+                    if (!dstNode.hasProperty(GraphWriter.PROPERTY_AUGMENTED_AT) && !watermark.isTargetChanged(dstNode)
+                            && hasChangedValue(dstNode, keys, changedValues))
+                        mapRematched.put(dstNode.getId(), 1);
+
+            System.out.println("Found " + mapRematched.size() + " unchanged target (Client) nodes to match again");
+
+            long roots = 0;
+            for (int level = 0; level <= synblingLevel + 1 && !frontier.isEmpty(); ++level) {
+                List<Node> next = new ArrayList<Node>();
+
+                for (Node node : frontier) {
+                    if (isAugmentedRoot(node))
+                        ++roots;
+
+                    if (level <= synblingLevel)
+                        for (Relationship rel : node.getRelationships()) {
+                            Node other = rel.getOtherNode(node);
+                            if (!visited.containsKey(other.getId())) {
+                                visited.put(other.getId(), level + 1);
+                                next.add(other);
+                            }
+                        }
+                }
+
+                frontier = next;
+            }
+
+            System.out.println("Found " + roots + " neighbourhoods to expand again");
+        }
+    }
+
+    private boolean hasChangedValue(Node dstNode, Set<String> keys, Set<String> changedValues) {
+        Object type = dstNode.getProperty(PROPERTY_TYPE, null);
+        if (!(type instanceof String))
+            return false;
+
+        for (String key : keys) {
+            Object values = dstNode.getProperty(key, null);
+            if (values instanceof String) {
+                if (changedValues.contains(getMatchKey((String) type, key, normalizers.normalize(key, (String) values))))
+                    return true;
+            } else if (values instanceof String[])
+                for (String value : (String[]) values)
+                    if (changedValues.contains(getMatchKey((String) type, key, normalizers.normalize(key, value))))
+                        return true;
+        }
+
+        return false;
+    }
+
+    private static String getMatchKey(String type, String key, String value) {
+        return type + '\0' + key + '\0' + value;
+    }
+
+    private boolean isAugmentedRoot(Node srcNode) throws IOException {
+        Object key = srcNode.getProperty(PROPERTY_KEY, null);
+        Object type = srcNode.getProperty(PROPERTY_NODE_TYPE, null);
+        if (!(key instanceof String) || !(type instanceof String))
+            return false;
+
+        long copy = writer.findNode(Label.label((String) type), (String) key);
+        if (copy == GraphWriter.NO_NODE || !dstGraphDb.getNodeById(copy).hasRelationship(Relationships.augment))
+            return false;
+
+        putImported(srcNode.getId(), copy);
+        return true;
+    }
+
+    /**
+     * @param dstNode destination node
+     * @return label of the node type or null if the node can not be synced
+     */
+    private static Label getLabelType(Node dstNode) {
         // Node healty check
 
         // a simple check to see if node has a key, source and type
@@ -393,13 +1523,13 @@ public class Process {
                 !dstNode.hasProperty(PROPERTY_SOURCE) ||
                 !dstNode.hasProperty(PROPERTY_TYPE)){
             System.out.println("Warning: node ID(" + dstNode.getId() + ") is missing key, source or type!" );
-            return;}
+            return null;}
 
 
         // extract node type. The node must have one string type
         Object type = dstNode.getProperty(PROPERTY_TYPE);
         if (type == null || !(type instanceof String))
-            return;
+            return null;
 
         // the type must be either datatase, grant, researcher or publication
         Label labelType;
@@ -412,49 +1542,81 @@ public class Process {
         else if (type.equals(Types.publication.name()))
             labelType = Types.publication;
         else
-            return;
-
-        ++processedCounter;
+            return null;
 
-        // check if node has one of property required for syncing
-        for (String property : keys) {
-            if (dstNode.hasProperty(property)) {
-                Object values = dstNode.getProperty(property);
-
-                // we only interesting in String or String[] properties at this point
-                if (values instanceof String)
-                    matchNode(dstNode, labelType, property, (String) values);
-                else if (values instanceof String[])
-                    for (String value : (String[]) values)
-                        matchNode(dstNode, labelType, property, value);
-            }
-        }
+        return labelType;
     }
 
-    private static void matchNode(Node dstNode, Label labelType, String property, Object value) {
-        System.out.println("Searching for label:" + labelType + " | " + property + " = " + value);
+    private void matchNode(Matcher matcher, Label labelType, String property, String value, List<Long> matches) {
+        // per-item messages are sampled, printing every search slows the matching down
+        boolean logged = logSampler.sample();
+        if (logged)
+            System.out.println("Searching for label:" + labelType + " | " + property + " = " + value);
+
+        // normalized keys are looked up by the canonical form of the value in the shadow property
+        String normalized = normalizers.normalize(property, value);
+        if (null == normalized)
+            return;
 
         // At this point the sync will only match nodes of the same type.
         // This will require source nodes to have correct type or sync program will not work
-        ResourceIterator<Node> nodes = srcGraphDb.findNodes(labelType, property, value);
+        int found = matches.size();
+        long started = System.nanoTime();
+        matcher.match(labelType, normalizers.getProperty(property), normalized, matches);
+        long elapsed = System.nanoTime() - started;
+        metrics.lookup(elapsed);
+        metrics.matched(matches.size() - found);
+        profile.lookup(labelType.name(), property, elapsed, matches.size() - found);
+
+        if (logged)
+            for (int i = found; i < matches.size(); ++i)
+                System.out.println("Match found with id : " + matches.get(i));
+    }
 
-        if (null != nodes)
-            while (nodes.hasNext()) {
-                Node srcNode = nodes.next();
+    /**
+     * Imports the matches of the first source and defers the matches of the others
+     * until all sources of higher precedence have been synced
+     *
+     * @param dstId destination node id
+     * @param matches ids of the matched source nodes by source
+     * @throws IOException if the deferred matches can not be stored
+     */
+    private void importMatches(long dstId, long[][] matches) throws IOException {
+        for (long srcId : matches[0])
+            importMatch(dstId, srcId);
+
+        for (int source = 1; source < matches.length; ++source)
+            for (long srcId : matches[source])
+                deferredMatches[source].add(dstId, srcId);
+    }
 
-                System.out.println("Match found with id : " + srcNode.getId());
+    private void importMatch(long dstId, long srcId) throws IOException {
+        // DK Disabled the creation of knownAs relationsip
+        // to enable, comment map adding above and uncomment the rest
 
-                // DK Disabled the creation of knownAs relationsip
-                // to enable, comment map adding above and uncomment the rest
+        // get or copy the node to the dst database
+        long cpyId = copyNode(srcGraphDb.getNodeById(srcId));
 
-                // get or copy the node to the dst database
-                Node cpyNode = copyNode(srcNode);
+        // create relationships
+        createRelationship(dstId, cpyId, Relationships.augment);
+    }
 
-                // create relationships
-                createRelationship(dstNode, cpyNode, Relationships.augment);
+    private static class MatchResult {
+        private final long dstId;
+        private final long[][] srcIds;
 
-                //System.out.println("Done");
-            }
+        private MatchResult(long dstId, long[][] srcIds) {
+            this.dstId = dstId;
+            this.srcIds = srcIds;
+        }
+    }
+
+    private static class MatchBatch {
+        // marker put to the queue by every worker once it has no more ranges to process
+        private static final MatchBatch END = new MatchBatch();
+
+        private final List<MatchResult> results = new ArrayList<MatchResult>();
+        private long processed;
     }
 
 }
@@ -0,0 +1,148 @@
+package org.rdswitchboard.utils.neo4j.sync;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.graphdb.factory.GraphDatabaseSettings;
+import org.neo4j.graphdb.schema.Schema;
+import org.rdswitchboard.utils.neo4j.sync.exceptions.Neo4jException;
+import org.rdswitchboard.utils.neo4j.sync.match.HashJoinMatcher;
+import org.rdswitchboard.utils.neo4j.sync.match.Matcher;
+import org.rdswitchboard.utils.neo4j.sync.normalize.Normalizers;
+import org.rdswitchboard.utils.neo4j.sync.stats.GraphStatistics;
+
+/**
+ * Source (Nexus) database opened once and shared by synthesis jobs of several targets, 
+ * so they use the same page cache. Normalized values and indexes are only created by 
+ * the first job which needs them, every other job only reads from the database.
+ */
+public class SourceGraph implements AutoCloseable {
+	private final Path path;
+	private final GraphDatabaseService graphDb;
+	// normalizers and label|property indexes which have already been prepared
+	private final Set<String> prepared = new HashSet<String>();
+	// hash join tables built by previous jobs, by matching properties and memory budget
+	private final Map<String, Matcher> matchers = new HashMap<String, Matcher>();
+	private boolean statistics;
+	
+	/**
+	 * Opens the source database
+	 * 
+	 * @param path source (Nexus) database instance folder
+	 */
+	public SourceGraph(Path path) throws Neo4jException, IOException {
+		this.path = path;
+		
+		System.out.println("Connecting to Nexus database");
+		graphDb = new GraphDatabaseFactory()
+				.newEmbeddedDatabaseBuilder( Process.GetDbPath(path.toString()) )
+				.loadPropertiesFromFile( Process.GetConfPath(path.toString()).toString() )
+				.setConfig( GraphDatabaseSettings.read_only, "false" )
+				.newGraphDatabase();
+
+		Process.registerShutdownHook( graphDb );
+	}
+	
+	public Path getPath() {
+		return path;
+	}
+	
+	public GraphDatabaseService getGraphDb() {
+		return graphDb;
+	}
+	
+	/**
+	 * Prints statistics of the database, only the first time it is called
+	 * 
+	 * @param statistics statistics collector
+	 * @param background true if the statistics should be collected in background
+	 * @return future of the background collection or null if it is not running
+	 */
+	public synchronized Future<?> printStatistics(GraphStatistics statistics, boolean background) {
+		if (this.statistics)
+			return null;
+		
+		this.statistics = true;
+		return Process.printStatistics("source (Nexus)", graphDb, statistics, background);
+	}
+	
+	/**
+	 * Writes normalized values of the keys and creates indexes used to match them. Jobs 
+	 * calling this at once wait for each other, so lookups never run against missing indexes.
+	 * 
+	 * @param types labels of nodes to be matched
+	 * @param keys set of properties used to match nodes
+	 * @param normalizers normalizers of the keys
+	 */
+	public synchronized void prepare(Set<Label> types, Set<String> keys, Normalizers normalizers) {
+		if (!normalizers.isEmpty() && prepared.add(normalizers.toString())) {
+			System.out.println("Normalize " + normalizers + " in source (Nexus) database");
+
+			long normalized = normalizers.canonicalize(graphDb, types, Process.getHighestNodeId(graphDb));
+			System.out.println("Updated " + normalized + " normalized values");
+		}
+		
+		boolean created = false;
+		try ( Transaction tx = graphDb.beginTx() ) {
+			Schema schema = graphDb.schema();
+
+			for (Label type : types) 
+				for (String key : keys) 
+					if (prepared.add(type.name() + '|' + normalizers.getProperty(key))) {
+						if (!created)
+							System.out.println("Create indexes in source (Nexus) database");
+						
+						Process.createIndex(schema, type, normalizers.getProperty(key));
+						created = true;
+					}
+
+			tx.success();
+		}
+
+		if (created && !normalizers.isEmpty()) {
+			try ( Transaction ignored = graphDb.beginTx() ) {
+				// indexes of new shadow properties have to be populated before lookups can use them
+				graphDb.schema().awaitIndexesOnline(1, TimeUnit.DAYS);
+			}
+		}
+	}
+	
+	/**
+	 * Returns hash join tables of the matching properties, built by the first job which needs them 
+	 * and reused by the following jobs with the same properties and memory budget
+	 * 
+	 * @param types labels of nodes to be matched
+	 * @param properties matching properties
+	 * @param memoryBudget maximum number of bytes all tables are allowed to use
+	 * @return matcher of the properties
+	 */
+	public synchronized Matcher getHashMatcher(Set<Label> types, Set<String> properties, long memoryBudget) {
+		String name = new TreeSet<String>(properties) + "|" + memoryBudget;
+		Matcher matcher = matchers.get(name);
+		if (null == matcher) {
+			System.out.println("Load matching keys from source (Nexus) database");
+			
+			matchers.put(name, matcher = new HashJoinMatcher(graphDb, types, properties, memoryBudget));
+		}
+		
+		return matcher;
+	}
+	
+	@Override
+	public void close() {
+		System.out.println("Shutdown source (Nexus) database");
+		
+		graphDb.shutdown();
+	}
+}
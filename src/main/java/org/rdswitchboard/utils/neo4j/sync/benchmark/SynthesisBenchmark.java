@@ -0,0 +1,261 @@
+package org.rdswitchboard.utils.neo4j.sync.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.joda.time.DateTime;
+import org.rdswitchboard.utils.neo4j.sync.App;
+import org.rdswitchboard.utils.neo4j.sync.Configuration;
+import org.rdswitchboard.utils.neo4j.sync.Process;
+import org.rdswitchboard.utils.neo4j.sync.SourceGraph;
+import org.rdswitchboard.utils.neo4j.sync.generator.GraphGenerator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * End to end benchmark of the sync over generated graphs.
+ * <p>
+ * For every scale a Nexus graph and a target graph of a share of its size are generated, and 
+ * the Nexus is archived into a zip drop. Every run stages the Nexus from the drop and the target 
+ * from its folder the way App does, synthesizes them with the sync level of the run and archives 
+ * the augmented target as it is published. Wall time of every phase, nodes and relationships per 
+ * second and the peak heap are written into a JSON file. When a baseline, which is a JSON file 
+ * of a previous benchmark, is given, every run whose throughput dropped by more than 
+ * the threshold is reported as a regression.
+ * <p>
+ * All sync.* properties are passed to the runs. On Java 9 and later embedded Neo4j needs the 
+ * --add-opens options of the jdk9-tests profile.
+ */
+public class SynthesisBenchmark {
+	public static final String RUNS = "runs";
+	public static final String REGRESSIONS = "regressions";
+	public static final String NAME = "name";
+	
+	public static final String PHASE_GENERATE = "generate";
+	public static final String PHASE_STAGE = "stage";
+	public static final String PHASE_ARCHIVE = "archive";
+	
+	// metrics compared against the baseline
+	public static final String[] THROUGHPUT_METRICS = { "processed_per_second", "nodes_per_second", "relationships_per_second" };
+	
+	private static final String DEF_SCALES = "1";
+	private static final String DEF_LEVELS = "1,2";
+	private static final String DEF_TARGET = "0.1";
+	private static final String DEF_OVERLAP = "0.3";
+	private static final String DEF_THRESHOLD = "0.2";
+	private static final String DEF_OUTPUT = "benchmark.json";
+	
+	private static final String NEXUS = "nexus";
+	private static final String CLIENT = "client";
+	private static final Set<String> KEYS = new HashSet<String>(Arrays.asList("doi", "orcid"));
+	
+	public static void main(String[] args) {
+		try {
+			List<String> regressions = run(Configuration.fromArgs(args));
+			if (!regressions.isEmpty())
+				System.exit(1);
+		} catch (Exception e) {
+			e.printStackTrace();
+			
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Runs the benchmark and writes its results
+	 * 
+	 * @param properties benchmark and sync configuration
+	 * @return list of regressions against the baseline, empty if there is no baseline
+	 */
+	public static List<String> run(Properties properties) throws Exception {
+		double[] scales = parseDoubles(properties.getProperty(Configuration.PROPERTY_BENCHMARK_SCALES, DEF_SCALES));
+		double[] levels = parseDoubles(properties.getProperty(Configuration.PROPERTY_BENCHMARK_LEVELS, DEF_LEVELS));
+		double target = Double.parseDouble(properties.getProperty(Configuration.PROPERTY_BENCHMARK_TARGET, DEF_TARGET));
+		double overlap = Double.parseDouble(properties.getProperty(Configuration.PROPERTY_BENCHMARK_OVERLAP, DEF_OVERLAP));
+		double threshold = Double.parseDouble(properties.getProperty(Configuration.PROPERTY_BENCHMARK_THRESHOLD, DEF_THRESHOLD));
+		Path output = Paths.get(properties.getProperty(Configuration.PROPERTY_BENCHMARK_OUTPUT, DEF_OUTPUT));
+		String baseline = properties.getProperty(Configuration.PROPERTY_BENCHMARK_BASELINE);
+		
+		if (target <= 0 || target > 1)
+			throw new IllegalArgumentException("benchmark.target must be above 0 and not above 1");
+		if (threshold < 0 || threshold >= 1)
+			throw new IllegalArgumentException("benchmark.threshold must be between 0 and 1");
+		
+		App.configure(properties);
+		
+		ObjectMapper mapper = new ObjectMapper();
+		ObjectNode results = mapper.createObjectNode();
+		results.put("created_at", DateTime.now().toString());
+		results.put("java_version", System.getProperty("java.version"));
+		results.put("processors", Runtime.getRuntime().availableProcessors());
+		results.put("max_heap_bytes", Runtime.getRuntime().maxMemory());
+		ArrayNode runs = results.putArray(RUNS);
+		
+		String folder = properties.getProperty(Configuration.PROPERTY_BENCHMARK_FOLDER);
+		Path work = StringUtils.isEmpty(folder) ? Files.createTempDirectory("benchmark_") 
+				: Files.createTempDirectory(Files.createDirectories(Paths.get(folder)), "benchmark_");
+		
+		try {
+			for (double scale : scales) {
+				Path generated = work.resolve("generated");
+				Path nexus = generated.resolve(NEXUS);
+				Path client = generated.resolve(CLIENT);
+				Path drop = generated.resolve(NEXUS + ".zip");
+				
+				long started = System.currentTimeMillis();
+				GraphGenerator nexusGenerator = new GraphGenerator(NEXUS, scale, scale, 1, 0, 2.5, 1);
+				GraphGenerator.generate(nexusGenerator, nexus, GraphGenerator.OUTPUT_NEO4J);
+				GraphGenerator clientGenerator = new GraphGenerator(CLIENT, scale * target, scale, overlap, 0, 2.5, 2);
+				GraphGenerator.generate(clientGenerator, client, GraphGenerator.OUTPUT_NEO4J);
+				App.archiveDatabase(nexus, drop, NEXUS);
+				long generateTime = System.currentTimeMillis() - started;
+				
+				for (double level : levels) {
+					ObjectNode run = runs.addObject();
+					run.put(NAME, "scale=" + scale + " level=" + (int) level);
+					run.put("scale", scale);
+					run.put("level", (int) level);
+					run.put("source_nodes", nexusGenerator.getSize());
+					run.put("target_nodes", clientGenerator.getSize());
+					
+					ObjectNode phases = run.putObject("phases");
+					phases.put(PHASE_GENERATE, generateTime);
+					
+					runSynthesis(run, phases, work.resolve("run"), drop, client, (int) level, properties);
+					
+					System.out.println("Benchmark " + run);
+				}
+				
+				FileUtils.deleteDirectory(generated.toFile());
+			}
+		} finally {
+			FileUtils.deleteDirectory(work.toFile());
+		}
+		
+		List<String> regressions = new ArrayList<String>();
+		if (!StringUtils.isEmpty(baseline)) 
+			regressions = compare(runs, mapper.readTree(new File(baseline)).path(RUNS), threshold);
+		
+		ArrayNode list = results.putArray(REGRESSIONS);
+		for (String regression : regressions) {
+			System.out.println("Regression: " + regression);
+			list.add(regression);
+		}
+		
+		mapper.writerWithDefaultPrettyPrinter().writeValue(output.toFile(), results);
+		System.out.println("Benchmark results have been written to " + output);
+		
+		return regressions;
+	}
+	
+	/**
+	 * Compares throughput of the runs with runs of the same name in the baseline
+	 * 
+	 * @param runs benchmark runs
+	 * @param baseline baseline runs
+	 * @param threshold allowed share of the throughput drop
+	 * @return list of regressions
+	 */
+	public static List<String> compare(JsonNode runs, JsonNode baseline, double threshold) {
+		List<String> regressions = new ArrayList<String>();
+		
+		for (JsonNode run : runs) 
+			for (JsonNode base : baseline) 
+				if (base.path(NAME).asText().equals(run.path(NAME).asText())) 
+					for (String metric : THROUGHPUT_METRICS) {
+						double expected = base.path(metric).asDouble();
+						double actual = run.path(metric).asDouble();
+						
+						if (expected > 0 && actual < expected * (1 - threshold))
+							regressions.add(run.path(NAME).asText() + ": " + metric + " dropped from " 
+									+ expected + " to " + actual);
+					}
+		
+		return regressions;
+	}
+	
+	private static void runSynthesis(ObjectNode run, ObjectNode phases, Path folder, Path drop, Path client, 
+			int level, Properties properties) throws Exception {
+		Path source = folder.resolve(NEXUS);
+		Path target = folder.resolve(CLIENT);
+		
+		try {
+			long started = System.currentTimeMillis();
+			App.downloadDatabase(drop.toString(), source);
+			App.downloadDatabase(client.toString(), target);
+			phases.put(PHASE_STAGE, System.currentTimeMillis() - started);
+			
+			System.gc();
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+				if (pool.getType() == MemoryType.HEAP)
+					pool.resetPeakUsage();
+			
+			started = System.currentTimeMillis();
+			Process process;
+			try (SourceGraph sourceGraph = new SourceGraph(source)) {
+				process = new Process(sourceGraph, target, KEYS, level, properties);
+				process.run();
+			}
+			long synthesisTime = System.currentTimeMillis() - started;
+			
+			long peakHeap = 0;
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+				if (pool.getType() == MemoryType.HEAP)
+					peakHeap += pool.getPeakUsage().getUsed();
+			
+			Map<String, Long> phaseTimes = process.getPhaseTimes();
+			for (Map.Entry<String, Long> phase : phaseTimes.entrySet())
+				phases.put(phase.getKey(), phase.getValue());
+			
+			started = System.currentTimeMillis();
+			Path archive = folder.resolve(CLIENT + ".zip");
+			App.archiveDatabase(target, archive, CLIENT);
+			phases.put(PHASE_ARCHIVE, System.currentTimeMillis() - started);
+			
+			Long matchingTime = phaseTimes.get(Process.PHASE_MATCHING);
+			
+			run.put("synthesis_ms", synthesisTime);
+			run.put("processed_nodes", process.getProcessedCounter());
+			run.put("imported_nodes", process.getNodeCounter());
+			run.put("imported_relationships", process.getRelCounter());
+			run.put("processed_per_second", getRate(process.getProcessedCounter(), null == matchingTime ? synthesisTime : matchingTime));
+			run.put("nodes_per_second", getRate(process.getNodeCounter(), synthesisTime));
+			run.put("relationships_per_second", getRate(process.getRelCounter(), synthesisTime));
+			run.put("peak_heap_bytes", peakHeap);
+			run.put("archive_bytes", Files.size(archive));
+		} finally {
+			FileUtils.deleteDirectory(folder.toFile());
+		}
+	}
+	
+	private static double getRate(long count, long millis) {
+		return count * 1000.0 / Math.max(millis, 1);
+	}
+	
+	private static double[] parseDoubles(String list) {
+		String[] parts = StringUtils.split(list, ',');
+		double[] values = new double[parts.length];
+		for (int i = 0; i < parts.length; ++i)
+			values[i] = Double.parseDouble(parts[i].trim());
+		
+		return values;
+	}
+}
@@ -0,0 +1,34 @@
+package org.rdswitchboard.utils.neo4j.sync.collections;
+
+/**
+ * Long array stored in the Java heap
+ */
+public class HeapLongArray implements LongArray {
+	private final long[] array;
+
+	public HeapLongArray(long length) {
+		if (length > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("The array length is too big for the heap: " + length);
+
+		this.array = new long[(int) length];
+	}
+
+	@Override
+	public long length() {
+		return array.length;
+	}
+
+	@Override
+	public long get(long index) {
+		return array[(int) index];
+	}
+
+	@Override
+	public void set(long index, long value) {
+		array[(int) index] = value;
+	}
+
+	@Override
+	public void close() {
+	}
+}
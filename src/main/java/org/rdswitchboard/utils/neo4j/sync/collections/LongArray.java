@@ -0,0 +1,12 @@
+package org.rdswitchboard.utils.neo4j.sync.collections;
+
+import java.io.Closeable;
+
+/**
+ * Fixed length array of primitive longs. New elements are initialized with zero.
+ */
+public interface LongArray extends Closeable {
+	long length();
+	long get(long index);
+	void set(long index, long value);
+}
@@ -0,0 +1,62 @@
+package org.rdswitchboard.utils.neo4j.sync.collections;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Allocates long arrays in the heap until the heap budget is exhausted and
+ * memory maps all arrays allocated afterwards into temporary files of the spill folder.
+ */
+public class LongArrayAllocator {
+	private final long heapBudget;
+	private final Path spillFolder;
+	
+	private long heapBytes;
+
+	/**
+	 * @param heapBudget maximum number of heap bytes all arrays are allowed to use
+	 * @param spillFolder folder used to store memory mapped arrays
+	 */
+	public LongArrayAllocator(long heapBudget, Path spillFolder) {
+		this.heapBudget = heapBudget;
+		this.spillFolder = spillFolder;
+	}
+
+	/**
+	 * Allocates a new array. The replaced array is not closed, but its heap is
+	 * not counted any more, so it must be closed by the caller.
+	 * 
+	 * @param length length of the new array
+	 * @param replaced array which will be replaced by the new array or null
+	 * @return new array
+	 * @throws IOException if unable to allocate memory mapped array
+	 */
+	public LongArray allocate(long length, LongArray replaced) throws IOException {
+		long released = replaced instanceof HeapLongArray ? replaced.length() * 8 : 0;
+		if (heapBytes - released + length * 8 <= heapBudget && length <= Integer.MAX_VALUE - 8) {
+			heapBytes += length * 8 - released;
+			return new HeapLongArray(length);
+		}
+
+		heapBytes -= released;
+		return new MappedLongArray(length, spillFolder);
+	}
+	
+	/**
+	 * Allocates array of double length and copies all elements of the old array into it.
+	 * The old array is closed.
+	 */
+	public LongArray grow(LongArray array) throws IOException {
+		LongArray grown = allocate(array.length() * 2, array);
+		for (long i = 0; i < array.length(); ++i)
+			grown.set(i, array.get(i));
+
+		array.close();
+
+		return grown;
+	}
+	
+	public long getHeapBytes() {
+		return heapBytes;
+	}
+}
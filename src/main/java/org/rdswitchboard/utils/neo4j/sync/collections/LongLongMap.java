@@ -0,0 +1,163 @@
+package org.rdswitchboard.utils.neo4j.sync.collections;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Map of primitive long keys to primitive long values.
+ * <p>
+ * Entries are kept in insertion order in two parallel arrays and located with an open addressing
+ * index, so the map needs about 32 bytes per entry and no boxing. An entry can be read by its
+ * insertion position, which allows to iterate over a snapshot of the map while new entries are
+ * being added:
+ * <pre>
+ * for (long i = 0, size = map.size(); i &lt; size; ++i)
+ *     process(map.keyAt(i), map.valueAt(i));
+ * </pre>
+ * Once the heap used by the map would exceed the configured budget, all newly allocated arrays
+ * are memory mapped into temporary files in the spill folder.
+ */
+public class LongLongMap implements Closeable {
+	public static final long NO_VALUE = Long.MIN_VALUE;
+
+	private static final long INITIAL_CAPACITY = 1024;
+
+	private final LongArrayAllocator allocator;
+
+	private long size;
+
+	// open addressing index, every slot contains position of an entry + 1 or 0 if the slot is empty
+	private LongArray slots;
+	private LongArray keys;
+	private LongArray values;
+
+	/**
+	 * @param heapBudget maximum number of heap bytes the map is allowed to use
+	 * @param spillFolder folder used to store memory mapped arrays
+	 * @throws IOException if the map is unable to allocate a memory mapped array
+	 */
+	public LongLongMap(long heapBudget, Path spillFolder) throws IOException {
+		this(new LongArrayAllocator(heapBudget, spillFolder));
+	}
+
+	/**
+	 * @param allocator allocator of the map arrays, can be shared with other collections
+	 * @throws IOException if the map is unable to allocate a memory mapped array
+	 */
+	public LongLongMap(LongArrayAllocator allocator) throws IOException {
+		this.allocator = allocator;
+
+		this.slots = allocator.allocate(INITIAL_CAPACITY * 2, null);
+		this.keys = allocator.allocate(INITIAL_CAPACITY, null);
+		this.values = allocator.allocate(INITIAL_CAPACITY, null);
+	}
+
+	public long size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return true if any part of the map is stored outside of the heap
+	 */
+	public boolean isSpilled() {
+		return !(slots instanceof HeapLongArray && keys instanceof HeapLongArray && values instanceof HeapLongArray);
+	}
+
+	public boolean containsKey(long key) {
+		return slots.get(findSlot(key)) != 0;
+	}
+
+	/**
+	 * @return value associated with the key or NO_VALUE if the map does not contain the key
+	 */
+	public long get(long key) {
+		long position = slots.get(findSlot(key));
+		return position == 0 ? NO_VALUE : values.get(position - 1);
+	}
+
+	public void put(long key, long value) throws IOException {
+		long slot = findSlot(key);
+		long position = slots.get(slot);
+		if (position != 0) {
+			values.set(position - 1, value);
+			return;
+		}
+
+		if (size == keys.length()) {
+			keys = allocator.grow(keys);
+			values = allocator.grow(values);
+		}
+
+		keys.set(size, key);
+		values.set(size, value);
+		slots.set(slot, ++size);
+
+		if (size * 2 > slots.length())
+			rehash();
+	}
+
+	/**
+	 * @param position position of an entry, must be less than the map size
+	 * @return key of the entry added to the map at the given position
+	 */
+	public long keyAt(long position) {
+		return keys.get(position);
+	}
+
+	/**
+	 * @param position position of an entry, must be less than the map size
+	 * @return value of the entry added to the map at the given position
+	 */
+	public long valueAt(long position) {
+		return values.get(position);
+	}
+
+	@Override
+	public void close() throws IOException {
+		slots.close();
+		keys.close();
+		values.close();
+	}
+
+	private long findSlot(long key) {
+		long mask = slots.length() - 1;
+		long slot = hash(key) & mask;
+		long position;
+		while ((position = slots.get(slot)) != 0 && keys.get(position - 1) != key)
+			slot = (slot + 1) & mask;
+
+		return slot;
+	}
+
+	private void rehash() throws IOException {
+		LongArray old = slots;
+		slots = allocator.allocate(old.length() * 2, old);
+
+		long mask = slots.length() - 1;
+		for (long position = 0; position < size; ++position) {
+			long slot = hash(keys.get(position)) & mask;
+			while (slots.get(slot) != 0)
+				slot = (slot + 1) & mask;
+
+			slots.set(slot, position + 1);
+		}
+
+		old.close();
+	}
+
+	static long hash(long key) {
+		// finalization mix of the MurmurHash3
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb93fe85a9a63L;
+		key ^= key >>> 33;
+
+		return key;
+	}
+}
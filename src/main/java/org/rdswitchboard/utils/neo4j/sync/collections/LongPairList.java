@@ -0,0 +1,58 @@
+package org.rdswitchboard.utils.neo4j.sync.collections;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Append only list of pairs of primitive longs, kept in the order they have been added.
+ */
+public class LongPairList implements Closeable {
+	private static final long INITIAL_CAPACITY = 1024;
+
+	private final LongArrayAllocator allocator;
+
+	private long size;
+
+	private LongArray firsts;
+	private LongArray seconds;
+
+	/**
+	 * @param allocator allocator of the list arrays, can be shared with other collections
+	 * @throws IOException if the list is unable to allocate a memory mapped array
+	 */
+	public LongPairList(LongArrayAllocator allocator) throws IOException {
+		this.allocator = allocator;
+
+		this.firsts = allocator.allocate(INITIAL_CAPACITY, null);
+		this.seconds = allocator.allocate(INITIAL_CAPACITY, null);
+	}
+
+	public long size() {
+		return size;
+	}
+
+	public void add(long first, long second) throws IOException {
+		if (size == firsts.length()) {
+			firsts = allocator.grow(firsts);
+			seconds = allocator.grow(seconds);
+		}
+
+		firsts.set(size, first);
+		seconds.set(size, second);
+		++size;
+	}
+
+	public long firstAt(long index) {
+		return firsts.get(index);
+	}
+
+	public long secondAt(long index) {
+		return seconds.get(index);
+	}
+
+	@Override
+	public void close() throws IOException {
+		firsts.close();
+		seconds.close();
+	}
+}
@@ -0,0 +1,102 @@
+package org.rdswitchboard.utils.neo4j.sync.collections;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Open addressing set of pairs of primitive longs. The first element of a pair can not be Long.MIN_VALUE.
+ */
+public class LongPairSet implements Closeable {
+	private static final long EMPTY = Long.MIN_VALUE;
+	private static final long INITIAL_CAPACITY = 2048;
+
+	private final LongArrayAllocator allocator;
+
+	private long size;
+
+	private LongArray firsts;
+	private LongArray seconds;
+
+	/**
+	 * @param allocator allocator of the set arrays, can be shared with other collections
+	 * @throws IOException if the set is unable to allocate a memory mapped array
+	 */
+	public LongPairSet(LongArrayAllocator allocator) throws IOException {
+		this.allocator = allocator;
+
+		this.firsts = allocateFirsts(INITIAL_CAPACITY, null);
+		this.seconds = allocator.allocate(INITIAL_CAPACITY, null);
+	}
+
+	public long size() {
+		return size;
+	}
+
+	public boolean contains(long first, long second) {
+		return firsts.get(findSlot(firsts, seconds, first, second)) != EMPTY;
+	}
+
+	/**
+	 * @return true if the pair has been added or false if the set already contains it
+	 */
+	public boolean add(long first, long second) throws IOException {
+		if (first == EMPTY)
+			throw new IllegalArgumentException("Long.MIN_VALUE can not be stored as the first element of a pair");
+
+		long slot = findSlot(firsts, seconds, first, second);
+		if (firsts.get(slot) != EMPTY)
+			return false;
+
+		firsts.set(slot, first);
+		seconds.set(slot, second);
+
+		if (++size * 2 > firsts.length())
+			rehash();
+
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		firsts.close();
+		seconds.close();
+	}
+
+	private void rehash() throws IOException {
+		LongArray oldFirsts = firsts;
+		LongArray oldSeconds = seconds;
+
+		firsts = allocateFirsts(oldFirsts.length() * 2, oldFirsts);
+		seconds = allocator.allocate(oldSeconds.length() * 2, oldSeconds);
+
+		for (long i = 0; i < oldFirsts.length(); ++i) {
+			long first = oldFirsts.get(i);
+			if (first != EMPTY) {
+				long slot = findSlot(firsts, seconds, first, oldSeconds.get(i));
+				firsts.set(slot, first);
+				seconds.set(slot, oldSeconds.get(i));
+			}
+		}
+
+		oldFirsts.close();
+		oldSeconds.close();
+	}
+
+	private LongArray allocateFirsts(long length, LongArray replaced) throws IOException {
+		LongArray array = allocator.allocate(length, replaced);
+		for (long i = 0; i < length; ++i)
+			array.set(i, EMPTY);
+
+		return array;
+	}
+
+	private static long findSlot(LongArray firsts, LongArray seconds, long first, long second) {
+		long mask = firsts.length() - 1;
+		long slot = LongLongMap.hash(first * 31 + LongLongMap.hash(second)) & mask;
+		long value;
+		while ((value = firsts.get(slot)) != EMPTY && (value != first || seconds.get(slot) != second))
+			slot = (slot + 1) & mask;
+
+		return slot;
+	}
+}
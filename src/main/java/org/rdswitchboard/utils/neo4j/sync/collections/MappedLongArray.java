@@ -0,0 +1,66 @@
+package org.rdswitchboard.utils.neo4j.sync.collections;
+
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Long array stored outside of the Java heap in a memory mapped temporary file.
+ * The file is mapped in segments of 1 GB and removed once the array is closed.
+ */
+public class MappedLongArray implements LongArray {
+	private static final int SEGMENT_SHIFT = 27;
+	private static final long SEGMENT_LENGTH = 1L << SEGMENT_SHIFT;
+	private static final long SEGMENT_MASK = SEGMENT_LENGTH - 1;
+
+	private final long length;
+	private final FileChannel channel;
+	private final LongBuffer[] segments;
+
+	public MappedLongArray(long length, Path folder) throws IOException {
+		this.length = length;
+
+		Files.createDirectories(folder);
+		Path file = Files.createTempFile(folder, "longs_", ".bin");
+
+		channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.DELETE_ON_CLOSE);
+
+		segments = new LongBuffer[(int) ((length + SEGMENT_LENGTH - 1) >> SEGMENT_SHIFT)];
+		for (int i = 0; i < segments.length; ++i) {
+			long size = Math.min(SEGMENT_LENGTH, length - ((long) i << SEGMENT_SHIFT));
+			segments[i] = channel
+					.map(FileChannel.MapMode.READ_WRITE, ((long) i << SEGMENT_SHIFT) * 8, size * 8)
+					.asLongBuffer();
+		}
+	}
+
+	@Override
+	public long length() {
+		return length;
+	}
+
+	@Override
+	public long get(long index) {
+		if (index < 0 || index >= length)
+			throw new ArrayIndexOutOfBoundsException("Index out of range: " + index);
+
+		return segments[(int) (index >>> SEGMENT_SHIFT)].get((int) (index & SEGMENT_MASK));
+	}
+
+	@Override
+	public void set(long index, long value) {
+		if (index < 0 || index >= length)
+			throw new ArrayIndexOutOfBoundsException("Index out of range: " + index);
+
+		segments[(int) (index >>> SEGMENT_SHIFT)].put((int) (index & SEGMENT_MASK), value);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,60 @@
+package org.rdswitchboard.utils.neo4j.sync.commit;
+
+/**
+ * Tunes the number of operations per transaction for the best commit throughput.
+ * <p>
+ * After every commit the throughput of the chunk, including the commit latency, is compared with
+ * the smoothed throughput of previous chunks. The batch size keeps growing or shrinking while the 
+ * throughput improves and changes direction when it drops. Transactions are always committed 
+ * once their estimated state exceeds the byte limit.
+ */
+public class AdaptivePolicy implements CommitPolicy {
+	private static final double STEP = 1.5;
+	private static final double SMOOTHING = 0.5;
+
+	private final long minOperations;
+	private final long maxOperations;
+	private final long maxBytes;
+
+	private long operations;
+	private double throughput;
+	private boolean growing = true;
+
+	/**
+	 * @param operations initial number of operations per transaction
+	 * @param maxBytes maximum estimated size of the transaction state
+	 */
+	public AdaptivePolicy(long operations, long maxBytes) {
+		this.operations = operations;
+		this.minOperations = Math.max(1, operations / 10);
+		this.maxOperations = operations * 100;
+		this.maxBytes = maxBytes;
+	}
+
+	public long getOperations() {
+		return operations;
+	}
+
+	@Override
+	public boolean shouldCommit(long operations, long bytes, long elapsed) {
+		return operations > this.operations || bytes > maxBytes;
+	}
+
+	@Override
+	public void committed(long operations, long bytes, long elapsed, long latency) {
+		if (operations == 0)
+			return;
+
+		double current = operations * 1000.0 / Math.max(1, elapsed + latency);
+
+		if (bytes > maxBytes)
+			growing = false;
+		else if (throughput > 0 && current < throughput)
+			growing = !growing;
+
+		throughput = throughput > 0 ? throughput * SMOOTHING + current * (1 - SMOOTHING) : current;
+
+		long next = growing ? (long) (this.operations * STEP) : (long) (this.operations / STEP);
+		this.operations = Math.max(minOperations, Math.min(maxOperations, next));
+	}
+}
@@ -0,0 +1,24 @@
+package org.rdswitchboard.utils.neo4j.sync.commit;
+
+/**
+ * Decides when the current write transaction should be committed
+ */
+public interface CommitPolicy {
+	/**
+	 * @param operations number of nodes and relationships created in the transaction
+	 * @param bytes estimated size of the transaction state
+	 * @param elapsed milliseconds since the transaction has been started
+	 * @return true if the transaction should be committed
+	 */
+	boolean shouldCommit(long operations, long bytes, long elapsed);
+
+	/**
+	 * Called after every commit
+	 * 
+	 * @param operations number of nodes and relationships committed
+	 * @param bytes estimated size of the committed transaction state
+	 * @param elapsed milliseconds the transaction has been open before the commit
+	 * @param latency milliseconds the commit took
+	 */
+	void committed(long operations, long bytes, long elapsed, long latency);
+}
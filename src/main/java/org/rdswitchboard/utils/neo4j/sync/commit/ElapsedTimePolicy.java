@@ -0,0 +1,21 @@
+package org.rdswitchboard.utils.neo4j.sync.commit;
+
+/**
+ * Commits non empty transactions which have been open longer than the given number of milliseconds
+ */
+public class ElapsedTimePolicy implements CommitPolicy {
+	private final long elapsed;
+
+	public ElapsedTimePolicy(long elapsed) {
+		this.elapsed = elapsed;
+	}
+
+	@Override
+	public boolean shouldCommit(long operations, long bytes, long elapsed) {
+		return operations > 0 && elapsed > this.elapsed;
+	}
+
+	@Override
+	public void committed(long operations, long bytes, long elapsed, long latency) {
+	}
+}
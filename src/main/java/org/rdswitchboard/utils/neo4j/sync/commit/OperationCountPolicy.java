@@ -0,0 +1,21 @@
+package org.rdswitchboard.utils.neo4j.sync.commit;
+
+/**
+ * Commits once the transaction contains more than the given number of operations
+ */
+public class OperationCountPolicy implements CommitPolicy {
+	private final long operations;
+
+	public OperationCountPolicy(long operations) {
+		this.operations = operations;
+	}
+
+	@Override
+	public boolean shouldCommit(long operations, long bytes, long elapsed) {
+		return operations > this.operations;
+	}
+
+	@Override
+	public void committed(long operations, long bytes, long elapsed, long latency) {
+	}
+}
@@ -0,0 +1,21 @@
+package org.rdswitchboard.utils.neo4j.sync.commit;
+
+/**
+ * Commits once the estimated transaction state exceeds the given number of bytes
+ */
+public class TransactionSizePolicy implements CommitPolicy {
+	private final long bytes;
+
+	public TransactionSizePolicy(long bytes) {
+		this.bytes = bytes;
+	}
+
+	@Override
+	public boolean shouldCommit(long operations, long bytes, long elapsed) {
+		return bytes > this.bytes;
+	}
+
+	@Override
+	public void committed(long operations, long bytes, long elapsed, long latency) {
+	}
+}
@@ -0,0 +1,118 @@
+package org.rdswitchboard.utils.neo4j.sync.generator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.RelationshipType;
+
+/**
+ * Writes a generated graph as neo4j-admin import CSV files, one file of nodes per type 
+ * named after the type (publications.csv, researchers.csv, ...) and relations.csv, 
+ * like the fixtures in src/test/csv. Nodes of a type must have the same properties.
+ */
+public class CsvSink implements GraphSink {
+	public static final String FILE_RELATIONS = "relations.csv";
+	
+	private static final String ARRAY_DELIMITER = ";";
+	
+	private final Path folder;
+	private final Map<String, BufferedWriter> nodeWriters = new HashMap<String, BufferedWriter>();
+	private final Map<String, List<String>> columns = new HashMap<String, List<String>>();
+	private final BufferedWriter relsWriter;
+	
+	public CsvSink(Path folder) throws IOException {
+		this.folder = folder;
+		
+		Files.createDirectories(folder);
+		
+		relsWriter = Files.newBufferedWriter(folder.resolve(FILE_RELATIONS), StandardCharsets.UTF_8);
+		relsWriter.write(":START_ID,:END_ID,:TYPE");
+		relsWriter.newLine();
+	}
+	
+	/**
+	 * @return paths of all node files written so far
+	 */
+	public List<Path> getNodeFiles() {
+		List<Path> files = new ArrayList<Path>();
+		for (String type : nodeWriters.keySet())
+			files.add(getNodeFile(type));
+		
+		return files;
+	}
+	
+	public Path getRelationshipFile() {
+		return folder.resolve(FILE_RELATIONS);
+	}
+
+	@Override
+	public void addNode(long id, Map<String, Object> properties, Label... labels) throws IOException {
+		String type = labels[0].name();
+		
+		BufferedWriter writer = nodeWriters.get(type);
+		if (null == writer) {
+			writer = Files.newBufferedWriter(getNodeFile(type), StandardCharsets.UTF_8);
+			nodeWriters.put(type, writer);
+			
+			List<String> names = new ArrayList<String>(properties.keySet());
+			columns.put(type, names);
+			
+			StringBuilder header = new StringBuilder(":ID");
+			for (String name : names)
+				header.append(',').append(name);
+			header.append(",:LABEL");
+			
+			writer.write(header.toString());
+			writer.newLine();
+		}
+		
+		StringBuilder line = new StringBuilder(Long.toString(id));
+		for (String name : columns.get(type)) {
+			line.append(',');
+			
+			Object value = properties.get(name);
+			if (null != value)
+				line.append(quote(value.toString()));
+		}
+		
+		line.append(',');
+		for (int i = 0; i < labels.length; ++i) {
+			if (i > 0)
+				line.append(ARRAY_DELIMITER);
+			line.append(labels[i].name());
+		}
+		
+		writer.write(line.toString());
+		writer.newLine();
+	}
+
+	@Override
+	public void addRelationship(long from, long to, RelationshipType type) throws IOException {
+		relsWriter.write(from + "," + to + "," + type.name());
+		relsWriter.newLine();
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (BufferedWriter writer : nodeWriters.values())
+			writer.close();
+		
+		relsWriter.close();
+	}
+	
+	private Path getNodeFile(String type) {
+		return folder.resolve(type + "s.csv");
+	}
+	
+	private static String quote(String value) {
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+}
@@ -0,0 +1,57 @@
+package org.rdswitchboard.utils.neo4j.sync.generator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.unsafe.batchinsert.BatchInserter;
+import org.neo4j.unsafe.batchinsert.BatchInserters;
+import org.rdswitchboard.utils.neo4j.sync.Process;
+
+/**
+ * Writes a generated graph into a new Neo4j instance folder with the layout expected by 
+ * the sync (conf/neo4j.conf and data/databases/graph.db) using the batch inserter. 
+ * Node ids of the store are the generator ids.
+ */
+public class EmbeddedSink implements GraphSink {
+	private final BatchInserter inserter;
+	
+	/**
+	 * @param folder instance folder, the database must not exist yet
+	 */
+	public EmbeddedSink(Path folder) throws IOException {
+		Path conf = Paths.get(folder.toString(), Process.NEO4J_CONF);
+		Path db = Paths.get(folder.toString(), Process.NEO4J_DB);
+		
+		if (Files.exists(db) && db.toFile().list().length > 0)
+			throw new IOException("The database already exists: " + db);
+		
+		Files.createDirectories(conf.getParent());
+		if (!Files.exists(conf))
+			Files.createFile(conf);
+		
+		Files.createDirectories(db);
+		
+		inserter = BatchInserters.inserter(db.toFile());
+	}
+
+	@Override
+	public void addNode(long id, Map<String, Object> properties, Label... labels) {
+		inserter.createNode(id, properties, labels);
+	}
+
+	@Override
+	public void addRelationship(long from, long to, RelationshipType type) {
+		inserter.createRelationship(from, to, type, Collections.<String, Object>emptyMap());
+	}
+
+	@Override
+	public void close() {
+		inserter.shutdown();
+	}
+}
@@ -0,0 +1,342 @@
+package org.rdswitchboard.utils.neo4j.sync.generator;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.RelationshipType;
+import org.rdswitchboard.utils.neo4j.sync.Configuration;
+import org.rdswitchboard.utils.neo4j.sync.enums.Types;
+
+/**
+ * Generator of synthetic Research Graph databases for load testing.
+ * <p>
+ * A graph of scale 1 has 1000 publications, 600 researchers, 200 datasets and 100 grants
+ * with the properties of the fixtures in src/test/csv. Publications and datasets have a DOI, 
+ * researchers have an ORCID. Publications, datasets and grants are related to researchers and 
+ * grants to publications. The number of relationships of a node follows a power law with the 
+ * configured exponent, and related nodes are picked with a skew towards the first nodes 
+ * of a type, so the graph has a few hubs and a long tail of nodes with few relationships.
+ * <p>
+ * Identifiers are drawn from a pool of the given scale shared by all generated graphs. 
+ * The overlap is the share of nodes with an identifier from the pool, the rest of nodes 
+ * have identifiers unique to the graph. A Nexus graph is generated with overlap 1 and a pool 
+ * of its own scale, so every pool identifier is used exactly once, and a target graph with 
+ * a smaller scale and overlap gets that share of nodes matching the Nexus. The noise is 
+ * the share of identifiers written in a different case or with a resolver prefix.
+ */
+public class GraphGenerator {
+	public static final RelationshipType RELATED_TO = RelationshipType.withName("relatedTo");
+	
+	public static final String OUTPUT_NEO4J = "neo4j";
+	public static final String OUTPUT_CSV = "csv";
+	
+	private static final String DEF_GROUP = "nexus";
+	private static final String DEF_SCALE = "1";
+	private static final String DEF_OVERLAP = "1";
+	private static final String DEF_NOISE = "0";
+	private static final String DEF_EXPONENT = "2.5";
+	private static final String DEF_SEED = "1";
+	
+	private static final Label[] TYPES = { Types.publication, Types.researcher, Types.dataset, Types.grant };
+	private static final int[] TYPE_SIZES = { 1000, 600, 200, 100 };
+	
+	private static final int PUBLICATION = 0;
+	private static final int RESEARCHER = 1;
+	private static final int DATASET = 2;
+	private static final int GRANT = 3;
+	
+	private static final int MAX_DEGREE = 1000;
+	private static final int FIRST_YEAR = 1990;
+	private static final int YEARS = 29;
+	private static final int DAYS = 28;
+	// multiplier spreading pool identifiers over the pool, must not share a factor with the pool size
+	private static final long[] SPREAD = { 1000003, 1000033, 1000037 };
+	
+	private final String group;
+	private final double scale;
+	private final double poolScale;
+	private final double overlap;
+	private final double noise;
+	private final double exponent;
+	private final long seed;
+	
+	private final int[] sizes = new int[TYPES.length];
+	private final long[] firstIds = new long[TYPES.length];
+	
+	private Random random;
+	private long nodes;
+	private long relationships;
+	
+	/**
+	 * @param group group name used in keys, sources and labels
+	 * @param scale size of the graph
+	 * @param poolScale size of the shared identifier pool
+	 * @param overlap share of nodes with an identifier from the pool, from 0 to 1
+	 * @param noise share of identifiers written in a different form, from 0 to 1
+	 * @param exponent power law exponent of the number of relationships of a node, above 1
+	 * @param seed random seed
+	 */
+	public GraphGenerator(String group, double scale, double poolScale, double overlap, double noise, double exponent, long seed) {
+		if (StringUtils.isEmpty(group))
+			throw new IllegalArgumentException("Group can not be empty");
+		if (scale <= 0 || poolScale <= 0)
+			throw new IllegalArgumentException("Scale must be positive");
+		if (overlap < 0 || overlap > 1)
+			throw new IllegalArgumentException("Overlap must be between 0 and 1");
+		if (noise < 0 || noise > 1)
+			throw new IllegalArgumentException("Noise must be between 0 and 1");
+		if (exponent <= 1)
+			throw new IllegalArgumentException("Exponent must be above 1");
+		
+		this.group = group;
+		this.scale = scale;
+		this.poolScale = poolScale;
+		this.overlap = overlap;
+		this.noise = noise;
+		this.exponent = exponent;
+		this.seed = seed;
+		
+		long id = 0;
+		for (int type = 0; type < TYPES.length; ++type) {
+			sizes[type] = getSize(type, scale);
+			firstIds[type] = id;
+			id += sizes[type];
+		}
+	}
+	
+	public static void main(String[] args) {
+		try {
+			Properties properties = Configuration.fromArgs(args);
+			
+			String folder = properties.getProperty(Configuration.PROPERTY_GENERATOR_FOLDER);
+			if (StringUtils.isEmpty(folder))
+				throw new IllegalArgumentException("Output folder can not be empty");
+			
+			String output = properties.getProperty(Configuration.PROPERTY_GENERATOR_OUTPUT, OUTPUT_NEO4J);
+			if (!output.equals(OUTPUT_NEO4J) && !output.equals(OUTPUT_CSV))
+				throw new IllegalArgumentException("Unknown output: " + output);
+			
+			String scale = properties.getProperty(Configuration.PROPERTY_GENERATOR_SCALE, DEF_SCALE);
+			
+			GraphGenerator generator = new GraphGenerator(
+					properties.getProperty(Configuration.PROPERTY_GENERATOR_GROUP, DEF_GROUP),
+					Double.parseDouble(scale),
+					Double.parseDouble(properties.getProperty(Configuration.PROPERTY_GENERATOR_POOL, scale)),
+					Double.parseDouble(properties.getProperty(Configuration.PROPERTY_GENERATOR_OVERLAP, DEF_OVERLAP)),
+					Double.parseDouble(properties.getProperty(Configuration.PROPERTY_GENERATOR_NOISE, DEF_NOISE)),
+					Double.parseDouble(properties.getProperty(Configuration.PROPERTY_GENERATOR_EXPONENT, DEF_EXPONENT)),
+					Long.parseLong(properties.getProperty(Configuration.PROPERTY_GENERATOR_SEED, DEF_SEED)));
+			
+			generate(generator, Paths.get(folder), output);
+		} catch (Exception e) {
+			e.printStackTrace();
+			
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Generates a graph into a folder
+	 * 
+	 * @param generator graph generator
+	 * @param folder output folder
+	 * @param output output type: neo4j for an instance folder or csv for import files
+	 */
+	public static void generate(GraphGenerator generator, Path folder, String output) throws IOException {
+		System.out.println("Generating " + generator.getSize() + " nodes of " + generator.group + " into " + folder);
+		
+		long started = System.currentTimeMillis();
+		
+		if (output.equals(OUTPUT_CSV)) {
+			CsvSink sink = new CsvSink(folder);
+			try {
+				generator.generate(sink);
+			} finally {
+				sink.close();
+			}
+			
+			StringBuilder command = new StringBuilder("neo4j-admin import");
+			for (Path file : sink.getNodeFiles())
+				command.append(" --nodes ").append(file);
+			command.append(" --relationships ").append(sink.getRelationshipFile());
+			command.append(" --ignore-empty-strings true --multiline-fields true");
+			
+			System.out.println("Import with: " + command);
+		} else 
+			try (EmbeddedSink sink = new EmbeddedSink(folder)) {
+				generator.generate(sink);
+			}
+		
+		System.out.println("Generated " + generator.nodes + " nodes and " + generator.relationships 
+				+ " relationships in " + (System.currentTimeMillis() - started) + " ms");
+	}
+	
+	/**
+	 * @return number of nodes of the graph
+	 */
+	public long getSize() {
+		long size = 0;
+		for (int s : sizes)
+			size += s;
+		
+		return size;
+	}
+	
+	/**
+	 * Writes all nodes and relationships of the graph into the sink
+	 * 
+	 * @param sink graph sink
+	 */
+	public void generate(GraphSink sink) throws IOException {
+		random = new Random(seed);
+		nodes = 0;
+		relationships = 0;
+		
+		for (int type = 0; type < TYPES.length; ++type)
+			for (int i = 0; i < sizes[type]; ++i) {
+				sink.addNode(firstIds[type] + i, createProperties(type, i), TYPES[type], Label.label(group));
+				++nodes;
+			}
+		
+		Set<Long> related = new HashSet<Long>();
+		for (int i = 0; i < sizes[PUBLICATION]; ++i) {
+			related.clear();
+			relate(sink, PUBLICATION, i, RESEARCHER, nextDegree(), related);
+		}
+		
+		for (int i = 0; i < sizes[DATASET]; ++i) {
+			related.clear();
+			relate(sink, DATASET, i, RESEARCHER, nextDegree(), related);
+			relate(sink, DATASET, i, PUBLICATION, random.nextInt(2), related);
+		}
+		
+		for (int i = 0; i < sizes[GRANT]; ++i) {
+			related.clear();
+			relate(sink, GRANT, i, RESEARCHER, nextDegree(), related);
+			relate(sink, GRANT, i, PUBLICATION, nextDegree(), related);
+		}
+	}
+	
+	/**
+	 * @param type publication or dataset type
+	 * @param n pool index of the node
+	 * @return DOI of the pool identifier
+	 */
+	public static String getPoolDoi(Label type, int n) {
+		return "10.5555/rg." + type.name() + "." + n;
+	}
+
+	/**
+	 * @param n pool index of a researcher
+	 * @return ORCID of the pool identifier
+	 */
+	public static String getPoolOrcid(int n) {
+		return getOrcid(2, n);
+	}
+	
+	private Map<String, Object> createProperties(int type, int i) {
+		String name = TYPES[type].name();
+		String localId = name + "_" + i;
+		
+		Map<String, Object> properties = new LinkedHashMap<String, Object>();
+		properties.put("key", "researchgraph.org/" + group + "/" + localId);
+		properties.put("source", group + ".researchgraph.org");
+		properties.put("local_id", localId);
+		
+		if (type == RESEARCHER)
+			properties.put("full_name", "Researcher " + i);
+		else
+			properties.put("title", StringUtils.capitalize(name) + " " + i);
+		
+		properties.put("last_updated", (1 + random.nextInt(DAYS)) + "/" + String.format("%02d", 1 + random.nextInt(12)) 
+				+ "/" + (FIRST_YEAR + YEARS - 2 + random.nextInt(3)));
+		
+		if (type == PUBLICATION)
+			properties.put("publication_year", Integer.toString(FIRST_YEAR + random.nextInt(YEARS)));
+		
+		// identifiers of nodes outside of the overlap are unique to the group 
+		int pool = getPoolIndex(type, i);
+		if (type == PUBLICATION || type == DATASET) 
+			properties.put("doi", addNoise(pool >= 0 ? getPoolDoi(TYPES[type], pool) : "10.5555/" + group + "." + localId, 
+					"https://doi.org/", true));
+		else if (type == RESEARCHER)
+			properties.put("orcid", addNoise(pool >= 0 ? getPoolOrcid(pool) : getOrcid(3, Math.abs(group.hashCode() % 1000) * 100000 + i), 
+					"https://orcid.org/", false));
+		
+		properties.put("type", name);
+		
+		return properties;
+	}
+	
+	/**
+	 * @return index of the pool identifier of the node or -1 if the node has an identifier of its own
+	 */
+	private int getPoolIndex(int type, int i) {
+		if (random.nextDouble() >= overlap)
+			return -1;
+		
+		int poolSize = getSize(type, poolScale);
+		long spread = SPREAD[0];
+		for (long s : SPREAD)
+			if (poolSize % s != 0) {
+				spread = s;
+				break;
+			}
+		
+		// a bijection of the pool, so nodes of a graph not larger than the pool get distinct identifiers
+		return (int) ((i * spread + seed) % poolSize);
+	}
+	
+	private String addNoise(String identifier, String prefix, boolean lowerCase) {
+		if (noise == 0 || random.nextDouble() >= noise)
+			return identifier;
+		
+		switch (random.nextInt(3)) {
+		case 0:
+			return prefix + identifier;
+		case 1:
+			return lowerCase ? identifier.toUpperCase(Locale.ROOT) : identifier.toLowerCase(Locale.ROOT);
+		default:
+			return " " + identifier + " ";
+		}
+	}
+	
+	private void relate(GraphSink sink, int fromType, int from, int toType, int degree, Set<Long> related) throws IOException {
+		int size = sizes[toType];
+		for (int k = 0; k < degree && k < size; ++k) {
+			// related nodes are skewed towards the first nodes, which become hubs
+			long to = firstIds[toType] + (long) (Math.pow(random.nextDouble(), exponent - 1) * size);
+			if (related.add(to)) {
+				sink.addRelationship(firstIds[fromType] + from, to, RELATED_TO);
+				++relationships;
+			}
+		}
+	}
+	
+	/**
+	 * @return number of relationships drawn from a power law distribution with the minimum of 1
+	 */
+	private int nextDegree() {
+		double degree = Math.pow(1 - random.nextDouble(), -1 / (exponent - 1));
+		
+		return (int) Math.min(degree, MAX_DEGREE);
+	}
+	
+	private static int getSize(int type, double scale) {
+		return (int) Math.max(1, Math.round(TYPE_SIZES[type] * scale));
+	}
+	
+	private static String getOrcid(int block, int n) {
+		return String.format("0000-000%d-%04d-%04d", block, n / 10000 % 10000, n % 10000);
+	}
+}
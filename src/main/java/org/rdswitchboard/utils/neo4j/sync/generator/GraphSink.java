@@ -0,0 +1,18 @@
+package org.rdswitchboard.utils.neo4j.sync.generator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.RelationshipType;
+
+/**
+ * Receives nodes and relationships of a generated graph. 
+ * Node ids are assigned by the generator and start from 0.
+ */
+public interface GraphSink extends Closeable {
+	void addNode(long id, Map<String, Object> properties, Label... labels) throws IOException;
+	
+	void addRelationship(long from, long to, RelationshipType type) throws IOException;
+}
@@ -0,0 +1,223 @@
+package org.rdswitchboard.utils.neo4j.sync.incremental;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.joda.time.DateTime;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.rdswitchboard.utils.neo4j.sync.normalize.Normalizers;
+
+/**
+ * Watermark of a synthesis run stored next to the target database.
+ * <p>
+ * The watermark records when the run happened and a fingerprint of every node of both databases,
+ * covering its labels, its properties and the types and other ends of its relationships. A later
+ * incremental run treats a node as changed when its id has no fingerprint or the fingerprint differs,
+ * so new nodes, nodes reusing the id of a deleted node, updated nodes with or without a last_updated
+ * date and both ends of an added or removed relationship are synced again. Fingerprints are 32 bit
+ * hashes, so a change is missed only when it keeps the hash of the node, about once in 4 billion.
+ * Normalized shadow properties are left out, as the run writes them to the source itself.
+ * <p>
+ * The watermark is a file in the target instance folder rather than a node, so the published
+ * graph only contains the synthesized data.
+ */
+public class Watermark {
+	public static final String FILE = "sync_watermark.gz";
+
+	// fingerprint of an id without a node, real fingerprints are never 0
+	private static final int NO_NODE = 0;
+	private static final int VERSION = 1;
+
+	private final DateTime syncedAt;
+	private final int[] targetNodes;
+	private final int[] sourceNodes;
+
+	public Watermark(DateTime syncedAt, int[] targetNodes, int[] sourceNodes) {
+		this.syncedAt = syncedAt;
+		this.targetNodes = targetNodes;
+		this.sourceNodes = sourceNodes;
+	}
+
+	public DateTime getSyncedAt() {
+		return syncedAt;
+	}
+
+	public int[] getTargetNodes() {
+		return targetNodes;
+	}
+
+	public int[] getSourceNodes() {
+		return sourceNodes;
+	}
+
+	/**
+	 * @param targetDb target database instance folder
+	 * @return watermark file of the database
+	 */
+	public static Path getFile(Path targetDb) {
+		return Paths.get(targetDb.toString(), FILE);
+	}
+
+	/**
+	 * Reads the watermark of the previous run
+	 *
+	 * @param file watermark file
+	 * @return watermark or null if the database has not been synced yet
+	 */
+	public static Watermark read(Path file) throws IOException {
+		if (!Files.exists(file))
+			return null;
+
+		try (DataInputStream is = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+			int version = is.readInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported watermark version " + version + " in " + file);
+
+			return new Watermark(DateTime.parse(is.readUTF()), readFingerprints(is), readFingerprints(is));
+		}
+	}
+
+	/**
+	 * Stores the watermark replacing the previous one
+	 *
+	 * @param file watermark file
+	 */
+	public void write(Path file) throws IOException {
+		// a run interrupted while writing keeps the previous watermark
+		Path temp = Paths.get(file.toString() + ".tmp");
+		try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp))))) {
+			os.writeInt(VERSION);
+			os.writeUTF(syncedAt.toString());
+			writeFingerprints(os, targetNodes);
+			writeFingerprints(os, sourceNodes);
+		}
+
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Collects fingerprints of all nodes of the database, must be called inside a transaction
+	 *
+	 * @param graphDb database
+	 * @return fingerprints indexed by node id
+	 */
+	public static int[] getFingerprints(GraphDatabaseService graphDb) {
+		int[] fingerprints = new int[1024];
+		int length = 0;
+
+		for (Node node : graphDb.getAllNodes())
+			if (node.getId() < Integer.MAX_VALUE) {
+				int id = (int) node.getId();
+				if (id >= fingerprints.length)
+					fingerprints = Arrays.copyOf(fingerprints, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(2L * fingerprints.length, id + 1L)));
+
+				fingerprints[id] = getFingerprint(node);
+				length = Math.max(length, id + 1);
+			}
+
+		return Arrays.copyOf(fingerprints, length);
+	}
+
+	/**
+	 * Hashes the node labels, properties and relationships, independently of their order.
+	 * Only stable hash codes of strings, boxed primitives and their arrays are used,
+	 * so the fingerprint can be compared between runs.
+	 *
+	 * @param node database node
+	 * @return fingerprint of the node, never 0
+	 */
+	public static int getFingerprint(Node node) {
+		int hash = 0;
+
+		for (Label label : node.getLabels())
+			hash += mix(label.name().hashCode());
+
+		// normalized shadow copies are written by the run itself and follow the original values
+		for (Map.Entry<String, Object> property : node.getAllProperties().entrySet())
+			if (!Normalizers.isShadowProperty(property.getKey()))
+				hash += mix(31 * property.getKey().hashCode() + getHashCode(property.getValue()));
+
+		for (Relationship rel : node.getRelationships()) {
+			int other = Long.hashCode(rel.getOtherNodeId(node.getId()));
+			int direction = rel.getStartNodeId() == node.getId() ? 1 : 0;
+			hash += mix(31 * (31 * rel.getType().name().hashCode() + other) + direction);
+		}
+
+		hash = mix(hash);
+		return hash == NO_NODE ? 1 : hash;
+	}
+
+	/**
+	 * @param node target database node
+	 * @return true if the node has been created or changed since the watermark
+	 */
+	public boolean isTargetChanged(Node node) {
+		return isChanged(node, targetNodes);
+	}
+
+	/**
+	 * @param node source database node
+	 * @return true if the node has been created or changed since the watermark
+	 */
+	public boolean isSourceChanged(Node node) {
+		return isChanged(node, sourceNodes);
+	}
+
+	private static boolean isChanged(Node node, int[] fingerprints) {
+		if (node.getId() >= fingerprints.length || fingerprints[(int) node.getId()] == NO_NODE)
+			return true;
+
+		return fingerprints[(int) node.getId()] != getFingerprint(node);
+	}
+
+	private static int getHashCode(Object value) {
+		if (!value.getClass().isArray())
+			return value.hashCode();
+
+		int hash = 1;
+		for (int i = 0; i < Array.getLength(value); ++i)
+			hash = 31 * hash + Array.get(value, i).hashCode();
+
+		return hash;
+	}
+
+	// finalizer of MurmurHash3, spreads the bits so sums of hashes do not cancel out
+	private static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+
+		return h;
+	}
+
+	private static int[] readFingerprints(DataInputStream is) throws IOException {
+		int[] fingerprints = new int[is.readInt()];
+		for (int i = 0; i < fingerprints.length; ++i)
+			fingerprints[i] = is.readInt();
+
+		return fingerprints;
+	}
+
+	private static void writeFingerprints(DataOutputStream os, int[] fingerprints) throws IOException {
+		os.writeInt(fingerprints.length);
+		for (int fingerprint : fingerprints)
+			os.writeInt(fingerprint);
+	}
+}
@@ -0,0 +1,67 @@
+package org.rdswitchboard.utils.neo4j.sync.journal;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * State of a run after a committed chunk
+ */
+public class Checkpoint {
+	private final int phase;
+	private final long position;
+	private final long limit;
+	private final long[] counters;
+	
+	// length of the journal up to and including this checkpoint
+	long length;
+	
+	/**
+	 * @param phase phase of the run
+	 * @param position position within the phase, the meaning depends on the phase
+	 * @param limit end of the phase, the meaning depends on the phase
+	 * @param counters progress counters of the run
+	 */
+	public Checkpoint(int phase, long position, long limit, long[] counters) {
+		this.phase = phase;
+		this.position = position;
+		this.limit = limit;
+		this.counters = counters;
+	}
+
+	public int getPhase() {
+		return phase;
+	}
+
+	public long getPosition() {
+		return position;
+	}
+
+	public long getLimit() {
+		return limit;
+	}
+
+	public long[] getCounters() {
+		return counters;
+	}
+	
+	void write(DataOutputStream out) throws IOException {
+		out.writeInt(phase);
+		out.writeLong(position);
+		out.writeLong(limit);
+		out.writeInt(counters.length);
+		for (long counter : counters)
+			out.writeLong(counter);
+	}
+	
+	static Checkpoint read(DataInputStream in) throws IOException {
+		int phase = in.readInt();
+		long position = in.readLong();
+		long limit = in.readLong();
+		long[] counters = new long[in.readInt()];
+		for (int i = 0; i < counters.length; ++i)
+			counters[i] = in.readLong();
+		
+		return new Checkpoint(phase, position, limit, counters);
+	}
+}
@@ -0,0 +1,189 @@
+package org.rdswitchboard.utils.neo4j.sync.journal;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.commons.io.input.CountingInputStream;
+
+import org.rdswitchboard.utils.neo4j.sync.collections.LongLongMap;
+
+/**
+ * Append-only journal of the synthesis progress, which allows a failed run to be resumed.
+ * <p>
+ * Changes of the node id maps are buffered in memory and written to the journal together 
+ * with the counters and the position of the run only after the transaction of the chunk 
+ * has been committed. Every commit record is synced to the disk, so after a crash the 
+ * journal describes the last committed chunk. Records written after the last complete 
+ * commit record are discarded when the journal is opened.
+ */
+public class Journal implements Closeable {
+	public static final int PHASE_MATCHING = 1;
+	public static final int PHASE_SIBLINGS = 2;
+	
+	private static final int RECORD_HEADER = 'H';
+	private static final int RECORD_IMPORTED = 'I';
+	private static final int RECORD_EXPANDED = 'E';
+	private static final int RECORD_COMMIT = 'C';
+	
+	private final Path file;
+	private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+	private final DataOutputStream pending = new DataOutputStream(buffer);
+	
+	private FileOutputStream out;
+	private Checkpoint checkpoint;
+	
+	/**
+	 * Opens the journal, the previous progress can be restored with {@link #replay}
+	 * 
+	 * @param file journal file, created if it does not exist
+	 * @param signature description of the run, a journal of a different run is rejected
+	 */
+	public Journal(Path file, String signature) throws IOException {
+		this.file = file;
+		
+		long length = 0;
+		if (Files.exists(file) && Files.size(file) > 0)
+			length = scan(signature);
+		
+		try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+			// drop records of the chunk which has not been committed 
+			raf.setLength(length);
+		}
+		
+		out = new FileOutputStream(file.toFile(), true);
+		
+		if (length == 0) {
+			DataOutputStream header = new DataOutputStream(out);
+			header.writeByte(RECORD_HEADER);
+			header.writeUTF(signature);
+			header.flush();
+			out.getFD().sync();
+		}
+	}
+	
+	/**
+	 * @return state of the last committed chunk or null if the run has not been started yet
+	 */
+	public Checkpoint getCheckpoint() {
+		return checkpoint;
+	}
+	
+	/**
+	 * Restores the node id maps up to the last committed chunk
+	 */
+	public void replay(LongLongMap imported, LongLongMap expanded) throws IOException {
+		if (null == checkpoint)
+			return;
+		
+		try (CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(file.toFile())))) {
+			DataInputStream in = new DataInputStream(counter);
+			in.readUnsignedByte();
+			in.readUTF();
+			
+			while (counter.getByteCount() < checkpoint.length) {
+				int record = in.readUnsignedByte();
+				if (record == RECORD_IMPORTED) 
+					imported.put(in.readLong(), in.readLong());
+				else if (record == RECORD_EXPANDED) 
+					expanded.put(in.readLong(), in.readLong());
+				else if (record == RECORD_COMMIT) 
+					Checkpoint.read(in);
+				else
+					throw new IOException("The journal " + file + " is corrupted");
+			}
+		}
+	}
+	
+	public void imported(long srcId, long dstId) throws IOException {
+		pending.writeByte(RECORD_IMPORTED);
+		pending.writeLong(srcId);
+		pending.writeLong(dstId);
+	}
+
+	public void expanded(long srcId, long level) throws IOException {
+		pending.writeByte(RECORD_EXPANDED);
+		pending.writeLong(srcId);
+		pending.writeLong(level);
+	}
+	
+	/**
+	 * Writes the buffered changes and the state of the run, must be called after the chunk has been committed
+	 */
+	public void commit(Checkpoint state) throws IOException {
+		pending.writeByte(RECORD_COMMIT);
+		state.write(pending);
+		pending.flush();
+		
+		buffer.writeTo(out);
+		out.flush();
+		out.getFD().sync();
+		buffer.reset();
+		
+		checkpoint = state;
+	}
+	
+	/**
+	 * Removes the journal of a completed run
+	 */
+	public void finish() throws IOException {
+		close();
+		
+		Files.deleteIfExists(file);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (null != out) {
+			out.close();
+			out = null;
+		}
+	}
+	
+	/**
+	 * Finds the last complete commit record
+	 * 
+	 * @return length of the journal up to the last commit record
+	 */
+	private long scan(String signature) throws IOException {
+		long length = 0;
+		
+		try (CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(file.toFile())))) {
+			DataInputStream in = new DataInputStream(counter);
+			if (in.readUnsignedByte() != RECORD_HEADER)
+				throw new IOException("The file " + file + " is not a sync journal");
+			
+			String journalSignature = in.readUTF();
+			if (!journalSignature.equals(signature))
+				throw new IllegalArgumentException("The journal " + file + " belongs to a different run: " + journalSignature);
+			
+			length = counter.getByteCount();
+			
+			while (true) {
+				int record = in.readUnsignedByte();
+				if (record == RECORD_IMPORTED || record == RECORD_EXPANDED) {
+					in.readLong();
+					in.readLong();
+				} else if (record == RECORD_COMMIT) {
+					checkpoint = Checkpoint.read(in);
+					checkpoint.length = length = counter.getByteCount();
+				} else
+					// garbage left by an interrupted write
+					break;
+			}
+		} catch (EOFException e) {
+			// the journal ends after the last commit or within a chunk which has not been written completely
+		}
+		
+		return length;
+	}
+}
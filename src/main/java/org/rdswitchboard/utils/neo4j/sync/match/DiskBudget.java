@@ -0,0 +1,32 @@
+package org.rdswitchboard.utils.neo4j.sync.match;
+
+import java.io.IOException;
+
+/**
+ * Tracks temporary disk space used by external sorting
+ */
+public class DiskBudget {
+	private final long limit;
+	private long used;
+
+	/**
+	 * @param limit maximum number of bytes or 0 if the disk use is not limited
+	 */
+	public DiskBudget(long limit) {
+		this.limit = limit;
+	}
+
+	public synchronized void allocate(long bytes) throws IOException {
+		used += bytes;
+		if (limit > 0 && used > limit)
+			throw new IOException("The temporary files exceeded the disk budget of " + limit + " bytes");
+	}
+
+	public synchronized void release(long bytes) {
+		used -= bytes;
+	}
+
+	public synchronized long getUsed() {
+		return used;
+	}
+}
@@ -0,0 +1,116 @@
+package org.rdswitchboard.utils.neo4j.sync.match;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+
+/**
+ * Matcher resolving values from in-memory tables.
+ * <p>
+ * The source database is scanned once per label and key to build a value to node ids table.
+ * A table which does not fit the remaining memory budget is dropped and values of that label
+ * and key are resolved with schema index lookups instead.
+ */
+public class HashJoinMatcher implements Matcher {
+	// approximate heap size of a table entry without the value characters:
+	// hash map node, string, char array and long array headers
+	private static final long ENTRY_OVERHEAD = 120;
+
+	private final Map<String, Map<String, long[]>> tables = new HashMap<String, Map<String, long[]>>();
+	private final Matcher fallback;
+
+	private long memoryUsed;
+
+	/**
+	 * Builds value tables for every label and key
+	 * 
+	 * @param graphDb source database
+	 * @param labels node labels
+	 * @param keys matching properties
+	 * @param memoryBudget maximum number of bytes all tables are allowed to use
+	 */
+	public HashJoinMatcher(GraphDatabaseService graphDb, Collection<Label> labels, Collection<String> keys, long memoryBudget) {
+		this.fallback = new IndexMatcher(graphDb);
+
+		try (Transaction ignored = graphDb.beginTx()) {
+			for (Label label : labels)
+				for (String key : keys) {
+					Map<String, long[]> table = buildTable(graphDb, label, key, memoryBudget - memoryUsed);
+					if (null != table) {
+						System.out.println("Loaded " + table.size() + " values of " + label.name() + "(" + key + ")");
+
+						tables.put(getTableName(label, key), table);
+					} else
+						System.out.println("Values of " + label.name() + "(" + key + ") do not fit the memory budget, index lookups will be used");
+				}
+		}
+	}
+
+	@Override
+	public void match(Label label, String property, String value, List<Long> matches) {
+		Map<String, long[]> table = tables.get(getTableName(label, property));
+		if (null == table) {
+			fallback.match(label, property, value, matches);
+			return;
+		}
+
+		long[] ids = table.get(value);
+		if (null != ids)
+			for (long id : ids)
+				matches.add(id);
+	}
+
+	public long getMemoryUsed() {
+		return memoryUsed;
+	}
+
+	private Map<String, long[]> buildTable(GraphDatabaseService graphDb, Label label, String key, long budget) {
+		Map<String, long[]> table = new HashMap<String, long[]>();
+		long size = 0;
+
+		try (ResourceIterator<Node> nodes = graphDb.findNodes(label)) {
+			while (nodes.hasNext()) {
+				Node node = nodes.next();
+				// only string values are loaded, as a schema index lookup by a string 
+				// never matches elements of an array property
+				Object value = node.getProperty(key, null);
+				if (value instanceof String)
+					size += addValue(table, (String) value, node.getId());
+
+				if (size > budget)
+					return null;
+			}
+		}
+
+		memoryUsed += size;
+
+		return table;
+	}
+
+	private static long addValue(Map<String, long[]> table, String value, long id) {
+		long[] ids = table.get(value);
+		if (null == ids) {
+			table.put(value, new long[] { id });
+
+			return ENTRY_OVERHEAD + value.length() * 2;
+		}
+
+		ids = Arrays.copyOf(ids, ids.length + 1);
+		ids[ids.length - 1] = id;
+		table.put(value, ids);
+
+		return 8;
+	}
+
+	private static String getTableName(Label label, String key) {
+		return label.name() + ":" + key;
+	}
+}
@@ -0,0 +1,31 @@
+package org.rdswitchboard.utils.neo4j.sync.match;
+
+import java.util.List;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.ResourceIterator;
+
+/**
+ * Matcher performing one schema index lookup in the source database per value
+ */
+public class IndexMatcher implements Matcher {
+	private final GraphDatabaseService graphDb;
+
+	public IndexMatcher(GraphDatabaseService graphDb) {
+		this.graphDb = graphDb;
+	}
+
+	@Override
+	public void match(Label label, String property, String value, List<Long> matches) {
+		ResourceIterator<Node> nodes = graphDb.findNodes(label, property, value);
+		if (null != nodes)
+			try {
+				while (nodes.hasNext()) 
+					matches.add(nodes.next().getId());
+			} finally {
+				nodes.close();
+			}
+	}
+}
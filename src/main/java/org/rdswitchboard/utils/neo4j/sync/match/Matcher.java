@@ -0,0 +1,22 @@
+package org.rdswitchboard.utils.neo4j.sync.match;
+
+import java.util.List;
+
+import org.neo4j.graphdb.Label;
+
+/**
+ * Finds source nodes by a label and a property value.
+ * Implementations must be safe to use from several threads, every one of which
+ * has its own open transaction in the source database.
+ */
+public interface Matcher {
+	/**
+	 * Adds ids of all source nodes with the label and the property value to the matches list
+	 * 
+	 * @param label node label
+	 * @param property property name
+	 * @param value property value
+	 * @param matches list of matched source node ids
+	 */
+	void match(Label label, String property, String value, List<Long> matches);
+}
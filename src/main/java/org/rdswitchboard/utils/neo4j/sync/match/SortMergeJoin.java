@@ -0,0 +1,111 @@
+package org.rdswitchboard.utils.neo4j.sync.match;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.neo4j.graphdb.Label;
+
+/**
+ * Matches target nodes to source nodes by joining two externally sorted streams of
+ * (label, key, value, node id) tuples. Memory and temporary disk use are bounded, so the join
+ * works with graphs which do not fit in memory.
+ */
+public class SortMergeJoin implements Closeable {
+	private static final char SEPARATOR = '\0';
+
+	/**
+	 * Receives matched pairs of node ids
+	 */
+	public interface Listener {
+		void match(long targetId, long sourceId) throws IOException;
+	}
+
+	private final TupleSorter source;
+	private final TupleSorter target;
+	private final DiskBudget diskBudget;
+
+	/**
+	 * @param folder folder for temporary run files
+	 * @param memoryBudget maximum number of bytes used to sort tuples
+	 * @param diskBudget maximum number of bytes of temporary files or 0 if the disk use is not limited
+	 */
+	public SortMergeJoin(Path folder, long memoryBudget, long diskBudget) {
+		this.diskBudget = new DiskBudget(diskBudget);
+		this.source = new TupleSorter("source", folder, memoryBudget / 2, this.diskBudget);
+		this.target = new TupleSorter("target", folder, memoryBudget / 2, this.diskBudget);
+	}
+
+	public void addSource(Label label, String key, String value, long nodeId) throws IOException {
+		source.add(getJoinKey(label, key, value), nodeId);
+	}
+
+	public void addTarget(Label label, String key, String value, long nodeId) throws IOException {
+		target.add(getJoinKey(label, key, value), nodeId);
+	}
+
+	/**
+	 * Sorts both sides and passes every pair of target and source nodes with equal
+	 * label, key and value to the listener
+	 * 
+	 * @param listener match listener
+	 * @return number of matched pairs
+	 */
+	public long join(Listener listener) throws IOException {
+		System.out.println("Joining " + target.getTuples() + " target tuples in " + target.getRuns() 
+			+ " runs with " + source.getTuples() + " source tuples in " + source.getRuns() + " runs");
+		
+		long matches = 0;
+
+		try (TupleSorter.TupleReader sources = source.sort();
+			 TupleSorter.TupleReader targets = target.sort()) {
+
+			TupleSorter.Tuple src = sources.next();
+			TupleSorter.Tuple dst = targets.next();
+			long[] group = new long[16];
+
+			while (null != src && null != dst) {
+				int order = src.getKey().compareTo(dst.getKey());
+				if (order < 0)
+					src = sources.next();
+				else if (order > 0)
+					dst = targets.next();
+				else {
+					// collect ids of all source nodes with this key
+					String key = src.getKey();
+					int size = 0;
+					while (null != src && src.getKey().equals(key)) {
+						if (size == group.length)
+							group = Arrays.copyOf(group, size * 2);
+
+						group[size++] = src.getId();
+						src = sources.next();
+					}
+
+					while (null != dst && dst.getKey().equals(key)) {
+						for (int i = 0; i < size; ++i)
+							listener.match(dst.getId(), group[i]);
+
+						matches += size;
+						dst = targets.next();
+					}
+				}
+			}
+		}
+
+		System.out.println("Found " + matches + " matches, used " + diskBudget.getUsed() + " bytes of temporary files");
+
+		return matches;
+	}
+
+	@Override
+	public void close() throws IOException {
+		source.close();
+		target.close();
+	}
+
+	private static String getJoinKey(Label label, String key, String value) {
+		return label.name() + SEPARATOR + key + SEPARATOR + value;
+	}
+}
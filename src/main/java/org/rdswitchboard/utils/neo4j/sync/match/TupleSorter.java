@@ -0,0 +1,300 @@
+package org.rdswitchboard.utils.neo4j.sync.match;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * External sorter of (key, id) tuples.
+ * <p>
+ * Tuples are collected in memory until the memory budget is exhausted, then sorted and written 
+ * into a compressed run file. Once all tuples are added, the runs are merged into one sorted stream.
+ * Every open run holds its own decompression buffers, so the number of runs merged at once is limited 
+ * by the memory budget, which is free of tuples by then. If there are more runs, the oldest runs are 
+ * merged into new runs until the rest can be merged at once.
+ */
+public class TupleSorter implements Closeable {
+	// approximate heap size of a tuple without the key characters
+	private static final long TUPLE_OVERHEAD = 80;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	// approximate memory of an open run: the read and inflater buffers, the inflater window and state
+	private static final long RUN_READER_SIZE = 3 * BUFFER_SIZE;
+	// approximate memory of a run being written: the write and deflater buffers, the deflater state
+	private static final long RUN_WRITER_SIZE = 2 * BUFFER_SIZE + 256 * 1024;
+	private static final int END_OF_RUN = -1;
+
+	public static class Tuple {
+		private final String key;
+		private final long id;
+
+		public Tuple(String key, long id) {
+			this.key = key;
+			this.id = id;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public long getId() {
+			return id;
+		}
+	}
+
+	/**
+	 * Sequential reader of sorted tuples
+	 */
+	public interface TupleReader extends Closeable {
+		/**
+		 * @return next tuple or null if there is no more tuples
+		 */
+		Tuple next() throws IOException;
+	}
+
+	private static final Comparator<Tuple> TUPLE_ORDER = new Comparator<Tuple>() {
+		@Override
+		public int compare(Tuple o1, Tuple o2) {
+			int result = o1.key.compareTo(o2.key);
+			return result != 0 ? result : Long.compare(o1.id, o2.id);
+		}
+	};
+
+	private final String name;
+	private final Path folder;
+	private final long memoryBudget;
+	private final DiskBudget diskBudget;
+
+	private final List<Path> runs = new ArrayList<Path>();
+	private List<Tuple> buffer = new ArrayList<Tuple>();
+	private long bufferSize;
+	private long tuples;
+
+	/**
+	 * @param name name used as a prefix of run files
+	 * @param folder folder for run files
+	 * @param memoryBudget maximum number of bytes of tuples kept in memory
+	 * @param diskBudget budget of the temporary disk space, can be shared with other sorters
+	 */
+	public TupleSorter(String name, Path folder, long memoryBudget, DiskBudget diskBudget) {
+		this.name = name;
+		this.folder = folder;
+		this.memoryBudget = memoryBudget;
+		this.diskBudget = diskBudget;
+	}
+
+	public void add(String key, long id) throws IOException {
+		buffer.add(new Tuple(key, id));
+		bufferSize += TUPLE_OVERHEAD + key.length() * 2;
+		++tuples;
+
+		if (bufferSize > memoryBudget)
+			writeRun();
+	}
+
+	public long getTuples() {
+		return tuples;
+	}
+
+	public int getRuns() {
+		return runs.size();
+	}
+
+	/**
+	 * @return maximum number of runs merged at once
+	 */
+	public int getFanIn() {
+		return (int) Math.max(2, Math.min(Integer.MAX_VALUE, (memoryBudget - RUN_WRITER_SIZE) / RUN_READER_SIZE));
+	}
+
+	/**
+	 * @return reader of all added tuples ordered by key and id
+	 */
+	public TupleReader sort() throws IOException {
+		if (runs.isEmpty()) {
+			Collections.sort(buffer, TUPLE_ORDER);
+
+			final List<Tuple> sorted = buffer;
+			buffer = new ArrayList<Tuple>();
+			bufferSize = 0;
+
+			return new TupleReader() {
+				private int position;
+
+				@Override
+				public Tuple next() {
+					return position < sorted.size() ? sorted.get(position++) : null;
+				}
+
+				@Override
+				public void close() {
+				}
+			};
+		}
+
+		if (!buffer.isEmpty())
+			writeRun();
+
+		mergeRuns();
+
+		return new MergeReader(runs);
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (Path run : runs) 
+			Files.deleteIfExists(run);
+		
+		runs.clear();
+	}
+
+	private void writeRun() throws IOException {
+		Collections.sort(buffer, TUPLE_ORDER);
+
+		Path run = createRun();
+		try (DataOutputStream out = openRun(run)) {
+			for (Tuple tuple : buffer) 
+				writeTuple(out, tuple);
+
+			out.writeInt(END_OF_RUN);
+		}
+
+		diskBudget.allocate(Files.size(run));
+
+		buffer = new ArrayList<Tuple>();
+		bufferSize = 0;
+	}
+
+	private void mergeRuns() throws IOException {
+		int fanIn = getFanIn();
+		
+		// merged runs are appended, so every tuple is rewritten about log(runs) / log(fan-in) times
+		while (runs.size() > fanIn) {
+			List<Path> merged = new ArrayList<Path>(runs.subList(0, fanIn));
+
+			Path run = createRun();
+			try (MergeReader reader = new MergeReader(merged); DataOutputStream out = openRun(run)) {
+				for (Tuple tuple = reader.next(); null != tuple; tuple = reader.next())
+					writeTuple(out, tuple);
+
+				out.writeInt(END_OF_RUN);
+			}
+
+			diskBudget.allocate(Files.size(run));
+
+			// the merged runs stay listed until the new run is complete, so a failure still deletes them
+			for (Path path : merged) {
+				diskBudget.release(Files.size(path));
+				Files.delete(path);
+			}
+
+			runs.subList(0, fanIn).clear();
+		}
+	}
+
+	private Path createRun() throws IOException {
+		Files.createDirectories(folder);
+		Path run = Files.createTempFile(folder, name + "_", ".run.gz");
+		runs.add(run);
+
+		return run;
+	}
+
+	private static DataOutputStream openRun(Path run) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(
+				new GZIPOutputStream(Files.newOutputStream(run), BUFFER_SIZE), BUFFER_SIZE));
+	}
+
+	private static void writeTuple(DataOutputStream out, Tuple tuple) throws IOException {
+		byte[] key = tuple.key.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(key.length);
+		out.write(key);
+		out.writeLong(tuple.id);
+	}
+
+	private static class RunReader implements Closeable {
+		private final DataInputStream in;
+		private Tuple current;
+
+		private RunReader(Path run) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(
+					new GZIPInputStream(Files.newInputStream(run), BUFFER_SIZE), BUFFER_SIZE));
+		}
+
+		private boolean advance() throws IOException {
+			int length = in.readInt();
+			if (length == END_OF_RUN) {
+				current = null;
+				return false;
+			}
+
+			byte[] key = new byte[length];
+			in.readFully(key);
+			current = new Tuple(new String(key, StandardCharsets.UTF_8), in.readLong());
+
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	private static class MergeReader implements TupleReader {
+		private final List<RunReader> readers = new ArrayList<RunReader>();
+		private final PriorityQueue<RunReader> queue;
+
+		private MergeReader(List<Path> runs) throws IOException {
+			queue = new PriorityQueue<RunReader>(Math.max(1, runs.size()), new Comparator<RunReader>() {
+				@Override
+				public int compare(RunReader o1, RunReader o2) {
+					return TUPLE_ORDER.compare(o1.current, o2.current);
+				}
+			});
+
+			try {
+				for (Path run : runs) {
+					RunReader reader = new RunReader(run);
+					readers.add(reader);
+					if (reader.advance())
+						queue.add(reader);
+				}
+			} catch (IOException e) {
+				close();
+				throw e;
+			}
+		}
+
+		@Override
+		public Tuple next() throws IOException {
+			RunReader reader = queue.poll();
+			if (null == reader)
+				return null;
+
+			Tuple tuple = reader.current;
+			if (reader.advance())
+				queue.add(reader);
+
+			return tuple;
+		}
+
+		@Override
+		public void close() throws IOException {
+			for (RunReader reader : readers)
+				reader.close();
+		}
+	}
+}
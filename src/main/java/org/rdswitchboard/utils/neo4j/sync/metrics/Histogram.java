@@ -0,0 +1,105 @@
+package org.rdswitchboard.utils.neo4j.sync.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of non negative values in logarithmic buckets. Every power of two is split into 
+ * eight linear buckets, so a percentile is reported with at most 12.5% error in a fixed 4 KB 
+ * of memory. Values can be recorded from several threads at once.
+ */
+public class Histogram {
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	
+	private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+	
+	public void record(long value) {
+		if (value < 0)
+			value = 0;
+		
+		buckets.incrementAndGet(getBucket(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		
+		long current;
+		while (value > (current = max.get()) && !max.compareAndSet(current, value))
+			;
+	}
+	
+	public long getCount() {
+		return count.get();
+	}
+	
+	public long getMax() {
+		return max.get();
+	}
+	
+	public long getSum() {
+		return sum.get();
+	}
+	
+	public double getMean() {
+		long count = this.count.get();
+		return count == 0 ? 0 : (double) sum.get() / count;
+	}
+	
+	/**
+	 * @param quantile quantile between 0 and 1
+	 * @return upper bound of the bucket holding the quantile, 0 if nothing has been recorded
+	 */
+	public long getPercentile(double quantile) {
+		long count = this.count.get();
+		if (count == 0)
+			return 0;
+		
+		long rank = Math.max(1, (long) Math.ceil(quantile * count));
+		long seen = 0;
+		for (int bucket = 0; bucket < buckets.length(); ++bucket) {
+			seen += buckets.get(bucket);
+			if (seen >= rank)
+				return Math.min(getUpperBound(bucket), max.get());
+		}
+		
+		return max.get();
+	}
+	
+	/**
+	 * @return number of values in every non empty bucket, keyed by the upper bound of the bucket
+	 */
+	public Map<Long, Long> getDistribution() {
+		Map<Long, Long> distribution = new TreeMap<Long, Long>();
+		for (int bucket = 0; bucket < buckets.length(); ++bucket) {
+			long count = buckets.get(bucket);
+			if (count > 0)
+				distribution.put(getUpperBound(bucket), count);
+		}
+		
+		return distribution;
+	}
+	
+	static int getBucket(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+	
+	static long getUpperBound(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		
+		return lower + (1L << shift) - 1;
+	}
+}
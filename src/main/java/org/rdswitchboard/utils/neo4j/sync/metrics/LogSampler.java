@@ -0,0 +1,37 @@
+package org.rdswitchboard.utils.neo4j.sync.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which per-item messages, like every search and every match, are printed. 
+ * Per-item messages are only printed at the debug level, and then only every n-th of them.
+ */
+public class LogSampler {
+	public static final String LEVEL_INFO = "info";
+	public static final String LEVEL_DEBUG = "debug";
+	
+	private final boolean debug;
+	private final long rate;
+	private final AtomicLong counter = new AtomicLong();
+	
+	/**
+	 * @param level log level, info or debug
+	 * @param rate print every n-th per-item message
+	 */
+	public LogSampler(String level, long rate) {
+		if (!level.equals(LEVEL_INFO) && !level.equals(LEVEL_DEBUG))
+			throw new IllegalArgumentException("Unknown log level: " + level);
+		if (rate < 1)
+			throw new IllegalArgumentException("Log sampling rate must be a positive number");
+		
+		this.debug = level.equals(LEVEL_DEBUG);
+		this.rate = rate;
+	}
+	
+	/**
+	 * @return true if the next per-item message should be printed
+	 */
+	public boolean sample() {
+		return debug && counter.incrementAndGet() % rate == 0;
+	}
+}
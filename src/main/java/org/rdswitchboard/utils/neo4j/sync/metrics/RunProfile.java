@@ -0,0 +1,222 @@
+package org.rdswitchboard.utils.neo4j.sync.metrics;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Performance profile of a synthesis run, written as a JSON report once the run is over. 
+ * Lookups are profiled per label and key, commits per phase, and the largest expanded 
+ * neighbourhoods and the source nodes of the highest degree are kept.
+ */
+public class RunProfile {
+	public static final int DEFAULT_TOP = 10;
+	
+	private final ConcurrentMap<String, KeyProfile> keys = new ConcurrentHashMap<String, KeyProfile>();
+	private final Map<String, PhaseProfile> phases = new LinkedHashMap<String, PhaseProfile>();
+	private final TopEntries neighbourhoods;
+	private final TopEntries hubs;
+	
+	public RunProfile() {
+		this(DEFAULT_TOP);
+	}
+	
+	/**
+	 * @param top number of the largest neighbourhoods and hub nodes to keep
+	 */
+	public RunProfile(int top) {
+		this.neighbourhoods = new TopEntries(top);
+		this.hubs = new TopEntries(top);
+	}
+	
+	/**
+	 * Records one source lookup, can be called from several threads at once
+	 * 
+	 * @param label node label
+	 * @param key matching key
+	 * @param nanos lookup duration
+	 * @param found number of source nodes found
+	 */
+	public void lookup(String label, String key, long nanos, int found) {
+		String name = label + '|' + key;
+		KeyProfile profile = keys.get(name);
+		if (null == profile) {
+			KeyProfile created = new KeyProfile(label, key);
+			profile = keys.putIfAbsent(name, created);
+			if (null == profile)
+				profile = created;
+		}
+		
+		profile.lookups.increment();
+		if (found > 0)
+			profile.hits.increment();
+		profile.fanOut.record(found);
+		profile.latency.record(nanos);
+	}
+	
+	/**
+	 * Records one commit
+	 * 
+	 * @param phase phase of the run
+	 * @param operations number of nodes and relationships committed
+	 * @param bytes estimated size of the committed transaction state
+	 * @param latency milliseconds the commit took
+	 */
+	public synchronized void committed(String phase, long operations, long bytes, long latency) {
+		PhaseProfile profile = phases.get(phase);
+		if (null == profile)
+			phases.put(phase, profile = new PhaseProfile());
+		
+		profile.operations.record(operations);
+		profile.bytes.record(bytes);
+		profile.latency.record(latency);
+	}
+	
+	/**
+	 * @param relationships number of relationships walked by the expansion of a neighbourhood
+	 * @return true if the neighbourhood would be one of the largest
+	 */
+	public boolean isLargeNeighbourhood(long relationships) {
+		return neighbourhoods.accepts(relationships);
+	}
+	
+	/**
+	 * @param nodeId source node id of the neighbourhood root
+	 * @param key key of the root
+	 * @param nodes number of source nodes expanded
+	 * @param relationships number of source relationships walked
+	 * @param imported number of nodes imported by the expansion
+	 * @param created number of relationships created by the expansion
+	 * @param millis expansion duration
+	 */
+	public void neighbourhood(long nodeId, Object key, long nodes, long relationships, long imported, long created, long millis) {
+		Map<String, Object> details = new LinkedHashMap<String, Object>();
+		details.put("source_id", nodeId);
+		details.put("key", key);
+		details.put("expanded_nodes", nodes);
+		details.put("walked_relationships", relationships);
+		details.put("imported_nodes", imported);
+		details.put("created_relationships", created);
+		details.put("millis", millis);
+		
+		neighbourhoods.offer(nodeId, relationships, details);
+	}
+	
+	/**
+	 * @param degree number of relationships of an expanded source node
+	 * @return true if the node would be one of the top hubs
+	 */
+	public boolean isHub(long degree) {
+		return hubs.accepts(degree);
+	}
+	
+	/**
+	 * @param nodeId source node id
+	 * @param key key of the node
+	 * @param type type of the node
+	 * @param degree number of relationships of the node
+	 */
+	public void hub(long nodeId, Object key, Object type, long degree) {
+		Map<String, Object> details = new LinkedHashMap<String, Object>();
+		details.put("source_id", nodeId);
+		details.put("key", key);
+		details.put("type", type);
+		details.put("degree", degree);
+		
+		hubs.offer(nodeId, degree, details);
+	}
+	
+	/**
+	 * Writes the report
+	 * 
+	 * @param file report file
+	 * @param run run description and totals, written first
+	 * @param phaseTimes milliseconds spent in every phase
+	 */
+	public synchronized void write(Path file, Map<String, Object> run, Map<String, Long> phaseTimes) throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		ObjectNode report = mapper.createObjectNode();
+		report.putPOJO("run", run);
+		
+		ArrayNode lookups = report.putArray("lookups");
+		for (KeyProfile profile : new TreeMap<String, KeyProfile>(keys).values()) {
+			long count = profile.lookups.sum();
+			
+			ObjectNode node = lookups.addObject();
+			node.put("label", profile.label);
+			node.put("key", profile.key);
+			node.put("lookups", count);
+			node.put("hits", profile.hits.sum());
+			node.put("hit_rate", count == 0 ? 0 : (double) profile.hits.sum() / count);
+			node.put("matches", profile.fanOut.getSum());
+			
+			ObjectNode fanOut = putSummary(node, "fan_out", profile.fanOut, 1);
+			ObjectNode distribution = fanOut.putObject("distribution");
+			for (Map.Entry<Long, Long> bucket : profile.fanOut.getDistribution().entrySet())
+				distribution.put(bucket.getKey().toString(), bucket.getValue());
+			
+			putSummary(node, "latency_us", profile.latency, 1000);
+		}
+		
+		ArrayNode list = report.putArray("phases");
+		for (Map.Entry<String, Long> phase : phaseTimes.entrySet()) {
+			ObjectNode node = list.addObject();
+			node.put("name", phase.getKey());
+			node.put("wall_ms", phase.getValue());
+			
+			PhaseProfile profile = phases.get(phase.getKey());
+			node.put("commits", null == profile ? 0 : profile.operations.getCount());
+			if (null != profile) {
+				node.put("committed_operations", profile.operations.getSum());
+				putSummary(node, "commit_operations", profile.operations, 1);
+				putSummary(node, "commit_bytes", profile.bytes, 1);
+				putSummary(node, "commit_latency_ms", profile.latency, 1);
+			}
+		}
+		
+		report.putPOJO("largest_neighbourhoods", neighbourhoods.getEntries());
+		report.putPOJO("hubs", hubs.getEntries());
+		
+		mapper.writerWithDefaultPrettyPrinter().writeValue(file.toFile(), report);
+	}
+	
+	private static ObjectNode putSummary(ObjectNode parent, String name, Histogram histogram, long unit) {
+		ObjectNode node = parent.putObject(name);
+		node.put("mean", histogram.getMean() / unit);
+		node.put("p50", histogram.getPercentile(0.5) / unit);
+		node.put("p99", histogram.getPercentile(0.99) / unit);
+		node.put("max", histogram.getMax() / unit);
+		
+		return node;
+	}
+	
+	private static class KeyProfile {
+		private final String label;
+		private final String key;
+		private final LongAdder lookups = new LongAdder();
+		private final LongAdder hits = new LongAdder();
+		private final Histogram fanOut = new Histogram();
+		// lookup latency in nanoseconds
+		private final Histogram latency = new Histogram();
+		
+		private KeyProfile(String label, String key) {
+			this.label = label;
+			this.key = key;
+		}
+	}
+	
+	private static class PhaseProfile {
+		private final Histogram operations = new Histogram();
+		private final Histogram bytes = new Histogram();
+		private final Histogram latency = new Histogram();
+	}
+}
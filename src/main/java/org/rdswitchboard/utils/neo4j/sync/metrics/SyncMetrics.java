@@ -0,0 +1,335 @@
+package org.rdswitchboard.utils.neo4j.sync.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Live metrics of a synthesis run. The counters owned by the writer thread are published 
+ * by update calls, lookups and matches can be recorded from any thread. The metrics can be 
+ * registered over JMX and printed as a compact progress line in fixed intervals.
+ */
+public class SyncMetrics implements SyncMetricsMXBean {
+	public static final String OBJECT_NAME = "org.rdswitchboard.sync:type=Synthesis";
+	
+	private final String name;
+	private final long started = System.currentTimeMillis();
+	private final Map<String, Long> phaseTimes = new LinkedHashMap<String, Long>();
+	private volatile String phase;
+	private volatile long phaseStarted;
+	
+	private volatile long processed;
+	private volatile long nodes;
+	private volatile long relationships;
+	private volatile long commits;
+	private volatile long idMapSize;
+	private volatile long position = -1;
+	private volatile long limit;
+	
+	private final LongAdder matches = new LongAdder();
+	// lookup latency in nanoseconds
+	private final Histogram lookups = new Histogram();
+	// commit latency in milliseconds
+	private final Histogram commitLatency = new Histogram();
+	
+	private ObjectName objectName;
+	private ScheduledExecutorService reporter;
+	
+	// state of the last progress line
+	private long reportedAt = started;
+	private long reportedMatches;
+	private long reportedCommits;
+	
+	/**
+	 * @param name name of the run, reported with the progress and in the JMX object name
+	 */
+	public SyncMetrics(String name) {
+		this.name = name;
+	}
+	
+	/**
+	 * Finishes the current phase and starts the next one. A phase started more than once 
+	 * accumulates the time of all its runs
+	 * 
+	 * @param phase name of the next phase or null if the run is over
+	 */
+	public synchronized void startPhase(String phase) {
+		long now = System.currentTimeMillis();
+		if (null != this.phase) {
+			Long elapsed = phaseTimes.get(this.phase);
+			phaseTimes.put(this.phase, (null == elapsed ? 0 : elapsed) + now - phaseStarted);
+		}
+		
+		this.phase = phase;
+		this.phaseStarted = now;
+	}
+	
+	/**
+	 * Publishes counters of the writer thread
+	 * 
+	 * @param processed number of processed destination nodes
+	 * @param nodes number of imported nodes
+	 * @param relationships number of created relationships
+	 * @param commits number of committed chunks
+	 * @param idMapSize number of entries in the imported node id map
+	 */
+	public void update(long processed, long nodes, long relationships, long commits, long idMapSize) {
+		this.processed = processed;
+		this.nodes = nodes;
+		this.relationships = relationships;
+		this.commits = commits;
+		this.idMapSize = idMapSize;
+	}
+	
+	/**
+	 * @param position last processed position in the current phase, -1 if unknown
+	 * @param limit position where the current phase ends
+	 */
+	public void setPosition(long position, long limit) {
+		this.position = position;
+		this.limit = limit;
+	}
+	
+	/**
+	 * @param nanos duration of one source lookup
+	 */
+	public void lookup(long nanos) {
+		lookups.record(nanos);
+	}
+	
+	/**
+	 * @param count number of source nodes matched
+	 */
+	public void matched(long count) {
+		matches.add(count);
+	}
+	
+	/**
+	 * @param latency milliseconds a commit took
+	 */
+	public void committed(long latency) {
+		commitLatency.record(latency);
+	}
+	
+	public Histogram getLookupHistogram() {
+		return lookups;
+	}
+	
+	public Histogram getCommitHistogram() {
+		return commitLatency;
+	}
+	
+	/**
+	 * Registers the metrics in the platform MBean server, replacing metrics left by a previous run 
+	 * of the same name
+	 */
+	public void register() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(OBJECT_NAME + ",name=" + ObjectName.quote(this.name));
+		if (server.isRegistered(name))
+			server.unregisterMBean(name);
+		
+		server.registerMBean(this, name);
+		objectName = name;
+	}
+	
+	/**
+	 * Prints the progress line every interval until stopped
+	 * 
+	 * @param seconds interval between progress lines
+	 */
+	public synchronized void startReporting(long seconds) {
+		reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "sync-progress");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		
+		reporter.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				System.out.println(getProgress());
+			}
+		}, seconds, seconds, TimeUnit.SECONDS);
+	}
+	
+	/**
+	 * Stops the progress line and unregisters the metrics from JMX
+	 */
+	public synchronized void close() throws JMException {
+		if (null != reporter) {
+			reporter.shutdownNow();
+			reporter = null;
+		}
+		
+		if (null != objectName) {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(objectName))
+				server.unregisterMBean(objectName);
+			objectName = null;
+		}
+	}
+	
+	/**
+	 * @return compact progress line with rates since the previous line
+	 */
+	public synchronized String getProgress() {
+		long now = System.currentTimeMillis();
+		long matches = getMatches();
+		long commits = this.commits;
+		double seconds = Math.max(now - reportedAt, 1) / 1000.0;
+		
+		StringBuilder line = new StringBuilder();
+		line.append(String.format("Progress %s [%s %s]: processed %d, imported %d nodes and %d relationships, "
+				+ "%.1f matches/s, %.1f commits/s, lookup p50 %d us p99 %d us, id map %d", 
+				name, phase, formatDuration(now - phaseStarted), processed, nodes, relationships, 
+				(matches - reportedMatches) / seconds, (commits - reportedCommits) / seconds,
+				getLookupP50Micros(), getLookupP99Micros(), idMapSize));
+		
+		double progress = getPhaseProgress();
+		if (progress >= 0)
+			line.append(String.format(", %.0f%% ETA %s", progress * 100, formatDuration(getPhaseEtaMillis())));
+		
+		reportedAt = now;
+		reportedMatches = matches;
+		reportedCommits = commits;
+		
+		return line.toString();
+	}
+	
+	@Override
+	public String getPhase() {
+		return phase;
+	}
+
+	@Override
+	public long getPhaseMillis() {
+		return null == phase ? 0 : System.currentTimeMillis() - phaseStarted;
+	}
+
+	@Override
+	public synchronized Map<String, Long> getPhaseTimes() {
+		return new LinkedHashMap<String, Long>(phaseTimes);
+	}
+
+	@Override
+	public long getElapsedMillis() {
+		return System.currentTimeMillis() - started;
+	}
+
+	@Override
+	public long getProcessedNodes() {
+		return processed;
+	}
+
+	@Override
+	public long getImportedNodes() {
+		return nodes;
+	}
+
+	@Override
+	public long getImportedRelationships() {
+		return relationships;
+	}
+
+	@Override
+	public long getIdMapSize() {
+		return idMapSize;
+	}
+
+	@Override
+	public long getMatches() {
+		return matches.sum();
+	}
+
+	@Override
+	public double getMatchesPerSecond() {
+		return getMatches() * 1000.0 / Math.max(getElapsedMillis(), 1);
+	}
+
+	@Override
+	public long getCommits() {
+		return commits;
+	}
+
+	@Override
+	public double getCommitsPerSecond() {
+		return commits * 1000.0 / Math.max(getElapsedMillis(), 1);
+	}
+
+	@Override
+	public long getLookups() {
+		return lookups.getCount();
+	}
+
+	@Override
+	public double getLookupMeanMicros() {
+		return lookups.getMean() / 1000;
+	}
+
+	@Override
+	public long getLookupP50Micros() {
+		return lookups.getPercentile(0.5) / 1000;
+	}
+
+	@Override
+	public long getLookupP99Micros() {
+		return lookups.getPercentile(0.99) / 1000;
+	}
+
+	@Override
+	public long getLookupMaxMicros() {
+		return lookups.getMax() / 1000;
+	}
+
+	@Override
+	public long getCommitP50Millis() {
+		return commitLatency.getPercentile(0.5);
+	}
+
+	@Override
+	public long getCommitP99Millis() {
+		return commitLatency.getPercentile(0.99);
+	}
+
+	@Override
+	public long getCommitMaxMillis() {
+		return commitLatency.getMax();
+	}
+
+	@Override
+	public double getPhaseProgress() {
+		long position = this.position;
+		long limit = this.limit;
+		if (position < 0 || limit <= 0)
+			return -1;
+		
+		return Math.min(1, (double) (position + 1) / limit);
+	}
+
+	@Override
+	public long getPhaseEtaMillis() {
+		double progress = getPhaseProgress();
+		if (progress <= 0)
+			return -1;
+		
+		return (long) (getPhaseMillis() * (1 - progress) / progress);
+	}
+	
+	private static String formatDuration(long millis) {
+		long seconds = Math.max(millis, 0) / 1000;
+		return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+	}
+}
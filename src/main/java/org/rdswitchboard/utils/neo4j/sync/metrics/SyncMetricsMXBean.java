@@ -0,0 +1,43 @@
+package org.rdswitchboard.utils.neo4j.sync.metrics;
+
+import java.util.Map;
+
+/**
+ * Progress of a running synthesis published over JMX
+ */
+public interface SyncMetricsMXBean {
+	String getPhase();
+	long getPhaseMillis();
+	Map<String, Long> getPhaseTimes();
+	long getElapsedMillis();
+	
+	long getProcessedNodes();
+	long getImportedNodes();
+	long getImportedRelationships();
+	long getIdMapSize();
+	
+	long getMatches();
+	double getMatchesPerSecond();
+	long getCommits();
+	double getCommitsPerSecond();
+	
+	long getLookups();
+	double getLookupMeanMicros();
+	long getLookupP50Micros();
+	long getLookupP99Micros();
+	long getLookupMaxMicros();
+	
+	long getCommitP50Millis();
+	long getCommitP99Millis();
+	long getCommitMaxMillis();
+	
+	/**
+	 * @return completed share of the current phase between 0 and 1, or -1 if unknown
+	 */
+	double getPhaseProgress();
+	
+	/**
+	 * @return estimated milliseconds until the current phase completes, or -1 if unknown
+	 */
+	long getPhaseEtaMillis();
+}
@@ -0,0 +1,95 @@
+package org.rdswitchboard.utils.neo4j.sync.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps a few entries with the highest score, one per node id. Entries are only built 
+ * for scores which qualify, so callers can check with accepts before collecting details.
+ */
+public class TopEntries {
+	private final int capacity;
+	private final List<Entry> entries = new ArrayList<Entry>();
+	
+	public TopEntries(int capacity) {
+		this.capacity = capacity;
+	}
+	
+	/**
+	 * @param score entry score
+	 * @return true if an entry with the score would be kept
+	 */
+	public synchronized boolean accepts(long score) {
+		return entries.size() < capacity || score > getMinimum().score;
+	}
+	
+	/**
+	 * Adds the entry, or updates the entry of the same id if the new score is higher
+	 * 
+	 * @param id node id
+	 * @param score entry score
+	 * @param details entry details
+	 */
+	public synchronized void offer(long id, long score, Map<String, Object> details) {
+		for (Entry entry : entries) 
+			if (entry.id == id) {
+				if (score > entry.score) {
+					entry.score = score;
+					entry.details = details;
+				}
+				return;
+			}
+		
+		if (entries.size() >= capacity) {
+			Entry minimum = getMinimum();
+			if (score <= minimum.score)
+				return;
+			
+			entries.remove(minimum);
+		}
+		
+		Entry entry = new Entry();
+		entry.id = id;
+		entry.score = score;
+		entry.details = details;
+		entries.add(entry);
+	}
+	
+	/**
+	 * @return details of the entries, starting with the highest score
+	 */
+	public synchronized List<Map<String, Object>> getEntries() {
+		List<Entry> sorted = new ArrayList<Entry>(entries);
+		Collections.sort(sorted, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry a, Entry b) {
+				return Long.compare(b.score, a.score);
+			}
+		});
+		
+		List<Map<String, Object>> list = new ArrayList<Map<String, Object>>();
+		for (Entry entry : sorted)
+			list.add(new LinkedHashMap<String, Object>(entry.details));
+		
+		return list;
+	}
+	
+	private Entry getMinimum() {
+		Entry minimum = null;
+		for (Entry entry : entries)
+			if (null == minimum || entry.score < minimum.score)
+				minimum = entry;
+		
+		return minimum;
+	}
+	
+	private static class Entry {
+		private long id;
+		private long score;
+		private Map<String, Object> details;
+	}
+}
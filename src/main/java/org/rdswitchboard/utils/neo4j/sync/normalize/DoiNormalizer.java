@@ -0,0 +1,28 @@
+package org.rdswitchboard.utils.neo4j.sync.normalize;
+
+import java.util.Locale;
+
+/**
+ * Normalizer of DOIs. DOIs are case insensitive and are often stored as resolver URLs, 
+ * so the resolver prefix and whitespace are removed and the DOI is converted to lower case:
+ * https://doi.org/10.1000/ABC, doi:10.1000/abc and 10.1000/Abc all become 10.1000/abc
+ */
+public class DoiNormalizer implements Normalizer {
+	private static final String[] PREFIXES = {
+		"https://doi.org/", "http://doi.org/", "https://dx.doi.org/", "http://dx.doi.org/",
+		"doi.org/", "dx.doi.org/", "doi:"
+	};
+
+	@Override
+	public String normalize(String value) {
+		String doi = value.replaceAll("\\s+", "").toLowerCase(Locale.ROOT);
+		
+		for (String prefix : PREFIXES) 
+			if (doi.startsWith(prefix)) {
+				doi = doi.substring(prefix.length());
+				break;
+			}
+		
+		return doi.isEmpty() ? null : doi;
+	}
+}
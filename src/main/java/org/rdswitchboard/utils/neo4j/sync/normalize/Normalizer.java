@@ -0,0 +1,15 @@
+package org.rdswitchboard.utils.neo4j.sync.normalize;
+
+/**
+ * Converts an identifier to its canonical form, so all spellings of the same 
+ * identifier are matched by one exact lookup.
+ * Implementations must be safe to use from several threads and must have a public 
+ * constructor without arguments to be configured by the class name.
+ */
+public interface Normalizer {
+	/**
+	 * @param value identifier as stored in a database
+	 * @return canonical form of the identifier or null if the value does not contain one
+	 */
+	String normalize(String value);
+}
@@ -0,0 +1,178 @@
+package org.rdswitchboard.utils.neo4j.sync.normalize;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Transaction;
+
+/**
+ * Normalizers of the matching keys.
+ * <p>
+ * The canonical form of every normalized key of a source node is stored in a shadow property 
+ * named normalized_&lt;key&gt;, which is indexed and looked up instead of the key itself, so every 
+ * target value is matched by one exact lookup of its canonical form. Keys without a normalizer 
+ * are matched as they are.
+ * <p>
+ * Normalizers are configured as a comma separated list of keys, each of them optionally followed 
+ * by = and a normalizer name, which is either doi, orcid, text or a name of a class implementing 
+ * the Normalizer interface. A key without a normalizer name uses the built-in normalizer with 
+ * the same name as the key, for example: doi,orcid,nla=text
+ */
+public class Normalizers {
+	public static final String SHADOW_PREFIX = "normalized_";
+
+	public static final String NORMALIZER_DOI = "doi";
+	public static final String NORMALIZER_ORCID = "orcid";
+	public static final String NORMALIZER_TEXT = "text";
+	
+	// number of source nodes normalized in one transaction
+	private static final int CHUNK_SIZE = 10000;
+	
+	private final Map<String, Normalizer> normalizers = new TreeMap<String, Normalizer>();
+	private final Map<String, String> names = new TreeMap<String, String>();
+	
+	/**
+	 * @param config list of normalized keys or null if no key should be normalized
+	 * @param keys matching keys
+	 */
+	public Normalizers(String config, Set<String> keys) {
+		if (null == config || config.trim().isEmpty())
+			return;
+		
+		for (String entry : config.split(",")) {
+			String[] parts = entry.split("=", 2);
+			String key = parts[0].trim();
+			String name = parts.length > 1 ? parts[1].trim() : key;
+			
+			if (!keys.contains(key))
+				throw new IllegalArgumentException("Normalized key is not one of the sync keys: " + key);
+			
+			normalizers.put(key, createNormalizer(name));
+			names.put(key, name);
+		}
+	}
+	
+	public boolean isEmpty() {
+		return normalizers.isEmpty();
+	}
+	
+	/**
+	 * @param key matching key
+	 * @return name of the source property to be looked up for the key
+	 */
+	public String getProperty(String key) {
+		return normalizers.containsKey(key) ? SHADOW_PREFIX + key : key;
+	}
+	
+	/**
+	 * @param key matching key
+	 * @param value value of the key
+	 * @return value to be looked up or null if the value can not match any node
+	 */
+	public String normalize(String key, String value) {
+		Normalizer normalizer = normalizers.get(key);
+		
+		return null == normalizer ? value : normalizer.normalize(value);
+	}
+	
+	/**
+	 * Writes shadow properties of all normalized keys into the source database. 
+	 * Only properties which differ from the stored canonical form are written, 
+	 * so a database normalized by a previous run is only read.
+	 * 
+	 * @param graphDb source database
+	 * @param labels labels of nodes to be normalized
+	 * @param highId node id after the last node of the database
+	 * @return number of written shadow properties
+	 */
+	public long canonicalize(GraphDatabaseService graphDb, Collection<Label> labels, long highId) {
+		long written = 0;
+		
+		for (long start = 0; start < highId; start += CHUNK_SIZE) 
+			try (Transaction tx = graphDb.beginTx()) {
+				for (long id = start; id < start + CHUNK_SIZE && id < highId; ++id) {
+					Node node;
+					try {
+						node = graphDb.getNodeById(id);
+					} catch (NotFoundException e) {
+						continue;
+					}
+					
+					if (hasLabel(node, labels))
+						written += canonicalize(node);
+				}
+				
+				tx.success();
+			}
+		
+		return written;
+	}
+
+	/**
+	 * @param property property name
+	 * @return true if the property is a shadow property, which should not be copied 
+	 */
+	public static boolean isShadowProperty(String property) {
+		return property.startsWith(SHADOW_PREFIX);
+	}
+	
+	@Override
+	public String toString() {
+		return names.toString();
+	}
+
+	private int canonicalize(Node node) {
+		int written = 0;
+		
+		for (Map.Entry<String, Normalizer> entry : normalizers.entrySet()) {
+			String shadow = SHADOW_PREFIX + entry.getKey();
+			
+			// a schema index lookup by a string never matches elements of an array property, 
+			// so only string values are normalized
+			Object value = node.getProperty(entry.getKey(), null);
+			String normalized = value instanceof String ? entry.getValue().normalize((String) value) : null;
+			Object stored = node.getProperty(shadow, null);
+			
+			if (null == normalized) {
+				if (null != stored) {
+					node.removeProperty(shadow);
+					++written;
+				}
+			} else if (!normalized.equals(stored)) {
+				node.setProperty(shadow, normalized);
+				++written;
+			}
+		}
+		
+		return written;
+	}
+
+	private static boolean hasLabel(Node node, Collection<Label> labels) {
+		for (Label label : labels)
+			if (node.hasLabel(label))
+				return true;
+		
+		return false;
+	}
+	
+	private static Normalizer createNormalizer(String name) {
+		if (name.equals(NORMALIZER_DOI))
+			return new DoiNormalizer();
+		if (name.equals(NORMALIZER_ORCID))
+			return new OrcidNormalizer();
+		if (name.equals(NORMALIZER_TEXT))
+			return new TextNormalizer();
+		
+		try {
+			return Class.forName(name).asSubclass(Normalizer.class).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | ClassCastException e) {
+			throw new IllegalArgumentException("Unknown normalizer: " + name, e);
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package org.rdswitchboard.utils.neo4j.sync.normalize;
+
+import java.util.Locale;
+
+/**
+ * Normalizer of ORCID iDs. The orcid.org prefix and whitespace are removed and the 
+ * check digit is converted to upper case. An iD of 16 characters is written in 
+ * the hyphenated form, so https://orcid.org/0000-0002-1825-009x and 000000021825009X 
+ * both become 0000-0002-1825-009X.
+ */
+public class OrcidNormalizer implements Normalizer {
+	private static final String[] PREFIXES = {
+		"https://orcid.org/", "http://orcid.org/", "orcid.org/"
+	};
+	
+	private static final int DIGITS = 16;
+	private static final int GROUP = 4;
+
+	@Override
+	public String normalize(String value) {
+		String orcid = value.replaceAll("\\s+", "").toUpperCase(Locale.ROOT);
+		
+		for (String prefix : PREFIXES) 
+			if (orcid.regionMatches(true, 0, prefix, 0, prefix.length())) {
+				orcid = orcid.substring(prefix.length());
+				break;
+			}
+		
+		String digits = orcid.replace("-", "");
+		if (digits.length() == DIGITS && digits.matches("[0-9]{15}[0-9X]")) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < DIGITS; i += GROUP) {
+				if (i > 0)
+					sb.append('-');
+				sb.append(digits, i, i + GROUP);
+			}
+			
+			return sb.toString();
+		}
+		
+		return orcid.isEmpty() ? null : orcid;
+	}
+}
@@ -0,0 +1,17 @@
+package org.rdswitchboard.utils.neo4j.sync.normalize;
+
+import java.util.Locale;
+
+/**
+ * Normalizer of case insensitive identifiers: trims the value, collapses whitespace 
+ * and converts it to lower case
+ */
+public class TextNormalizer implements Normalizer {
+
+	@Override
+	public String normalize(String value) {
+		String text = value.trim().replaceAll("\\s+", " ");
+		
+		return text.isEmpty() ? null : text.toLowerCase(Locale.ROOT);
+	}
+}
@@ -0,0 +1,444 @@
+package org.rdswitchboard.utils.neo4j.sync.output;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.joda.time.DateTime;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.rdswitchboard.utils.neo4j.sync.collections.LongArray;
+import org.rdswitchboard.utils.neo4j.sync.collections.LongArrayAllocator;
+import org.rdswitchboard.utils.neo4j.sync.collections.LongLongMap;
+import org.rdswitchboard.utils.neo4j.sync.normalize.Normalizers;
+
+/**
+ * Writes the augmented target graph as neo4j-admin import CSV files instead of
+ * transactional writes. The target database is only read.
+ * <p>
+ * Nodes created by the sync are spooled to temporary files and get virtual ids above
+ * the highest node id of the target. Once the writer is closed, all nodes and relationships 
+ * of the target together with the augmented ones, including all their properties, are written 
+ * into nodes.csv and relationships.csv. The node id is used as the import id, so every node 
+ * is imported as it is. Keys are not checked by the import, the key constraints written into 
+ * schema.cypher fail on duplicate keys once they are applied after the import.
+ * <p>
+ * Created nodes are found by a hash of their type and key, kept in a map of the shared 
+ * allocator, and every hit is verified against the spooled key, so the writer does not 
+ * hold the keys on the heap.
+ */
+public class CsvWriter implements GraphWriter {
+	public static final String FILE_NODES = "nodes.csv";
+	public static final String FILE_RELATIONSHIPS = "relationships.csv";
+	public static final String FILE_SCHEMA = "schema.cypher";
+
+	// the import has to be called with the same delimiter, which can not be escaped in values
+	public static final String ARRAY_DELIMITER = ";";
+
+	private static final String TYPE_STRING = "string";
+	private static final int SPOOL_RESET = 1000;
+	private static final long INITIAL_CAPACITY = 1024;
+
+	private final GraphDatabaseService graphDb;
+	private final Path folder;
+	private final Collection<Label> types;
+	private final long firstVirtualId;
+	private final LongArrayAllocator allocator;
+
+	// hash of type:key of created nodes -> virtual id, colliding hashes are probed with the next value
+	private final LongLongMap createdNodes;
+	// offsets of the keys and labels of created nodes in the keys spool, in order of virtual ids
+	private LongArray keyOffsets;
+	private long createdCount;
+	private long keysBytes;
+
+	private final Path nodesSpool;
+	private final Path relsSpool;
+	private final Path keysSpool;
+	private final ObjectOutputStream nodesOut;
+	private final DataOutputStream relsOut;
+	private final DataOutputStream keysOut;
+	private RandomAccessFile keysIn;
+
+	private long writtenBytes;
+
+	/**
+	 * @param graphDb target database
+	 * @param folder output folder
+	 * @param types node types with unique keys
+	 * @param firstVirtualId id assigned to the first created node, 
+	 * must be above any node id of the target database
+	 * @param allocator allocator of the created nodes index
+	 */
+	public CsvWriter(GraphDatabaseService graphDb, Path folder, Collection<Label> types, long firstVirtualId, 
+			LongArrayAllocator allocator) throws IOException {
+		this.graphDb = graphDb;
+		this.folder = folder;
+		this.types = types;
+		this.firstVirtualId = firstVirtualId;
+		this.allocator = allocator;
+
+		Files.createDirectories(folder);
+
+		nodesSpool = Files.createTempFile(folder, "nodes_", ".spool");
+		relsSpool = Files.createTempFile(folder, "relationships_", ".spool");
+		keysSpool = Files.createTempFile(folder, "keys_", ".spool");
+
+		nodesOut = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(nodesSpool)));
+		relsOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(relsSpool)));
+		keysOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(keysSpool)));
+
+		createdNodes = new LongLongMap(allocator);
+		keyOffsets = allocator.allocate(INITIAL_CAPACITY, null);
+	}
+
+	@Override
+	public long findNode(Label type, String key) throws IOException {
+		for (long hash = hash(type.name(), key); ; ++hash) {
+			long id = createdNodes.get(hash);
+			if (id == LongLongMap.NO_VALUE)
+				break;
+			if (isCreated(id, type.name(), key))
+				return id;
+		}
+
+		Node node = graphDb.findNode(type, PROPERTY_KEY, key);
+		return null == node ? NO_NODE : node.getId();
+	}
+
+	@Override
+	public long createNode(Node source) throws IOException {
+		Map<String, Object> properties = new HashMap<String, Object>();
+		for (Map.Entry<String, Object> property : source.getAllProperties().entrySet())
+			if (!Normalizers.isShadowProperty(property.getKey()))
+				properties.put(property.getKey(), property.getValue());
+		properties.put(PROPERTY_AUGMENTED_AT, DateTime.now().toString());
+
+		List<String> labels = new ArrayList<String>();
+		for (Label l : source.getLabels())
+			labels.add(l.name());
+		labels.add(LABEL_RESEARCHGRAPH.name());
+
+		String key = (String) properties.get(PROPERTY_KEY);
+		long id = firstVirtualId + createdCount;
+
+		if (createdCount == keyOffsets.length())
+			keyOffsets = allocator.grow(keyOffsets);
+		keyOffsets.set(createdCount++, keysBytes);
+
+		ByteArrayOutputStream record = new ByteArrayOutputStream();
+		DataOutputStream recordOut = new DataOutputStream(record);
+		recordOut.writeUTF(key);
+		recordOut.writeInt(labels.size());
+		for (String label : labels)
+			recordOut.writeUTF(label);
+		record.writeTo(keysOut);
+		keysBytes += record.size();
+
+		for (String label : labels) {
+			long hash = hash(label, key);
+			while (createdNodes.containsKey(hash))
+				++hash;
+			createdNodes.put(hash, id);
+		}
+
+		writtenBytes += SizeEstimator.NODE_SIZE;
+		for (Map.Entry<String, Object> property : properties.entrySet())
+			writtenBytes += SizeEstimator.estimateProperty(property.getKey(), property.getValue());
+
+		nodesOut.writeObject(properties);
+		nodesOut.writeObject(labels);
+		if (createdCount % SPOOL_RESET == 0)
+			nodesOut.reset();
+
+		return id;
+	}
+
+	@Override
+	public void createRelationship(long from, long to, RelationshipType type) throws IOException {
+		relsOut.writeLong(from);
+		relsOut.writeLong(to);
+		relsOut.writeUTF(type.name());
+
+		writtenBytes += SizeEstimator.RELATIONSHIP_SIZE;
+	}
+
+	@Override
+	public long getWrittenBytes() {
+		return writtenBytes;
+	}
+
+	@Override
+	public void close() throws IOException {
+		nodesOut.close();
+		relsOut.close();
+		keysOut.close();
+		if (null != keysIn)
+			keysIn.close();
+		createdNodes.close();
+		keyOffsets.close();
+
+		try (Transaction ignored = graphDb.beginTx()) {
+			System.out.println("Writing " + createdCount + " augmented nodes to " + folder);
+
+			writeNodes(getNodeColumns());
+			writeRelationships(getRelationshipColumns());
+			writeSchema();
+		} finally {
+			Files.deleteIfExists(nodesSpool);
+			Files.deleteIfExists(relsSpool);
+			Files.deleteIfExists(keysSpool);
+		}
+
+		System.out.println("Import with: neo4j-admin import --nodes " + folder.resolve(FILE_NODES) 
+				+ " --relationships " + folder.resolve(FILE_RELATIONSHIPS) 
+				+ " --array-delimiter \"" + ARRAY_DELIMITER + "\" --multiline-fields true");
+	}
+
+	private Map<String, String> getNodeColumns() throws IOException {
+		Map<String, String> columns = new TreeMap<String, String>();
+
+		for (Node node : graphDb.getAllNodes())
+			addColumns(columns, node.getAllProperties());
+
+		try (ObjectInputStream in = openNodesSpool()) {
+			for (long i = 0; i < createdCount; ++i) {
+				addColumns(columns, readProperties(in));
+				in.readObject();
+			}
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Unable to read nodes spool: " + e.getMessage(), e);
+		}
+
+		return columns;
+	}
+
+	private Map<String, String> getRelationshipColumns() {
+		Map<String, String> columns = new TreeMap<String, String>();
+
+		// relationships created by the sync have no properties
+		for (Relationship rel : graphDb.getAllRelationships())
+			addColumns(columns, rel.getAllProperties());
+
+		return columns;
+	}
+
+	private void writeNodes(Map<String, String> columns) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(folder.resolve(FILE_NODES), StandardCharsets.UTF_8)) {
+			writer.write(getHeader(":ID", columns) + ",:LABEL");
+			writer.newLine();
+
+			for (Node node : graphDb.getAllNodes()) {
+				List<String> labels = new ArrayList<String>();
+				for (Label l : node.getLabels())
+					labels.add(l.name());
+
+				writeNode(writer, columns, node.getId(), node.getAllProperties(), labels);
+			}
+
+			try (ObjectInputStream in = openNodesSpool()) {
+				for (long i = 0; i < createdCount; ++i) {
+					Map<String, Object> properties = readProperties(in);
+					@SuppressWarnings("unchecked")
+					List<String> labels = (List<String>) in.readObject();
+
+					writeNode(writer, columns, firstVirtualId + i, properties, labels);
+				}
+			} catch (ClassNotFoundException e) {
+				throw new IOException("Unable to read nodes spool: " + e.getMessage(), e);
+			}
+		}
+	}
+
+	private void writeRelationships(Map<String, String> columns) throws IOException {
+		Map<String, Object> noProperties = new HashMap<String, Object>();
+
+		try (BufferedWriter writer = Files.newBufferedWriter(folder.resolve(FILE_RELATIONSHIPS), StandardCharsets.UTF_8)) {
+			writer.write(getHeader(":START_ID,:END_ID,:TYPE", columns));
+			writer.newLine();
+
+			for (Relationship rel : graphDb.getAllRelationships())
+				writeRelationship(writer, columns, rel.getStartNodeId(), rel.getEndNodeId(), rel.getType().name(), rel.getAllProperties());
+
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(relsSpool)))) {
+				while (true) {
+					long from;
+					try {
+						from = in.readLong();
+					} catch (EOFException e) {
+						break;
+					}
+
+					writeRelationship(writer, columns, from, in.readLong(), in.readUTF(), noProperties);
+				}
+			}
+		}
+	}
+
+	private void writeSchema() throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(folder.resolve(FILE_SCHEMA), StandardCharsets.UTF_8)) {
+			for (Label type : types) {
+				writer.write("CREATE CONSTRAINT ON (n:" + type.name() + ") ASSERT n." + PROPERTY_KEY + " IS UNIQUE;");
+				writer.newLine();
+			}
+		}
+	}
+
+	private static void writeNode(BufferedWriter writer, Map<String, String> columns, long id, 
+			Map<String, Object> properties, List<String> labels) throws IOException {
+		StringBuilder line = new StringBuilder(quote(Long.toString(id)));
+		appendProperties(line, columns, properties);
+		line.append(',').append(quote(format(labels.toArray(new String[labels.size()]))));
+
+		writer.write(line.toString());
+		writer.newLine();
+	}
+
+	private static void writeRelationship(BufferedWriter writer, Map<String, String> columns, long from, long to, String type, 
+			Map<String, Object> properties) throws IOException {
+		StringBuilder line = new StringBuilder(quote(Long.toString(from)));
+		line.append(',').append(quote(Long.toString(to))).append(',').append(quote(type));
+		appendProperties(line, columns, properties);
+
+		writer.write(line.toString());
+		writer.newLine();
+	}
+
+	private static void appendProperties(StringBuilder line, Map<String, String> columns, Map<String, Object> properties) throws IOException {
+		for (String column : columns.keySet()) {
+			line.append(',');
+
+			Object value = properties.get(column);
+			if (null != value)
+				line.append(quote(format(value)));
+		}
+	}
+
+	private static String getHeader(String ids, Map<String, String> columns) {
+		StringBuilder header = new StringBuilder(ids);
+		for (Map.Entry<String, String> column : columns.entrySet()) {
+			header.append(',').append(column.getKey());
+			if (!column.getValue().equals(TYPE_STRING))
+				header.append(':').append(column.getValue());
+		}
+
+		return header.toString();
+	}
+
+	/**
+	 * @return true if the created node with the virtual id has the key and the label
+	 */
+	private boolean isCreated(long id, String label, String key) throws IOException {
+		if (null == keysIn) 
+			keysIn = new RandomAccessFile(keysSpool.toFile(), "r");
+
+		keysOut.flush();
+		keysIn.seek(keyOffsets.get(id - firstVirtualId));
+		if (!keysIn.readUTF().equals(key))
+			return false;
+
+		for (int i = keysIn.readInt(); i > 0; --i)
+			if (keysIn.readUTF().equals(label))
+				return true;
+
+		return false;
+	}
+
+	/**
+	 * @return 64 bit FNV-1a hash of the label and the key
+	 */
+	private static long hash(String label, String key) {
+		long hash = 0xcbf29ce484222325L;
+		for (String s : new String[] { label, ":", key })
+			for (int i = 0; i < s.length(); ++i) {
+				hash ^= s.charAt(i);
+				hash *= 0x100000001b3L;
+			}
+
+		// the map can not store its missing value marker as a key
+		return hash == LongLongMap.NO_VALUE ? 0 : hash;
+	}
+
+	private ObjectInputStream openNodesSpool() throws IOException {
+		return new ObjectInputStream(new BufferedInputStream(Files.newInputStream(nodesSpool)));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> readProperties(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		return (Map<String, Object>) in.readObject();
+	}
+
+	private static void addColumns(Map<String, String> columns, Map<String, Object> properties) {
+		for (Map.Entry<String, Object> property : properties.entrySet()) {
+			String type = getColumnType(property.getValue());
+			String existing = columns.get(property.getKey());
+
+			// properties with values of different types are exported as strings
+			columns.put(property.getKey(), null == existing || existing.equals(type) ? type : TYPE_STRING);
+		}
+	}
+
+	private static String getColumnType(Object value) {
+		if (value instanceof String[])
+			return TYPE_STRING + "[]";
+		if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+			return "long";
+		if (value instanceof Double || value instanceof Float)
+			return "double";
+		if (value instanceof Boolean)
+			return "boolean";
+		if (value instanceof long[] || value instanceof int[] || value instanceof short[] || value instanceof byte[])
+			return "long[]";
+		if (value instanceof double[] || value instanceof float[])
+			return "double[]";
+		if (value instanceof boolean[])
+			return "boolean[]";
+
+		return TYPE_STRING;
+	}
+
+	private static String format(Object value) throws IOException {
+		if (!value.getClass().isArray())
+			return String.valueOf(value);
+
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < Array.getLength(value); ++i) {
+			String element = String.valueOf(Array.get(value, i));
+			// the import would split the element, so the value is refused instead of being changed
+			if (element.contains(ARRAY_DELIMITER))
+				throw new IOException("Array element contains the array delimiter " + ARRAY_DELIMITER + ": " + element);
+
+			if (i > 0)
+				sb.append(ARRAY_DELIMITER);
+			sb.append(element);
+		}
+
+		return sb.toString();
+	}
+
+	private static String quote(String value) {
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+}
@@ -0,0 +1,45 @@
+package org.rdswitchboard.utils.neo4j.sync.output;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+
+/**
+ * Writes augmented nodes and relationships into the target graph.
+ * Nodes of the target are identified by their ids. Writers which do not store nodes 
+ * in the target database assign virtual ids to the nodes they create.
+ */
+public interface GraphWriter extends Closeable {
+	String PROPERTY_KEY = "key";
+	String PROPERTY_AUGMENTED_AT = "augmented_at";
+
+	// label showing the node is added to the neo4j by Research Graph Augment Services
+	Label LABEL_RESEARCHGRAPH = Label.label("researchgraph");
+
+	long NO_NODE = Long.MIN_VALUE;
+
+	/**
+	 * @param type node type label
+	 * @param key node key
+	 * @return id of the target node with the type and key or NO_NODE if there is no such node
+	 */
+	long findNode(Label type, String key) throws IOException;
+
+	/**
+	 * Creates copy of the source node with all its properties and labels
+	 * 
+	 * @param source source node
+	 * @return id of the created node
+	 */
+	long createNode(Node source) throws IOException;
+
+	void createRelationship(long from, long to, RelationshipType type) throws IOException;
+
+	/**
+	 * @return estimated number of bytes of all nodes and relationships written so far
+	 */
+	long getWrittenBytes();
+}
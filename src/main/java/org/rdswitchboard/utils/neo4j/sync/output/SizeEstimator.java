@@ -0,0 +1,35 @@
+package org.rdswitchboard.utils.neo4j.sync.output;
+
+import java.lang.reflect.Array;
+
+/**
+ * Estimates the number of bytes nodes, relationships and properties 
+ * add to the state of a write transaction
+ */
+public class SizeEstimator {
+	public static final long NODE_SIZE = 128;
+	public static final long RELATIONSHIP_SIZE = 96;
+	public static final long PROPERTY_SIZE = 64;
+
+	public static long estimateProperty(String key, Object value) {
+		return PROPERTY_SIZE + key.length() * 2 + estimateValue(value);
+	}
+
+	private static long estimateValue(Object value) {
+		if (value instanceof String)
+			return ((String) value).length() * 2;
+
+		if (value.getClass().isArray()) {
+			long size = 0;
+			int length = Array.getLength(value);
+			for (int i = 0; i < length; ++i) {
+				Object element = Array.get(value, i);
+				size += element instanceof String ? ((String) element).length() * 2 + 16 : 8;
+			}
+
+			return size;
+		}
+
+		return 8;
+	}
+}
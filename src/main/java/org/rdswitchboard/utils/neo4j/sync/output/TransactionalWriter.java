@@ -0,0 +1,74 @@
+package org.rdswitchboard.utils.neo4j.sync.output;
+
+import org.joda.time.DateTime;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.rdswitchboard.utils.neo4j.sync.normalize.Normalizers;
+
+/**
+ * Writes nodes and relationships into the target database within the current transaction
+ */
+public class TransactionalWriter implements GraphWriter {
+	private final GraphDatabaseService graphDb;
+
+	private long writtenBytes;
+
+	public TransactionalWriter(GraphDatabaseService graphDb) {
+		this.graphDb = graphDb;
+	}
+
+	@Override
+	public long findNode(Label type, String key) {
+		Node node = graphDb.findNode(type, PROPERTY_KEY, key);
+		return null == node ? NO_NODE : node.getId();
+	}
+
+	@Override
+	public long createNode(Node source) {
+		Node node = graphDb.createNode();
+
+		writtenBytes += SizeEstimator.NODE_SIZE;
+
+		// copy all node properties except the source lookup shadows
+		for (String p : source.getPropertyKeys()) {
+			if (Normalizers.isShadowProperty(p))
+				continue;
+			
+			Object value = source.getProperty(p);
+			node.setProperty(p, value);
+
+			writtenBytes += SizeEstimator.estimateProperty(p, value);
+		}
+
+		// add a new label for augmented date and time
+		String augmentedAt = DateTime.now().toString();
+		node.setProperty(PROPERTY_AUGMENTED_AT, augmentedAt);
+		writtenBytes += SizeEstimator.estimateProperty(PROPERTY_AUGMENTED_AT, augmentedAt);
+
+		// copy all node labels
+		for (Label l : source.getLabels())
+			node.addLabel(l);
+
+		node.addLabel(LABEL_RESEARCHGRAPH);
+
+		return node.getId();
+	}
+
+	@Override
+	public void createRelationship(long from, long to, RelationshipType type) {
+		graphDb.getNodeById(from).createRelationshipTo(graphDb.getNodeById(to), type);
+
+		writtenBytes += SizeEstimator.RELATIONSHIP_SIZE;
+	}
+
+	@Override
+	public long getWrittenBytes() {
+		return writtenBytes;
+	}
+
+	@Override
+	public void close() {
+	}
+}
@@ -0,0 +1,196 @@
+package org.rdswitchboard.utils.neo4j.sync.s3;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Output stream which uploads the written bytes as parts of a remote object.
+ * <p>
+ * Every filled part buffer is handed to a thread pool, while the writer continues with 
+ * a new buffer. The number of buffers held at once is bounded, so a writer which is 
+ * faster than the network blocks instead of buffering the whole object in memory.
+ * A failed part is retried before the upload is aborted.
+ */
+public class MultipartOutputStream extends OutputStream {
+	// minimal part size accepted by S3 for all parts except the last one
+	public static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+	private static final int MAX_ATTEMPTS = 3;
+
+	private final PartTarget target;
+	private final int partSize;
+	private final ExecutorService executor;
+	private final Semaphore buffers;
+	private final List<Future<?>> parts = new ArrayList<Future<?>>();
+	private final AtomicLong uploaded = new AtomicLong();
+
+	private byte[] buffer;
+	private int position;
+	private int partNumber;
+	private boolean closed;
+
+	/**
+	 * @param target remote object
+	 * @param partSize size of a part in bytes
+	 * @param threads number of parallel uploads
+	 * @param maxBuffers maximum number of part buffers held in memory, including the one being written
+	 */
+	public MultipartOutputStream(PartTarget target, int partSize, int threads, int maxBuffers) throws IOException {
+		this.target = target;
+		this.partSize = partSize;
+		this.executor = Executors.newFixedThreadPool(threads);
+		this.buffers = new Semaphore(Math.max(maxBuffers, 2));
+
+		nextBuffer();
+	}
+
+	public long getUploaded() {
+		return uploaded.get();
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (position == buffer.length)
+			uploadBuffer(false);
+
+		buffer[position++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			if (position == buffer.length)
+				uploadBuffer(false);
+
+			int n = Math.min(len, buffer.length - position);
+			System.arraycopy(b, off, buffer, position, n);
+			position += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+
+		closed = true;
+
+		try {
+			uploadBuffer(true);
+
+			for (Future<?> part : parts)
+				waitPart(part);
+
+			target.complete();
+		} catch (IOException e) {
+			target.abort();
+
+			throw e;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Discards the object if the written data is incomplete
+	 */
+	public void abort() {
+		if (closed)
+			return;
+
+		closed = true;
+
+		executor.shutdownNow();
+		target.abort();
+	}
+
+	private void nextBuffer() throws IOException {
+		try {
+			buffers.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Upload has been interrupted");
+		}
+
+		buffer = new byte[partSize];
+		position = 0;
+	}
+
+	private void uploadBuffer(final boolean last) throws IOException {
+		checkFailures();
+
+		final byte[] data = buffer;
+		final int length = position;
+		final int number = ++partNumber;
+
+		parts.add(executor.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				try {
+					uploadPart(number, data, length, last);
+				} finally {
+					buffers.release();
+				}
+
+				return null;
+			}
+		}));
+
+		buffer = null;
+		if (!last)
+			nextBuffer();
+	}
+
+	private void uploadPart(int number, byte[] data, int length, boolean last) throws IOException {
+		IOException error = null;
+		for (int attempt = 1; attempt <= MAX_ATTEMPTS; ++attempt) {
+			try {
+				target.uploadPart(number, data, length, last);
+
+				System.out.println("Uploaded part " + number + ", total " + uploaded.addAndGet(length) + " bytes");
+
+				return;
+			} catch (IOException e) {
+				System.out.println("Unable to upload part " + number + ", attempt " + attempt + ": " + e.getMessage());
+
+				error = e;
+			}
+		}
+
+		throw error;
+	}
+
+	private void checkFailures() throws IOException {
+		for (Iterator<Future<?>> it = parts.iterator(); it.hasNext(); ) {
+			Future<?> part = it.next();
+			if (part.isDone()) {
+				waitPart(part);
+				it.remove();
+			}
+		}
+	}
+
+	private void waitPart(Future<?> part) throws IOException {
+		try {
+			part.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Upload has been interrupted");
+		} catch (ExecutionException e) {
+			throw new IOException("Unable to upload part: " + e.getCause().getMessage(), e.getCause());
+		}
+	}
+}
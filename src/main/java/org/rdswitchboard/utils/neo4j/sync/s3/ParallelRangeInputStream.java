@@ -0,0 +1,148 @@
+package org.rdswitchboard.utils.neo4j.sync.s3;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Sequential stream of a remote object fetched in parallel byte ranges.
+ * <p>
+ * The object is split into parts which are downloaded by a thread pool ahead of the reader.
+ * Downloaded parts are kept in a reordering queue in the object order, so the reader receives 
+ * the bytes sequentially while at most the given number of parts are held in memory.
+ * A failed part is retried before the stream reports an error.
+ */
+public class ParallelRangeInputStream extends InputStream {
+	private static final int MAX_ATTEMPTS = 3;
+
+	private final RangeSource source;
+	private final long length;
+	private final int partSize;
+	private final int maxParts;
+	private final ExecutorService executor;
+	private final Deque<Future<byte[]>> parts = new ArrayDeque<Future<byte[]>>();
+
+	private long nextPart;
+	private byte[] current;
+	private int position;
+
+	/**
+	 * @param source remote object
+	 * @param partSize size of a range in bytes
+	 * @param threads number of parallel downloads
+	 * @param maxParts maximum number of parts downloaded ahead of the reader
+	 */
+	public ParallelRangeInputStream(RangeSource source, int partSize, int threads, int maxParts) throws IOException {
+		this.source = source;
+		this.length = source.getLength();
+		this.partSize = partSize;
+		this.maxParts = Math.max(maxParts, 1);
+		this.executor = Executors.newFixedThreadPool(threads);
+
+		fetchParts();
+	}
+
+	public long getLength() {
+		return length;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!ensureData())
+			return -1;
+
+		return current[position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+
+		if (!ensureData())
+			return -1;
+
+		int n = Math.min(len, current.length - position);
+		System.arraycopy(current, position, b, off, n);
+		position += n;
+
+		return n;
+	}
+
+	@Override
+	public int available() {
+		return null == current ? 0 : current.length - position;
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+		parts.clear();
+		current = null;
+	}
+
+	private boolean ensureData() throws IOException {
+		while (null == current || position >= current.length) {
+			Future<byte[]> part = parts.poll();
+			if (null == part)
+				return false;
+
+			try {
+				current = part.get();
+				position = 0;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Download has been interrupted");
+			} catch (ExecutionException e) {
+				throw new IOException("Unable to download part: " + e.getCause().getMessage(), e.getCause());
+			}
+
+			fetchParts();
+		}
+
+		return true;
+	}
+
+	private void fetchParts() {
+		while (parts.size() < maxParts && nextPart < length) {
+			final long start = nextPart;
+			final long end = Math.min(start + partSize, length);
+
+			parts.add(executor.submit(new Callable<byte[]>() {
+				@Override
+				public byte[] call() throws Exception {
+					return fetchPart(start, end);
+				}
+			}));
+
+			nextPart = end;
+		}
+	}
+
+	private byte[] fetchPart(long start, long end) throws IOException {
+		IOException error = null;
+		for (int attempt = 1; attempt <= MAX_ATTEMPTS; ++attempt) {
+			try (InputStream is = source.open(start, end)) {
+				byte[] buffer = new byte[(int) (end - start)];
+				IOUtils.readFully(is, buffer);
+
+				return buffer;
+			} catch (IOException e) {
+				System.out.println("Unable to download range " + start + "-" + end + ", attempt " + attempt + ": " + e.getMessage());
+
+				error = e;
+			}
+		}
+
+		throw error;
+	}
+}
@@ -0,0 +1,85 @@
+package org.rdswitchboard.utils.neo4j.sync.s3;
+
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Checksum of the written bytes in the form S3 reports as the ETag.
+ *
+ * An object uploaded in one request has the hex MD5 digest of its bytes, a multipart upload
+ * has the MD5 digest of the concatenated binary part digests followed by "-" and the number of parts.
+ */
+public class PartDigest extends OutputStream {
+	private final long partSize;
+	private final MessageDigest digest;
+	private final MessageDigest partDigests;
+
+	private long partLength;
+	private int parts;
+
+	/**
+	 * @param partSize size of every part but the last one, or 0 for a digest of the whole object
+	 */
+	public PartDigest(long partSize) {
+		this.partSize = partSize;
+		this.digest = getMd5Digest();
+		this.partDigests = getMd5Digest();
+	}
+
+	@Override
+	public void write(int b) {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		while (len > 0) {
+			// a part is finished by the next byte, so an exact multiple of the part size does not add an empty part
+			if (partSize > 0 && partLength == partSize)
+				finishPart();
+
+			int n = partSize > 0 ? (int) Math.min(len, partSize - partLength) : len;
+			digest.update(b, off, n);
+			partLength += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Completes the digest, so it must be called once after all bytes are written
+	 *
+	 * @return hex encoded MD5 digest or composite digest of the parts
+	 */
+	public String getChecksum() {
+		if (partSize <= 0)
+			return toHex(digest.digest());
+
+		// an empty stream is uploaded as a single empty part
+		finishPart();
+		return toHex(partDigests.digest()) + "-" + parts;
+	}
+
+	private void finishPart() {
+		partDigests.update(digest.digest());
+		partLength = 0;
+		++parts;
+	}
+
+	private static MessageDigest getMd5Digest() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("MD5 digest is not available", e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder();
+		for (byte b : bytes)
+			sb.append(String.format("%02x", b));
+
+		return sb.toString();
+	}
+}
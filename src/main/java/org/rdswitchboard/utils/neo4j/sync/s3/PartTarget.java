@@ -0,0 +1,28 @@
+package org.rdswitchboard.utils.neo4j.sync.s3;
+
+import java.io.IOException;
+
+/**
+ * Remote object which is written in independent numbered parts
+ */
+public interface PartTarget {
+	/**
+	 * Uploads one part of the object, may be called concurrently
+	 * 
+	 * @param partNumber part number starting from 1
+	 * @param data part buffer
+	 * @param length number of bytes to upload from the buffer
+	 * @param last true if this is the last part of the object
+	 */
+	void uploadPart(int partNumber, byte[] data, int length, boolean last) throws IOException;
+	
+	/**
+	 * Assembles the object from the uploaded parts
+	 */
+	void complete() throws IOException;
+	
+	/**
+	 * Discards the uploaded parts
+	 */
+	void abort();
+}
@@ -0,0 +1,33 @@
+package org.rdswitchboard.utils.neo4j.sync.s3;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Remote object which can be read in byte ranges
+ */
+public interface RangeSource {
+	/**
+	 * @return object length in bytes
+	 */
+	long getLength() throws IOException;
+	
+	/**
+	 * @return expected checksum in the form computed by {@link PartDigest} or null if it is unknown
+	 */
+	String getChecksum() throws IOException;
+	
+	/**
+	 * @return part size the checksum is computed over or 0 if it is a digest of the whole object
+	 */
+	long getPartSize() throws IOException;
+	
+	/**
+	 * Opens a byte range of the object
+	 * 
+	 * @param start first byte of the range
+	 * @param end byte after the last byte of the range
+	 * @return stream of the range bytes
+	 */
+	InputStream open(long start, long end) throws IOException;
+}
@@ -0,0 +1,98 @@
+package org.rdswitchboard.utils.neo4j.sync.s3;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.util.Md5Utils;
+
+/**
+ * S3 object written with a multipart upload
+ */
+public class S3PartTarget implements PartTarget {
+	private final AmazonS3 s3client;
+	private final String bucket;
+	private final String key;
+	private final String uploadId;
+	private final List<PartETag> etags = new ArrayList<PartETag>();
+	
+	/**
+	 * @param partSize size of every part but the last one, stored with the object so the composite ETag can be verified
+	 */
+	public S3PartTarget(AmazonS3 s3client, String bucket, String key, int partSize) throws IOException {
+		this.s3client = s3client;
+		this.bucket = bucket;
+		this.key = key;
+		
+		ObjectMetadata metadata = new ObjectMetadata();
+		metadata.addUserMetadata(S3RangeSource.METADATA_PART_SIZE, Integer.toString(partSize));
+		
+		try {
+			this.uploadId = s3client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, key, metadata)).getUploadId();
+		} catch (AmazonClientException e) {
+			throw new IOException("Unable to start upload of s3://" + bucket + "/" + key + ": " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void uploadPart(int partNumber, byte[] data, int length, boolean last) throws IOException {
+		try {
+			PartETag etag = s3client.uploadPart(new UploadPartRequest()
+					.withBucketName(bucket)
+					.withKey(key)
+					.withUploadId(uploadId)
+					.withPartNumber(partNumber)
+					.withPartSize(length)
+					.withLastPart(last)
+					.withMD5Digest(Base64.getEncoder().encodeToString(Md5Utils.computeMD5Hash(new ByteArrayInputStream(data, 0, length))))
+					.withInputStream(new ByteArrayInputStream(data, 0, length)))
+					.getPartETag();
+			
+			synchronized (etags) {
+				etags.add(etag);
+			}
+		} catch (AmazonClientException e) {
+			throw new IOException("Unable to upload part " + partNumber + ": " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void complete() throws IOException {
+		synchronized (etags) {
+			// S3 requires the parts to be listed in ascending order
+			Collections.sort(etags, new Comparator<PartETag>() {
+				@Override
+				public int compare(PartETag a, PartETag b) {
+					return Integer.compare(a.getPartNumber(), b.getPartNumber());
+				}
+			});
+			
+			try {
+				s3client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId, etags));
+			} catch (AmazonClientException e) {
+				throw new IOException("Unable to complete upload of s3://" + bucket + "/" + key + ": " + e.getMessage(), e);
+			}
+		}
+	}
+
+	@Override
+	public void abort() {
+		try {
+			s3client.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+		} catch (AmazonClientException e) {
+			System.out.println("Unable to abort upload of s3://" + bucket + "/" + key + ": " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package org.rdswitchboard.utils.neo4j.sync.s3;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+
+/**
+ * S3 object read with ranged GET requests
+ */
+public class S3RangeSource implements RangeSource {
+	// user metadata with the hex MD5 digest of the whole object, which other uploaders may set
+	public static final String METADATA_MD5 = "md5";
+	// user metadata with the part size of a multipart upload, set by S3PartTarget
+	public static final String METADATA_PART_SIZE = "part-size";
+	
+	private final AmazonS3 s3client;
+	private final S3Path path;
+	
+	private ObjectMetadata metadata;
+	
+	public S3RangeSource(AmazonS3 s3client, S3Path path) {
+		this.s3client = s3client;
+		this.path = path;
+	}
+
+	@Override
+	public long getLength() throws IOException {
+		return getMetadata().getContentLength();
+	}
+
+	@Override
+	public String getChecksum() throws IOException {
+		String md5 = getMetadata().getUserMetaDataOf(METADATA_MD5);
+		if (null != md5)
+			return md5;
+		
+		// ETag of an object uploaded in one part is its MD5 digest, 
+		// ETag of a multipart upload is a digest of the part digests, so it can only be checked with the part size
+		String etag = getMetadata().getETag();
+		return null == etag || etag.contains("-") && null == getMetadata().getUserMetaDataOf(METADATA_PART_SIZE) ? null : etag;
+	}
+
+	@Override
+	public long getPartSize() throws IOException {
+		String partSize = getMetadata().getUserMetaDataOf(METADATA_PART_SIZE);
+		String etag = getMetadata().getETag();
+		if (null == partSize || null != getMetadata().getUserMetaDataOf(METADATA_MD5) || null == etag || !etag.contains("-"))
+			return 0;
+		
+		try {
+			return Long.parseLong(partSize);
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid part size of " + path + ": " + partSize, e);
+		}
+	}
+
+	@Override
+	public InputStream open(long start, long end) throws IOException {
+		try {
+			return s3client.getObject(new GetObjectRequest(path.getBucket(), path.getKey())
+					.withRange(start, end - 1))
+					.getObjectContent();
+		} catch (AmazonClientException e) {
+			throw new IOException("Unable to read " + path + " range " + start + "-" + end + ": " + e.getMessage(), e);
+		}
+	}
+	
+	private ObjectMetadata getMetadata() throws IOException {
+		if (null == metadata)
+			try {
+				metadata = s3client.getObjectMetadata(path.getBucket(), path.getKey());
+			} catch (AmazonClientException e) {
+				throw new IOException("Unable to read metadata of " + path + ": " + e.getMessage(), e);
+			}
+		
+		return metadata;
+	}
+}
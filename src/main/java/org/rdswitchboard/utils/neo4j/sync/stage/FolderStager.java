@@ -0,0 +1,169 @@
+package org.rdswitchboard.utils.neo4j.sync.stage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Stages a local database folder into the work folder with the cheapest available method.
+ * <p>
+ * The folder is cloned with copy-on-write reflinks when the file system supports them, 
+ * so no data is copied at all. Otherwise the files are copied by the kernel with 
+ * {@link FileChannel#transferTo} on a thread pool. Files are never hard linked, even for 
+ * a source database: opening a Neo4j store rewrites its neostore and id files and the run 
+ * creates indexes and properties, which would all land in the original database.
+ */
+public class FolderStager {
+	public static final String MODE_AUTO = "auto";
+	public static final String MODE_REFLINK = "reflink";
+	public static final String MODE_COPY = "copy";
+	
+	private static final long REFLINK_TIMEOUT = 10;
+	
+	private final String mode;
+	private final int threads;
+	
+	/**
+	 * @param mode auto to try a reflink clone first, reflink to require it or copy to always copy
+	 * @param threads number of parallel file copies
+	 */
+	public FolderStager(String mode, int threads) {
+		if (!MODE_AUTO.equals(mode) && !MODE_REFLINK.equals(mode) && !MODE_COPY.equals(mode))
+			throw new IllegalArgumentException("Unknown staging mode: " + mode);
+		
+		this.mode = mode;
+		this.threads = threads;
+	}
+	
+	/**
+	 * Stages the folder
+	 * 
+	 * @param src source folder
+	 * @param dest destination folder
+	 */
+	public void stage(Path src, Path dest) throws IOException {
+		long started = System.currentTimeMillis();
+		
+		if (!MODE_COPY.equals(mode)) {
+			if (reflink(src, dest)) {
+				System.out.println("Cloned " + src + " to " + dest + " in " + (System.currentTimeMillis() - started) + " ms");
+				
+				return;
+			}
+			
+			if (MODE_REFLINK.equals(mode))
+				throw new IOException("Unable to clone " + src + ", the file system does not support reflinks");
+		}
+		
+		final List<Path[]> files = new ArrayList<Path[]>();
+		final Path source = src;
+		final Path target = dest;
+		
+		Files.walkFileTree(src, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+				
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				files.add(new Path[] { file, target.resolve(source.relativize(file).toString()) });
+				
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		
+		final AtomicLong copied = new AtomicLong();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (final Path[] file : files) 
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						copied.addAndGet(copyFile(file[0], file[1]));
+						
+						return null;
+					}
+				}));
+			
+			for (Future<Void> future : futures)
+				future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Staging has been interrupted");
+		} catch (ExecutionException e) {
+			throw new IOException("Unable to stage " + src + ": " + e.getCause().getMessage(), e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		System.out.println("Staged " + files.size() + " files from " + src + " to " + dest + ": " 
+				+ copied.get() + " bytes copied in " + (System.currentTimeMillis() - started) + " ms");
+	}
+	
+	private static boolean reflink(Path src, Path dest) throws IOException {
+		// Java has no API for file clones, so GNU cp is used, which fails instead of copying with --reflink=always
+		Files.createDirectories(dest);
+
+		Process process;
+		try {
+			process = new ProcessBuilder("cp", "-R", "--reflink=always", src.toString() + File.separator + ".", dest.toString())
+					.redirectErrorStream(true)
+					.redirectOutput(ProcessBuilder.Redirect.INHERIT)
+					.start();
+		} catch (IOException e) {
+			return false;
+		}
+		
+		try {
+			if (process.waitFor(REFLINK_TIMEOUT, TimeUnit.MINUTES) && process.exitValue() == 0)
+				return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Staging has been interrupted");
+		} finally {
+			process.destroy();
+		}
+		
+		// remove a partial clone before falling back to the copy
+		FileUtils.cleanDirectory(dest.toFile());
+		
+		return false;
+	}
+	
+	private static long copyFile(Path src, Path dest) throws IOException {
+		try (FileChannel in = FileChannel.open(src, StandardOpenOption.READ);
+			 FileChannel out = FileChannel.open(dest, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			long size = in.size();
+			long position = 0;
+			
+			// transferTo may copy less than requested, so it is called until the whole file is copied
+			long n;
+			while (position < size && (n = in.transferTo(position, size - position, out)) > 0)
+				position += n;
+			
+			return position;
+		}
+	}
+}
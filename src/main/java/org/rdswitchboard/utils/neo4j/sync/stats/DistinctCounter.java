@@ -0,0 +1,13 @@
+package org.rdswitchboard.utils.neo4j.sync.stats;
+
+/**
+ * Counts distinct values
+ */
+public interface DistinctCounter {
+	void add(String value);
+	
+	/**
+	 * @return exact or estimated number of distinct values added
+	 */
+	long count();
+}
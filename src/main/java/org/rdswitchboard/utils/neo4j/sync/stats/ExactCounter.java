@@ -0,0 +1,21 @@
+package org.rdswitchboard.utils.neo4j.sync.stats;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Counts distinct values exactly by keeping all of them in memory
+ */
+public class ExactCounter implements DistinctCounter {
+	private final Set<String> values = new HashSet<String>();
+
+	@Override
+	public void add(String value) {
+		values.add(value);
+	}
+
+	@Override
+	public long count() {
+		return values.size();
+	}
+}
@@ -0,0 +1,201 @@
+package org.rdswitchboard.utils.neo4j.sync.stats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+
+/**
+ * Statistics of DOI and ORCID identifiers per node type.
+ * <p>
+ * All numbers are collected by one scan of the database instead of a query per number. 
+ * Distinct identifiers are either counted exactly or estimated with HyperLogLog counters 
+ * of a fixed size. The counts mode only reads the number of nodes per type label from the 
+ * counts store, without scanning the nodes.
+ */
+public class GraphStatistics {
+	public static final String MODE_EXACT = "exact";
+	public static final String MODE_ESTIMATE = "estimate";
+	public static final String MODE_COUNTS = "counts";
+	public static final String MODE_NONE = "none";
+	
+	public static final String PROPERTY_TYPE = "type";
+	public static final String PROPERTY_DOI = "doi";
+	public static final String PROPERTY_ORCID = "orcid";
+	
+	private static final int SAMPLE_SIZE = 10;
+	private static final String NO_TYPE = "(none)";
+	
+	private final String mode;
+	private final Collection<Label> labels;
+	
+	private final Map<String, TypeStatistics> types = new TreeMap<String, TypeStatistics>();
+	private final List<String> doiSample = new ArrayList<String>();
+	private final List<String> orcidSample = new ArrayList<String>();
+	private final Map<String, Long> labelCounts = new TreeMap<String, Long>();
+	
+	private static class TypeStatistics {
+		private long nodes;
+		private long doiNodes;
+		private long orcidNodes;
+		private DistinctCounter doiValues;
+		private DistinctCounter orcidValues;
+	}
+	
+	/**
+	 * @param mode statistics mode: exact, estimate, counts or none
+	 * @param labels labels of node types counted in the counts mode
+	 */
+	public GraphStatistics(String mode, Collection<Label> labels) {
+		if (!mode.equals(MODE_EXACT) && !mode.equals(MODE_ESTIMATE) 
+				&& !mode.equals(MODE_COUNTS) && !mode.equals(MODE_NONE))
+			throw new IllegalArgumentException("Unknown statistics mode: " + mode);
+		
+		this.mode = mode;
+		this.labels = labels;
+	}
+	
+	public String getMode() {
+		return mode;
+	}
+	
+	/**
+	 * Collects statistics of the database in a transaction of its own
+	 * 
+	 * @param graphDb database
+	 */
+	public void collect(GraphDatabaseService graphDb) {
+		if (mode.equals(MODE_NONE))
+			return;
+		
+		try (Transaction ignored = graphDb.beginTx()) {
+			if (mode.equals(MODE_COUNTS)) {
+				for (Label label : labels) 
+					// the planner answers a count of nodes with a single label from the counts store
+					try (Result result = graphDb.execute("MATCH (n:`" + label.name() + "`) RETURN count(n) AS COUNT")) {
+						labelCounts.put(label.name(), (Long) result.next().get("COUNT"));
+					}
+			} else
+				for (Node node : graphDb.getAllNodes()) 
+					addNode(node.getProperty(PROPERTY_TYPE, null), 
+							node.getProperty(PROPERTY_DOI, null), 
+							node.getProperty(PROPERTY_ORCID, null));
+		}
+	}
+	
+	/**
+	 * Adds a node to the statistics
+	 * 
+	 * @param type value of the type property or null
+	 * @param doi value of the doi property or null
+	 * @param orcid value of the orcid property or null
+	 */
+	public void addNode(Object type, Object doi, Object orcid) {
+		String name = null == type ? NO_TYPE : toString(type);
+		TypeStatistics statistics = types.get(name);
+		if (null == statistics) {
+			statistics = new TypeStatistics();
+			statistics.doiValues = createCounter();
+			statistics.orcidValues = createCounter();
+			types.put(name, statistics);
+		}
+		
+		++statistics.nodes;
+		
+		if (null != doi) {
+			String value = toString(doi);
+			
+			++statistics.doiNodes;
+			statistics.doiValues.add(value);
+			if (doiSample.size() < SAMPLE_SIZE)
+				doiSample.add(value);
+		}
+
+		if (null != orcid) {
+			String value = toString(orcid);
+			
+			++statistics.orcidNodes;
+			statistics.orcidValues.add(value);
+			if (orcidSample.size() < SAMPLE_SIZE)
+				orcidSample.add(value);
+		}
+	}
+	
+	/**
+	 * @return printable summary of the statistics
+	 */
+	public String getSummary() {
+		StringBuilder sb = new StringBuilder();
+		
+		if (mode.equals(MODE_NONE))
+			return sb.toString();
+		
+		if (mode.equals(MODE_COUNTS)) {
+			sb.append("Number of nodes/label:\n");
+			for (Map.Entry<String, Long> count : labelCounts.entrySet())
+				appendRow(sb, count.getKey(), count.getValue());
+			
+			return sb.toString();
+		}
+		
+		String distinct = mode.equals(MODE_ESTIMATE) ? "Estimated number" : "Number";
+		
+		sb.append("Number of nodes/type:\n");
+		for (Map.Entry<String, TypeStatistics> type : types.entrySet())
+			appendRow(sb, type.getKey(), type.getValue().nodes);
+
+		sb.append("Number of nodes with DOI/type:\n");
+		for (Map.Entry<String, TypeStatistics> type : types.entrySet())
+			if (type.getValue().doiNodes > 0)
+				appendRow(sb, type.getKey(), type.getValue().doiNodes);
+
+		sb.append(distinct + " of unique DOI/type:\n");
+		for (Map.Entry<String, TypeStatistics> type : types.entrySet())
+			appendRow(sb, type.getKey(), type.getValue().doiValues.count());
+
+		sb.append("Sample of DOI:\n");
+		appendSample(sb, doiSample);
+
+		sb.append("Number of nodes with ORCID/type:\n");
+		for (Map.Entry<String, TypeStatistics> type : types.entrySet())
+			if (type.getValue().orcidNodes > 0)
+				appendRow(sb, type.getKey(), type.getValue().orcidNodes);
+
+		sb.append(distinct + " of unique ORCID/type:\n");
+		for (Map.Entry<String, TypeStatistics> type : types.entrySet())
+			appendRow(sb, type.getKey(), type.getValue().orcidValues.count());
+
+		sb.append("Sample of ORCID:\n");
+		appendSample(sb, orcidSample);
+		
+		return sb.toString();
+	}
+	
+	private DistinctCounter createCounter() {
+		return mode.equals(MODE_ESTIMATE) ? new HyperLogLog() : new ExactCounter();
+	}
+	
+	private static void appendRow(StringBuilder sb, String name, long count) {
+		sb.append(String.format("  %-20s %12d\n", name, count));
+	}
+	
+	private static void appendSample(StringBuilder sb, List<String> sample) {
+		for (String value : sample)
+			sb.append("  ").append(value).append('\n');
+	}
+	
+	private static String toString(Object value) {
+		if (value instanceof Object[])
+			return Arrays.toString((Object[]) value);
+		
+		return value.toString();
+	}
+}
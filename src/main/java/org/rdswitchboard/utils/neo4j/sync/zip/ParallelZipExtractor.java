@@ -0,0 +1,125 @@
+package org.rdswitchboard.utils.neo4j.sync.zip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Extractor of a local zip archive which inflates entries concurrently.
+ * <p>
+ * Entries are read through the central directory, so every entry can be inflated 
+ * independently. The largest entries are started first to balance the threads and 
+ * every output file is preallocated to its uncompressed size before it is written.
+ */
+public class ParallelZipExtractor {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private final int threads;
+	
+	public ParallelZipExtractor(int threads) {
+		this.threads = threads;
+	}
+	
+	/**
+	 * Extracts the archive
+	 * 
+	 * @param zipFile archive to extract
+	 * @param base root folder of the archive which is removed from the entry names
+	 * @param output output folder
+	 */
+	public void extract(Path zipFile, Path base, Path output) throws IOException {
+		try (final ZipFile zip = new ZipFile(zipFile.toFile())) {
+			List<ZipEntry> files = new ArrayList<ZipEntry>();
+			
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				if (entry.isDirectory())
+					Files.createDirectories(getPath(base, output, entry));
+				else
+					files.add(entry);
+			}
+			
+			Collections.sort(files, new Comparator<ZipEntry>() {
+				@Override
+				public int compare(ZipEntry a, ZipEntry b) {
+					return Long.compare(b.getSize(), a.getSize());
+				}
+			});
+			
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			try {
+				List<Future<Void>> futures = new ArrayList<Future<Void>>();
+				for (final ZipEntry entry : files) {
+					final Path file = getPath(base, output, entry);
+					
+					futures.add(executor.submit(new Callable<Void>() {
+						@Override
+						public Void call() throws Exception {
+							extractEntry(zip, entry, file);
+							
+							return null;
+						}
+					}));
+				}
+				
+				for (Future<Void> future : futures)
+					future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Extraction has been interrupted");
+			} catch (ExecutionException e) {
+				throw new IOException("Unable to extract " + zipFile + ": " + e.getCause().getMessage(), e.getCause());
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+	}
+	
+	private static Path getPath(Path base, Path output, ZipEntry entry) {
+		Path file = Paths.get(entry.getName());
+		
+		if (file.toString().startsWith(base.toString()))
+			file = base.relativize(file);
+
+		return Paths.get(output.toString(), file.toString());
+	}
+	
+	private static void extractEntry(ZipFile zip, ZipEntry entry, Path file) throws IOException {
+		Files.createDirectories(file.getParent());
+		
+		try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+			// reserve the file size up front, so the file system can allocate it in one extent
+			if (entry.getSize() > 0)
+				raf.setLength(entry.getSize());
+			
+			long size;
+			try (InputStream is = zip.getInputStream(entry)) {
+				OutputStream os = Channels.newOutputStream(raf.getChannel());
+				size = IOUtils.copyLarge(is, os, new byte[BUFFER_SIZE]);
+			}
+			
+			raf.setLength(size);
+		}
+	}
+}
@@ -0,0 +1,536 @@
+package org.rdswitchboard.utils.neo4j.sync.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Zip archive writer which deflates files in independent blocks on a thread pool.
+ * <p>
+ * Every block except the last one of a file ends with a sync flush and is primed with 
+ * the tail of the previous block, so the compressed blocks concatenate into one 
+ * regular deflate stream and the archive can be read by any zip tool. 
+ * Compressed blocks are written in the archive order while a bounded number of blocks 
+ * is compressed ahead of the writer. Deflated entries are followed by a data descriptor, 
+ * stored entries are checksummed before they are written. Large entries and archives 
+ * use the Zip64 extensions.
+ */
+public class ParallelZipWriter implements Closeable {
+	public static final int MIN_BLOCK_SIZE = 64 * 1024;
+	public static final int STORED = 0;
+	public static final int DEFLATED = 8;
+	
+	private static final int DICTIONARY_SIZE = 32 * 1024;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private static final long ZIP64_MAGICVAL = 0xFFFFFFFFL;
+	private static final int ZIP64_MAGICCOUNT = 0xFFFF;
+	private static final int ZIP64_EXTID = 0x0001;
+	
+	private static final int LOCSIG = 0x04034b50;
+	private static final int EXTSIG = 0x08074b50;
+	private static final int CENSIG = 0x02014b50;
+	private static final int ENDSIG = 0x06054b50;
+	private static final int ZIP64_ENDSIG = 0x06064b50;
+	private static final int ZIP64_LOCSIG = 0x07064b50;
+	
+	private static final int FLAG_DESCRIPTOR = 0x08;
+	private static final int FLAG_UTF8 = 0x800;
+	
+	private static final int VERSION_STORED = 10;
+	private static final int VERSION_DEFLATED = 20;
+	private static final int VERSION_ZIP64 = 45;
+	
+	private final ZipOutput out;
+	private final int level;
+	private final int blockSize;
+	private final int maxPending;
+	private final ExecutorService executor;
+	private final Deque<Pending> pending = new ArrayDeque<Pending>();
+	private final List<Entry> entries = new ArrayList<Entry>();
+	
+	private boolean closed;
+	
+	/**
+	 * @param out archive stream, closed with the writer
+	 * @param level deflate compression level, 0 stores all files
+	 * @param threads number of compression threads
+	 * @param blockSize size of an independently compressed block in bytes
+	 */
+	public ParallelZipWriter(OutputStream out, int level, int threads, int blockSize) {
+		if (level < 0 || level > 9)
+			throw new IllegalArgumentException("Compression level must be between 0 and 9");
+		if (blockSize < MIN_BLOCK_SIZE)
+			throw new IllegalArgumentException("Block size must be at least " + MIN_BLOCK_SIZE + " bytes");
+
+		this.out = new ZipOutput(out);
+		this.level = level;
+		this.blockSize = blockSize;
+		this.maxPending = threads * 4;
+		this.executor = Executors.newFixedThreadPool(threads);
+	}
+	
+	/**
+	 * Adds a directory entry
+	 * 
+	 * @param name entry name ending with /
+	 * @param modified modification time in milliseconds
+	 */
+	public void addDirectory(String name, long modified) throws IOException {
+		Entry entry = new Entry(name, STORED, modified);
+		
+		submit(new Header(entry));
+	}
+	
+	/**
+	 * Adds a file entry
+	 * 
+	 * @param name entry name
+	 * @param file file to archive
+	 * @param store true if the file should be stored without compression
+	 */
+	public void addFile(String name, Path file, boolean store) throws IOException {
+		long modified = Files.getLastModifiedTime(file).toMillis();
+		
+		if (store || level == 0)
+			addStored(name, file, modified);
+		else
+			addDeflated(name, file, modified);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		
+		closed = true;
+		
+		try {
+			while (!pending.isEmpty())
+				pending.poll().write();
+		
+			writeCentralDirectory();
+			
+			out.close();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	private void addStored(String name, Path file, long modified) throws IOException {
+		Entry entry = new Entry(name, STORED, modified);
+		
+		// stored entries can not have a data descriptor, so the checksum is computed ahead
+		CRC32 crc = new CRC32();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int n;
+		try (InputStream is = Files.newInputStream(file)) {
+			while ((n = is.read(buffer)) > 0) {
+				crc.update(buffer, 0, n);
+				entry.size += n;
+			}
+		}
+		
+		entry.csize = entry.size;
+		entry.crc = crc.getValue();
+		
+		submit(new Header(entry));
+		submit(new StoredData(entry, file));
+	}
+	
+	private void addDeflated(String name, Path file, long modified) throws IOException {
+		Entry entry = new Entry(name, DEFLATED, modified);
+		
+		submit(new Header(entry));
+
+		CRC32 crc = new CRC32();
+		try (InputStream is = Files.newInputStream(file)) {
+			byte[] dictionary = null;
+			byte[] block = new byte[blockSize];
+			int n = IOUtils.read(is, block);
+			
+			while (true) {
+				// read ahead to find out if the current block is the last one
+				byte[] next = n < blockSize ? null : new byte[blockSize];
+				int m = null == next ? 0 : IOUtils.read(is, next);
+				boolean last = m == 0;
+				
+				crc.update(block, 0, n);
+				entry.size += n;
+				
+				submit(new Block(entry, executor.submit(new Compressor(block, n, dictionary, last))));
+				
+				if (last)
+					break;
+				
+				dictionary = Arrays.copyOfRange(block, n - DICTIONARY_SIZE, n);
+				block = next;
+				n = m;
+			}
+		}
+		
+		entry.crc = crc.getValue();
+		
+		submit(new Descriptor(entry));
+	}
+	
+	private void submit(Pending item) throws IOException {
+		if (closed)
+			throw new IOException("The archive has been closed");
+
+		pending.add(item);
+		
+		while (pending.size() > maxPending)
+			pending.poll().write();
+	}
+	
+	private void writeCentralDirectory() throws IOException {
+		long offset = out.getCount();
+		for (Entry entry : entries)
+			writeCentralHeader(entry);
+		
+		long size = out.getCount() - offset;
+		int count = entries.size();
+		
+		if (count >= ZIP64_MAGICCOUNT || offset >= ZIP64_MAGICVAL || size >= ZIP64_MAGICVAL) {
+			long end64 = out.getCount();
+			
+			out.writeInt(ZIP64_ENDSIG);
+			out.writeLong(44);
+			out.writeShort(VERSION_ZIP64);
+			out.writeShort(VERSION_ZIP64);
+			out.writeInt(0);
+			out.writeInt(0);
+			out.writeLong(count);
+			out.writeLong(count);
+			out.writeLong(size);
+			out.writeLong(offset);
+			
+			out.writeInt(ZIP64_LOCSIG);
+			out.writeInt(0);
+			out.writeLong(end64);
+			out.writeInt(1);
+		}
+		
+		out.writeInt(ENDSIG);
+		out.writeShort(0);
+		out.writeShort(0);
+		out.writeShort(Math.min(count, ZIP64_MAGICCOUNT));
+		out.writeShort(Math.min(count, ZIP64_MAGICCOUNT));
+		out.writeInt(Math.min(size, ZIP64_MAGICVAL));
+		out.writeInt(Math.min(offset, ZIP64_MAGICVAL));
+		out.writeShort(0);
+	}
+	
+	private void writeCentralHeader(Entry entry) throws IOException {
+		boolean zip64Size = entry.size >= ZIP64_MAGICVAL;
+		boolean zip64Csize = entry.csize >= ZIP64_MAGICVAL;
+		boolean zip64Offset = entry.offset >= ZIP64_MAGICVAL;
+		int extra = (zip64Size ? 8 : 0) + (zip64Csize ? 8 : 0) + (zip64Offset ? 8 : 0);
+		
+		out.writeInt(CENSIG);
+		out.writeShort(extra > 0 ? VERSION_ZIP64 : entry.getVersion());
+		out.writeShort(extra > 0 ? VERSION_ZIP64 : entry.getVersion());
+		out.writeShort(entry.flag);
+		out.writeShort(entry.method);
+		out.writeInt(entry.time);
+		out.writeInt(entry.crc);
+		out.writeInt(zip64Csize ? ZIP64_MAGICVAL : entry.csize);
+		out.writeInt(zip64Size ? ZIP64_MAGICVAL : entry.size);
+		out.writeShort(entry.name.length);
+		out.writeShort(extra > 0 ? extra + 4 : 0);
+		out.writeShort(0);
+		out.writeShort(0);
+		out.writeShort(0);
+		out.writeInt(0);
+		out.writeInt(zip64Offset ? ZIP64_MAGICVAL : entry.offset);
+		out.write(entry.name);
+		
+		if (extra > 0) {
+			out.writeShort(ZIP64_EXTID);
+			out.writeShort(extra);
+			if (zip64Size)
+				out.writeLong(entry.size);
+			if (zip64Csize)
+				out.writeLong(entry.csize);
+			if (zip64Offset)
+				out.writeLong(entry.offset);
+		}
+	}
+
+	private static long toDosTime(long millis) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(millis);
+		
+		int year = calendar.get(Calendar.YEAR);
+		if (year < 1980)
+			return (1 << 21) | (1 << 16);
+		
+		return (year - 1980) << 25 
+				| (calendar.get(Calendar.MONTH) + 1) << 21 
+				| calendar.get(Calendar.DAY_OF_MONTH) << 16 
+				| calendar.get(Calendar.HOUR_OF_DAY) << 11 
+				| calendar.get(Calendar.MINUTE) << 5 
+				| calendar.get(Calendar.SECOND) >> 1;
+	}
+	
+	private static class Entry {
+		private final byte[] name;
+		private final int method;
+		private final int flag;
+		private final long time;
+		
+		private long crc;
+		private long size;
+		private long csize;
+		private long offset;
+		
+		public Entry(String name, int method, long modified) {
+			this.name = name.getBytes(StandardCharsets.UTF_8);
+			this.method = method;
+			this.flag = FLAG_UTF8 | (method == DEFLATED ? FLAG_DESCRIPTOR : 0);
+			this.time = toDosTime(modified);
+		}
+		
+		public int getVersion() {
+			return method == DEFLATED ? VERSION_DEFLATED : VERSION_STORED;
+		}
+	}
+	
+	/**
+	 * Part of the archive which is written in the archive order
+	 */
+	private interface Pending {
+		void write() throws IOException;
+	}
+	
+	private class Header implements Pending {
+		private final Entry entry;
+		
+		public Header(Entry entry) {
+			this.entry = entry;
+		}
+
+		@Override
+		public void write() throws IOException {
+			entry.offset = out.getCount();
+			entries.add(entry);
+
+			// sizes of a deflated entry are unknown yet and are written in the data descriptor
+			boolean zip64 = entry.method == STORED && entry.size >= ZIP64_MAGICVAL;
+			
+			out.writeInt(LOCSIG);
+			out.writeShort(zip64 ? VERSION_ZIP64 : entry.getVersion());
+			out.writeShort(entry.flag);
+			out.writeShort(entry.method);
+			out.writeInt(entry.time);
+			if (entry.method == DEFLATED) {
+				out.writeInt(0);
+				out.writeInt(0);
+				out.writeInt(0);
+			} else {
+				out.writeInt(entry.crc);
+				out.writeInt(zip64 ? ZIP64_MAGICVAL : entry.csize);
+				out.writeInt(zip64 ? ZIP64_MAGICVAL : entry.size);
+			}
+			out.writeShort(entry.name.length);
+			out.writeShort(zip64 ? 20 : 0);
+			out.write(entry.name);
+			
+			if (zip64) {
+				out.writeShort(ZIP64_EXTID);
+				out.writeShort(16);
+				out.writeLong(entry.size);
+				out.writeLong(entry.csize);
+			}
+		}
+	}
+	
+	private class Block implements Pending {
+		private final Entry entry;
+		private final Future<byte[]> data;
+		
+		public Block(Entry entry, Future<byte[]> data) {
+			this.entry = entry;
+			this.data = data;
+		}
+
+		@Override
+		public void write() throws IOException {
+			byte[] bytes;
+			try {
+				bytes = data.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Compression has been interrupted");
+			} catch (ExecutionException e) {
+				throw new IOException("Unable to compress block: " + e.getCause().getMessage(), e.getCause());
+			}
+			
+			out.write(bytes);
+			entry.csize += bytes.length;
+		}
+	}
+	
+	private class StoredData implements Pending {
+		private final Entry entry;
+		private final Path file;
+		
+		public StoredData(Entry entry, Path file) {
+			this.entry = entry;
+			this.file = file;
+		}
+
+		@Override
+		public void write() throws IOException {
+			long copied;
+			try (InputStream is = Files.newInputStream(file)) {
+				copied = IOUtils.copyLarge(is, out, new byte[BUFFER_SIZE]);
+			}
+			
+			if (copied != entry.size)
+				throw new IOException("The file " + file + " has been modified while archiving");
+		}
+	}
+	
+	private class Descriptor implements Pending {
+		private final Entry entry;
+		
+		public Descriptor(Entry entry) {
+			this.entry = entry;
+		}
+
+		@Override
+		public void write() throws IOException {
+			out.writeInt(EXTSIG);
+			out.writeInt(entry.crc);
+			if (entry.size >= ZIP64_MAGICVAL || entry.csize >= ZIP64_MAGICVAL) {
+				out.writeLong(entry.csize);
+				out.writeLong(entry.size);
+			} else {
+				out.writeInt(entry.csize);
+				out.writeInt(entry.size);
+			}
+		}
+	}
+	
+	private class Compressor implements Callable<byte[]> {
+		private final byte[] data;
+		private final int length;
+		private final byte[] dictionary;
+		private final boolean last;
+		
+		public Compressor(byte[] data, int length, byte[] dictionary, boolean last) {
+			this.data = data;
+			this.length = length;
+			this.dictionary = dictionary;
+			this.last = last;
+		}
+
+		@Override
+		public byte[] call() {
+			Deflater deflater = new Deflater(level, true);
+			try {
+				if (null != dictionary)
+					deflater.setDictionary(dictionary);
+				deflater.setInput(data, 0, length);
+				
+				ByteArrayOutputStream bos = new ByteArrayOutputStream(length / 2 + 64);
+				byte[] buffer = new byte[BUFFER_SIZE];
+				int n;
+				
+				if (last) {
+					deflater.finish();
+					while (!deflater.finished()) {
+						n = deflater.deflate(buffer);
+						bos.write(buffer, 0, n);
+					}
+				} else {
+					// sync flush ends the block on a byte boundary without closing the deflate stream
+					do {
+						n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+						bos.write(buffer, 0, n);
+					} while (n == buffer.length);
+				}
+				
+				return bos.toByteArray();
+			} finally {
+				deflater.end();
+			}
+		}
+	}
+	
+	/**
+	 * Little endian output which counts the written bytes
+	 */
+	private static class ZipOutput extends OutputStream {
+		private final OutputStream out;
+		private long count;
+		
+		public ZipOutput(OutputStream out) {
+			this.out = out;
+		}
+		
+		public long getCount() {
+			return count;
+		}
+		
+		public void writeShort(int v) throws IOException {
+			write(v & 0xff);
+			write((v >>> 8) & 0xff);
+		}
+		
+		public void writeInt(long v) throws IOException {
+			writeShort((int) (v & 0xffff));
+			writeShort((int) ((v >>> 16) & 0xffff));
+		}
+		
+		public void writeLong(long v) throws IOException {
+			writeInt(v & ZIP64_MAGICVAL);
+			writeInt(v >>> 32);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			++count;
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+		
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+		
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package org.rdswitchboard.utils.neo4j.sync.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.junit.Test;
+import org.rdswitchboard.utils.neo4j.sync.App;
+import org.rdswitchboard.utils.neo4j.sync.App.Job;
+import org.rdswitchboard.utils.neo4j.sync.Configuration;
+import org.rdswitchboard.utils.neo4j.sync.Process;
+import org.rdswitchboard.utils.neo4j.sync.SourceGraph;
+import org.rdswitchboard.utils.neo4j.sync.generator.GraphGenerator;
+
+public class AppTest {
+	private static final String DROP = "neo4j-augmented-2018-05-04";
+	private static final Set<String> KEYS = new HashSet<String>(Arrays.asList("doi", "orcid"));
+
+	@Test
+	public void testJobNames() {
+		Properties properties = new Properties();
+		properties.setProperty(Configuration.PROPERTY_SYNC_JOURNAL, "/var/sync/sync.journal");
+		properties.setProperty(Configuration.PROPERTY_SYNC_REPORT, "/var/sync.d/report");
+		properties.setProperty(Configuration.PROPERTY_SYNC_OUTPUT_FOLDER, "/var/import");
+
+		List<Job> jobs = App.createJobs(Arrays.asList("s3://bucket/clients/orcid.zip", "s3://bucket/archive/orcid.zip", "data/dryad/"),
+				DROP, null, properties);
+
+		assertEquals("Drop should be named after the target", DROP + "-orcid", jobs.get(0).getDrop());
+		assertEquals("Targets with the same name should be numbered", DROP + "-orcid-2", jobs.get(1).getDrop());
+		assertEquals("Folder target should be named after the folder", DROP + "-dryad", jobs.get(2).getDrop());
+
+		assertEquals("Journal should get the target name before the extension",
+				"/var/sync/sync-orcid.journal", jobs.get(0).getProperties().getProperty(Configuration.PROPERTY_SYNC_JOURNAL));
+		assertEquals("Report should get the target name",
+				"/var/sync.d/report-orcid-2", jobs.get(1).getProperties().getProperty(Configuration.PROPERTY_SYNC_REPORT));
+		assertEquals("Local target should be synthesized in place", Paths.get("data/dryad/"), jobs.get(2).getTargetDb());
+
+		Set<String> outputFolders = new HashSet<String>();
+		for (Job job : jobs)
+			outputFolders.add(job.getProperties().getProperty(Configuration.PROPERTY_SYNC_OUTPUT_FOLDER));
+		assertEquals("Every target should write CSV files into its own folder", jobs.size(), outputFolders.size());
+		assertTrue("Output folders should be inside the configured folder",
+				Paths.get(jobs.get(0).getProperties().getProperty(Configuration.PROPERTY_SYNC_OUTPUT_FOLDER)).startsWith(Paths.get("/var/import")));
+		assertEquals("Shared configuration should not be changed", "/var/sync/sync.journal", properties.getProperty(Configuration.PROPERTY_SYNC_JOURNAL));
+	}
+
+	@Test
+	public void testSingleJob() {
+		Properties properties = new Properties();
+		properties.setProperty(Configuration.PROPERTY_SYNC_REPORT, "report.json");
+
+		List<Job> jobs = App.createJobs(Collections.singletonList("data/orcid"), DROP, null, properties);
+
+		assertEquals("Single target should keep the drop name", DROP, jobs.get(0).getDrop());
+		assertEquals("Local target should be synthesized in place", Paths.get("data/orcid"), jobs.get(0).getTargetDb());
+		assertEquals("Single target should keep the report name", "report.json", jobs.get(0).getProperties().getProperty(Configuration.PROPERTY_SYNC_REPORT));
+	}
+
+	@Test
+	public void testFailedTarget() throws Exception {
+		Path folder = Files.createTempDirectory("app_");
+		Path source = folder.resolve("nexus");
+		GraphGenerator.generate(new GraphGenerator("nexus", 0.1, 0.1, 1, 0, 2.5, 1), source, GraphGenerator.OUTPUT_NEO4J);
+		GraphGenerator.generate(new GraphGenerator("client", 0.05, 0.1, 0.5, 0, 2.5, 2), folder.resolve("client"), GraphGenerator.OUTPUT_NEO4J);
+		GraphGenerator.generate(new GraphGenerator("other", 0.05, 0.1, 0.5, 0, 2.5, 3), folder.resolve("other"), GraphGenerator.OUTPUT_NEO4J);
+
+		// a file can not be opened as a database instance folder
+		Files.createFile(folder.resolve("broken"));
+
+		Properties properties = new Properties();
+		properties.setProperty(Configuration.PROPERTY_SYNC_REPORT, folder.resolve("report.json").toString());
+		properties.setProperty(Configuration.PROPERTY_SYNC_JMX, "false");
+		properties.setProperty(Configuration.PROPERTY_SYNC_PROGRESS, "0");
+
+		List<Job> jobs = App.createJobs(Arrays.asList(folder.resolve("client").toString(), folder.resolve("broken").toString(),
+				folder.resolve("other").toString()), DROP, null, properties);
+
+		try (SourceGraph sourceGraph = new SourceGraph(source)) {
+			for (Job job : jobs)
+				job.setProcess(new Process(Collections.singletonList(sourceGraph), job.getTargetDb(), KEYS, 2, job.getProperties()));
+
+			App.syncTargets(jobs, null, 2);
+			fail("Failed target should fail the run");
+		} catch (Exception e) {
+			assertEquals("Only the failed target should be reported", "Unable to sync 1 of 3 targets", e.getMessage());
+		}
+
+		assertTrue("Other targets should be synthesized", ProcessTest.getSignature(folder.resolve("client")).contains("augment"));
+		assertTrue("Other targets should be synthesized", ProcessTest.getSignature(folder.resolve("other")).contains("augment"));
+		assertTrue("Every target should write its own report", Files.exists(folder.resolve("report-client.json")));
+		assertTrue("Every target should write its own report", Files.exists(folder.resolve("report-other.json")));
+		assertFalse("Shared report should not be written", Files.exists(folder.resolve("report.json")));
+	}
+}
@@ -0,0 +1,105 @@
+package org.rdswitchboard.utils.neo4j.sync.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.rdswitchboard.utils.neo4j.sync.commit.AdaptivePolicy;
+import org.rdswitchboard.utils.neo4j.sync.commit.CommitPolicy;
+import org.rdswitchboard.utils.neo4j.sync.commit.ElapsedTimePolicy;
+import org.rdswitchboard.utils.neo4j.sync.commit.OperationCountPolicy;
+import org.rdswitchboard.utils.neo4j.sync.commit.TransactionSizePolicy;
+
+/**
+ * Commit policies are driven with simulated elapsed times and commit latencies
+ */
+public class CommitPolicyTest {
+	private static final long MAX_BYTES = 1L << 30;
+
+	@Test
+	public void testOperationCount() {
+		CommitPolicy policy = new OperationCountPolicy(100);
+
+		assertFalse("Transaction at the limit should not be committed", policy.shouldCommit(100, MAX_BYTES, Long.MAX_VALUE));
+		assertTrue("Transaction over the limit should be committed", policy.shouldCommit(101, 0, 0));
+	}
+
+	@Test
+	public void testTransactionSize() {
+		CommitPolicy policy = new TransactionSizePolicy(1000);
+
+		assertFalse("Transaction at the limit should not be committed", policy.shouldCommit(Long.MAX_VALUE, 1000, Long.MAX_VALUE));
+		assertTrue("Transaction over the limit should be committed", policy.shouldCommit(1, 1001, 0));
+	}
+
+	@Test
+	public void testElapsedTime() {
+		CommitPolicy policy = new ElapsedTimePolicy(1000);
+
+		assertFalse("Young transaction should not be committed", policy.shouldCommit(Long.MAX_VALUE, MAX_BYTES, 1000));
+		assertFalse("Empty transaction should not be committed", policy.shouldCommit(0, 0, 1001));
+		assertTrue("Old transaction should be committed", policy.shouldCommit(1, 0, 1001));
+	}
+
+	@Test
+	public void testAdaptiveDirection() {
+		AdaptivePolicy policy = new AdaptivePolicy(1000, MAX_BYTES);
+
+		// a fixed commit latency makes larger transactions faster
+		commit(policy, 1000, 1000);
+		assertEquals("Batch should grow at first", 1500, policy.getOperations());
+		commit(policy, 1500, 1000);
+		assertEquals("Batch should keep growing while throughput improves", 2250, policy.getOperations());
+
+		// a commit which takes much longer drops the throughput
+		commit(policy, 2250, 100000);
+		assertEquals("Batch should shrink once throughput drops", 1500, policy.getOperations());
+		commit(policy, 1500, 1000);
+		assertEquals("Batch should keep shrinking while throughput improves", 1000, policy.getOperations());
+	}
+
+	@Test
+	public void testAdaptiveBounds() {
+		AdaptivePolicy policy = new AdaptivePolicy(1000, MAX_BYTES);
+
+		// only the commit latency counts, so every larger batch is faster
+		for (int i = 0; i < 100; ++i)
+			commit(policy, policy.getOperations(), 1000);
+		assertEquals("Batch should not grow over 100 times the initial size", 100000, policy.getOperations());
+
+		// transactions over the byte limit shrink the batch regardless of throughput
+		for (int i = 0; i < 100; ++i)
+			policy.committed(policy.getOperations(), MAX_BYTES + 1, 0, 1);
+		assertEquals("Batch should not shrink under a tenth of the initial size", 100, policy.getOperations());
+
+		assertTrue("Byte limit should commit the transaction", policy.shouldCommit(1, MAX_BYTES + 1, 0));
+		assertFalse("Transaction under both limits should not be committed", policy.shouldCommit(100, MAX_BYTES, 0));
+	}
+
+	@Test
+	public void testAdaptiveConvergence() {
+		AdaptivePolicy policy = new AdaptivePolicy(100, MAX_BYTES);
+
+		// 1 ms per operation, 2 s per commit and a latency growing with the square of the transaction size,
+		// which makes the best batch sqrt(2000 * 20000) = 6325 operations
+		long min = Long.MAX_VALUE;
+		long max = 0;
+		for (int i = 0; i < 200; ++i) {
+			long operations = policy.getOperations();
+			policy.committed(operations, 0, operations, 2000 + operations * operations / 20000);
+
+			if (i >= 100) {
+				min = Math.min(min, policy.getOperations());
+				max = Math.max(max, policy.getOperations());
+			}
+		}
+
+		assertTrue("Batch should settle around the best size, but went down to " + min, min >= 6325 / 3);
+		assertTrue("Batch should settle around the best size, but went up to " + max, max <= 6325 * 3);
+	}
+
+	private static void commit(AdaptivePolicy policy, long operations, long latency) {
+		policy.committed(operations, 0, operations, latency);
+	}
+}
@@ -0,0 +1,204 @@
+package org.rdswitchboard.utils.neo4j.sync.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.rdswitchboard.utils.neo4j.sync.collections.LongArrayAllocator;
+import org.rdswitchboard.utils.neo4j.sync.output.CsvWriter;
+import org.rdswitchboard.utils.neo4j.sync.output.GraphWriter;
+
+public class CsvWriterTest {
+	private static final Label PUBLICATION = Label.label("publication");
+	private static final Label RESEARCHER = Label.label("researcher");
+	private static final Label NEXUS = Label.label("nexus");
+	private static final RelationshipType RELATED_TO = RelationshipType.withName("relatedTo");
+
+	private Path folder;
+	private GraphDatabaseService target;
+	private GraphDatabaseService source;
+
+	private long publicationId;
+	private long researcherId;
+	private long sourceId;
+
+	@Before
+	public void setUp() throws IOException {
+		folder = Files.createTempDirectory("csv_writer_");
+		target = new GraphDatabaseFactory().newEmbeddedDatabase(folder.resolve("target").toFile());
+		source = new GraphDatabaseFactory().newEmbeddedDatabase(folder.resolve("source").toFile());
+
+		try (Transaction tx = target.beginTx()) {
+			Node publication = target.createNode(PUBLICATION);
+			publication.setProperty("key", "client/1");
+			publication.setProperty("title", "A \"quoted\", multi\nline title");
+			publication.setProperty("doi", new String[] { "10.1/a", "10.1/b" });
+			publication.setProperty("year", 2001L);
+
+			// keys are only unique within a type
+			Node researcher = target.createNode(RESEARCHER);
+			researcher.setProperty("key", "client/1");
+
+			Relationship rel = publication.createRelationshipTo(researcher, RELATED_TO);
+			rel.setProperty("weight", 0.5);
+			rel.setProperty("note", "first, second");
+
+			publicationId = publication.getId();
+			researcherId = researcher.getId();
+			tx.success();
+		}
+
+		try (Transaction tx = source.beginTx()) {
+			Node node = source.createNode(PUBLICATION, NEXUS);
+			node.setProperty("key", "nexus/1");
+			node.setProperty("type", "publication");
+			node.setProperty("title", "Nexus");
+			node.setProperty("normalized_doi", "10.1/n");
+
+			sourceId = node.getId();
+			tx.success();
+		}
+	}
+
+	@After
+	public void tearDown() {
+		target.shutdown();
+		source.shutdown();
+	}
+
+	@Test
+	public void testCsv() throws IOException {
+		Path output = folder.resolve("import");
+		CsvWriter writer = createWriter(output);
+
+		long created;
+		try (Transaction ignored = target.beginTx(); Transaction ignored2 = source.beginTx()) {
+			created = writer.createNode(source.getNodeById(sourceId));
+
+			assertTrue("Created node should get a virtual id", created > researcherId);
+			assertEquals("Created node should be found by any of its labels", created, writer.findNode(NEXUS, "nexus/1"));
+			assertEquals("Created node should be found by its type", created, writer.findNode(PUBLICATION, "nexus/1"));
+			assertEquals("Created node should not be found by other types", GraphWriter.NO_NODE, writer.findNode(RESEARCHER, "nexus/1"));
+			assertEquals("Target node should be found", publicationId, writer.findNode(PUBLICATION, "client/1"));
+			assertEquals("Target node should be found by its own type", researcherId, writer.findNode(RESEARCHER, "client/1"));
+
+			writer.createRelationship(publicationId, created, RELATED_TO);
+		}
+		writer.close();
+
+		List<List<String>> nodes = readCsv(output.resolve(CsvWriter.FILE_NODES));
+		assertEquals("Nodes header should list typed columns",
+				Arrays.asList(":ID", "augmented_at", "doi:string[]", "key", "title", "type", "year:long", ":LABEL"), nodes.get(0));
+		assertEquals("All nodes should be written", 4, nodes.size());
+
+		Map<String, List<String>> byId = new HashMap<String, List<String>>();
+		for (List<String> row : nodes.subList(1, nodes.size()))
+			byId.put(row.get(0), row);
+
+		List<String> publication = byId.get(Long.toString(publicationId));
+		assertEquals("Quotes and new lines should survive", "A \"quoted\", multi\nline title", publication.get(4));
+		assertEquals("Arrays should be joined", "10.1/a;10.1/b", publication.get(2));
+		assertEquals("Numbers should be written", "2001", publication.get(6));
+
+		List<String> researcher = byId.get(Long.toString(researcherId));
+		assertEquals("Nodes with the same key should keep their own ids", "client/1", researcher.get(3));
+		assertEquals("Missing properties should be empty", "", researcher.get(4));
+
+		List<String> augmented = byId.get(Long.toString(created));
+		assertEquals("Created node should keep its key", "nexus/1", augmented.get(3));
+		assertNotEquals("Created node should be marked", "", augmented.get(1));
+		assertEquals("Created node should get the researchgraph label", "publication;nexus;researchgraph", augmented.get(7));
+		assertEquals("Shadow properties should not be written", 8, augmented.size());
+
+		List<List<String>> rels = readCsv(output.resolve(CsvWriter.FILE_RELATIONSHIPS));
+		assertEquals("Relationships header should list property columns",
+				Arrays.asList(":START_ID", ":END_ID", ":TYPE", "note", "weight:double"), rels.get(0));
+		assertEquals("Relationship properties should be written",
+				Arrays.asList(Long.toString(publicationId), Long.toString(researcherId), "relatedTo", "first, second", "0.5"), rels.get(1));
+		assertEquals("Created relationships should be written",
+				Arrays.asList(Long.toString(publicationId), Long.toString(created), "relatedTo", "", ""), rels.get(2));
+		assertEquals("All relationships should be written", 3, rels.size());
+	}
+
+	@Test
+	public void testArrayDelimiter() throws IOException {
+		try (Transaction tx = target.beginTx()) {
+			target.getNodeById(publicationId).setProperty("doi", new String[] { "10.1/a;b" });
+			tx.success();
+		}
+
+		CsvWriter writer = createWriter(folder.resolve("import"));
+		try {
+			writer.close();
+			fail("An array element with the delimiter should not be written");
+		} catch (IOException e) {
+			assertTrue("Error should name the value", e.getMessage().contains("10.1/a;b"));
+		}
+	}
+
+	private CsvWriter createWriter(Path output) throws IOException {
+		long highId;
+		try (Transaction ignored = target.beginTx()) {
+			highId = Math.max(publicationId, researcherId) + 1;
+		}
+
+		return new CsvWriter(target, output, Arrays.asList(PUBLICATION, RESEARCHER), highId,
+				new LongArrayAllocator(1 << 20, output));
+	}
+
+	private static List<List<String>> readCsv(Path file) throws IOException {
+		String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+
+		List<List<String>> rows = new ArrayList<List<String>>();
+		List<String> row = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+
+		for (int i = 0; i < text.length(); ++i) {
+			char c = text.charAt(i);
+			if (quoted) {
+				if (c != '"')
+					field.append(c);
+				else if (i + 1 < text.length() && text.charAt(i + 1) == '"')
+					field.append(text.charAt(++i));
+				else
+					quoted = false;
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				row.add(field.toString());
+				field.setLength(0);
+			} else if (c == '\n') {
+				row.add(field.toString());
+				field.setLength(0);
+				rows.add(row);
+				row = new ArrayList<String>();
+			} else if (c != '\r') {
+				field.append(c);
+			}
+		}
+
+		return rows;
+	}
+}
@@ -0,0 +1,59 @@
+package org.rdswitchboard.utils.neo4j.sync.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.Test;
+import org.rdswitchboard.utils.neo4j.sync.stage.FolderStager;
+
+public class FolderStagerTest {
+	
+	@Test
+	public void testCopy() throws IOException {
+		testStage(FolderStager.MODE_COPY);
+	}
+
+	@Test
+	public void testAuto() throws IOException {
+		testStage(FolderStager.MODE_AUTO);
+	}
+	
+	private static void testStage(String mode) throws IOException {
+		Path src = Files.createTempDirectory("stage_src_");
+		byte[] store = createData(3 * 1024 * 1024 + 11);
+		byte[] index = createData(513);
+		
+		Files.createDirectories(src.resolve("schema/index"));
+		Files.createDirectories(src.resolve("empty"));
+		Files.write(src.resolve("neostore"), store);
+		Files.write(src.resolve("schema/index/lucene"), index);
+		Files.write(src.resolve("schema/zero"), new byte[0]);
+		
+		Path dest = Files.createTempDirectory("stage_dest_").resolve("db");
+		new FolderStager(mode, 2).stage(src, dest);
+		
+		assertArrayEquals("Store should be staged", store, Files.readAllBytes(dest.resolve("neostore")));
+		assertArrayEquals("Nested file should be staged", index, Files.readAllBytes(dest.resolve("schema/index/lucene")));
+		assertEquals("Empty file should be staged", 0, Files.size(dest.resolve("schema/zero")));
+		assertTrue("Empty folder should be staged", Files.isDirectory(dest.resolve("empty")));
+		
+		// the staged store is written by the run, which must never reach the original
+		assertFalse("Files should not be shared", Files.isSameFile(src.resolve("neostore"), dest.resolve("neostore")));
+		Files.write(dest.resolve("neostore"), index);
+		assertArrayEquals("Original store should not change", store, Files.readAllBytes(src.resolve("neostore")));
+	}
+	
+	private static byte[] createData(int length) {
+		byte[] data = new byte[length];
+		new Random(length).nextBytes(data);
+		
+		return data;
+	}
+}
@@ -0,0 +1,122 @@
+package org.rdswitchboard.utils.neo4j.sync.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.RelationshipType;
+import org.rdswitchboard.utils.neo4j.sync.generator.CsvSink;
+import org.rdswitchboard.utils.neo4j.sync.generator.GraphGenerator;
+import org.rdswitchboard.utils.neo4j.sync.generator.GraphSink;
+
+public class GraphGeneratorTest {
+	
+	private static class MemorySink implements GraphSink {
+		private final Map<Long, Map<String, Object>> nodes = new HashMap<Long, Map<String, Object>>();
+		private final Map<Long, Integer> degrees = new HashMap<Long, Integer>();
+		private final List<long[]> relationships = new ArrayList<long[]>();
+
+		@Override
+		public void addNode(long id, Map<String, Object> properties, Label... labels) {
+			nodes.put(id, properties);
+		}
+
+		@Override
+		public void addRelationship(long from, long to, RelationshipType type) {
+			relationships.add(new long[] { from, to });
+			
+			for (long id : new long[] { from, to }) {
+				Integer degree = degrees.get(id);
+				degrees.put(id, null == degree ? 1 : degree + 1);
+			}
+		}
+
+		@Override
+		public void close() {
+		}
+		
+		private Set<Object> getValues(String property) {
+			Set<Object> values = new HashSet<Object>();
+			for (Map<String, Object> properties : nodes.values())
+				if (properties.containsKey(property))
+					values.add(properties.get(property));
+			
+			return values;
+		}
+		
+		private int getMaxDegree() {
+			int max = 0;
+			for (int degree : degrees.values())
+				max = Math.max(max, degree);
+			
+			return max;
+		}
+	}
+	
+	@Test
+	public void testOverlap() throws IOException {
+		MemorySink nexus = new MemorySink();
+		new GraphGenerator("nexus", 2, 2, 1, 0, 2.5, 1).generate(nexus);
+		
+		assertEquals("Graph should have the scaled number of nodes", 3800, nexus.nodes.size());
+		assertEquals("Every pool DOI should be used once", 2400, nexus.getValues("doi").size());
+		assertEquals("Every pool ORCID should be used once", 1200, nexus.getValues("orcid").size());
+		assertEquals("Keys should be unique", 3800, nexus.getValues("key").size());
+		for (long[] rel : nexus.relationships)
+			assertTrue("Relationships should connect existing nodes", nexus.nodes.containsKey(rel[0]) && nexus.nodes.containsKey(rel[1]));
+		assertTrue("Degree distribution should have hubs", nexus.getMaxDegree() > 10 * nexus.relationships.size() * 2 / nexus.nodes.size());
+
+		MemorySink client = new MemorySink();
+		new GraphGenerator("client", 1, 2, 0.3, 0, 2.5, 2).generate(client);
+		
+		Set<Object> shared = client.getValues("doi");
+		shared.retainAll(nexus.getValues("doi"));
+		assertEquals("Share of overlapping DOIs should be close to the overlap", 0.3, shared.size() / 1200.0, 0.05);
+	}
+	
+	@Test
+	public void testNoise() throws IOException {
+		MemorySink graph = new MemorySink();
+		new GraphGenerator("nexus", 1, 1, 1, 1, 2.5, 1).generate(graph);
+		
+		int prefixed = 0;
+		for (Object doi : graph.getValues("doi"))
+			if (((String) doi).startsWith("https://doi.org/"))
+				++prefixed;
+		
+		assertEquals("A third of noisy DOIs should have a resolver prefix", 400, prefixed, 60);
+	}
+	
+	@Test
+	public void testCsv() throws IOException {
+		Path folder = Files.createTempDirectory("generator_");
+		
+		try (CsvSink sink = new CsvSink(folder)) {
+			new GraphGenerator("group1", 0.01, 0.01, 1, 0, 2.5, 1).generate(sink);
+		}
+		
+		List<String> researchers = Files.readAllLines(folder.resolve("researchers.csv"));
+		assertEquals("Header should follow the fixture schema", 
+				":ID,key,source,local_id,full_name,last_updated,orcid,type,:LABEL", researchers.get(0));
+		assertEquals("Every researcher should be written", 7, researchers.size());
+		assertTrue("Node labels should be the type and the group", researchers.get(1).endsWith(",researcher;group1"));
+		assertEquals("Relationships should have a header", ":START_ID,:END_ID,:TYPE", 
+				Files.readAllLines(folder.resolve(CsvSink.FILE_RELATIONS)).get(0));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidOverlap() {
+		new GraphGenerator("nexus", 1, 1, 2, 0, 2.5, 1);
+	}
+}
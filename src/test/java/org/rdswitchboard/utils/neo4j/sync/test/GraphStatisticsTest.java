@@ -0,0 +1,54 @@
+package org.rdswitchboard.utils.neo4j.sync.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.Test;
+import org.neo4j.graphdb.Label;
+import org.rdswitchboard.utils.neo4j.sync.stats.GraphStatistics;
+import org.rdswitchboard.utils.neo4j.sync.stats.HyperLogLog;
+
+public class GraphStatisticsTest {
+	
+	@Test
+	public void testHyperLogLog() {
+		HyperLogLog counter = new HyperLogLog();
+		assertEquals("Empty counter should count nothing", 0, counter.count());
+
+		for (int i = 0; i < 1000; ++i) 
+			counter.add("10.1000/" + i);
+		assertEquals("Small cardinality should be within 2%", 1000, counter.count(), 20);
+		
+		for (int n = 0; n < 3; ++n)
+			for (int i = 0; i < 200000; ++i) 
+				counter.add("10.1000/" + i);
+		assertEquals("Large cardinality should be within 3%", 200000, counter.count(), 6000);
+	}
+	
+	@Test
+	public void testSummary() {
+		GraphStatistics statistics = new GraphStatistics(GraphStatistics.MODE_EXACT, Collections.<Label>emptyList());
+		
+		statistics.addNode("publication", "10.1/a", null);
+		statistics.addNode("publication", "10.1/a", null);
+		statistics.addNode("publication", new String[] { "10.1/a", "10.1/b" }, null);
+		statistics.addNode("researcher", null, "0000-0001");
+		statistics.addNode(null, null, null);
+		
+		String summary = statistics.getSummary();
+		
+		assertTrue("Nodes should be counted per type", summary.contains(String.format("  %-20s %12d\n", "publication", 3)));
+		assertTrue("Nodes without a type should be counted", summary.contains(String.format("  %-20s %12d\n", "(none)", 1)));
+		assertTrue("Distinct DOIs should be counted per type", 
+				summary.contains("Number of unique DOI/type:\n" + String.format("  %-20s %12d\n", "(none)", 0) 
+						+ String.format("  %-20s %12d\n", "publication", 2)));
+		assertTrue("ORCIDs should be sampled", summary.contains("Sample of ORCID:\n  0000-0001\n"));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownMode() {
+		new GraphStatistics("fast", Collections.<Label>emptyList());
+	}
+}
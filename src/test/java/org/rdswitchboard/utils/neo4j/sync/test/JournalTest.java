@@ -0,0 +1,89 @@
+package org.rdswitchboard.utils.neo4j.sync.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+import org.rdswitchboard.utils.neo4j.sync.collections.LongLongMap;
+import org.rdswitchboard.utils.neo4j.sync.journal.Checkpoint;
+import org.rdswitchboard.utils.neo4j.sync.journal.Journal;
+
+public class JournalTest {
+	
+	private static final String TEST_SIGNATURE = "source|target|2|[doi, orcid]";
+	
+	@Test
+	public void testResume() throws IOException {
+		Path file = Files.createTempDirectory("journal_").resolve("sync.journal");
+		
+		try (Journal journal = new Journal(file, TEST_SIGNATURE)) {
+			assertNull("New journal should have no checkpoint", journal.getCheckpoint());
+			
+			journal.imported(1, 101);
+			journal.imported(2, 102);
+			journal.commit(new Checkpoint(Journal.PHASE_MATCHING, 10, 50, new long[] { 1, 2, 3, 1 }));
+			
+			journal.imported(3, 103);
+			journal.expanded(1, 2);
+			journal.commit(new Checkpoint(Journal.PHASE_SIBLINGS, 1, 3, new long[] { 4, 5, 6, 2 }));
+			
+			// changes of a chunk which has not been committed
+			journal.imported(4, 104);
+		}
+		
+		// a record torn by a crash
+		try (FileOutputStream out = new FileOutputStream(file.toFile(), true)) {
+			out.write(new byte[] { 'I', 0, 0, 0 });
+		}
+		
+		try (Journal journal = new Journal(file, TEST_SIGNATURE);
+			 LongLongMap imported = new LongLongMap(1 << 20, file.getParent());
+			 LongLongMap expanded = new LongLongMap(1 << 20, file.getParent())) {
+			Checkpoint checkpoint = journal.getCheckpoint();
+			assertEquals("Phase of the last commit should be restored", Journal.PHASE_SIBLINGS, checkpoint.getPhase());
+			assertEquals("Position of the last commit should be restored", 1, checkpoint.getPosition());
+			assertEquals("Limit of the last commit should be restored", 3, checkpoint.getLimit());
+			assertArrayEquals("Counters of the last commit should be restored", new long[] { 4, 5, 6, 2 }, checkpoint.getCounters());
+			
+			journal.replay(imported, expanded);
+			assertEquals("Only committed nodes should be restored", 3, imported.size());
+			assertEquals("Nodes should be restored in order", 3, imported.keyAt(2));
+			assertEquals("Node ids should be restored", 103, imported.get(3));
+			assertEquals("Expanded levels should be restored", 2, expanded.get(1));
+			
+			// the run continues after the restored chunk
+			journal.imported(5, 105);
+			journal.commit(new Checkpoint(Journal.PHASE_SIBLINGS, 3, 3, new long[] { 7, 8, 9, 3 }));
+		}
+		
+		try (Journal journal = new Journal(file, TEST_SIGNATURE);
+			 LongLongMap imported = new LongLongMap(1 << 20, file.getParent());
+			 LongLongMap expanded = new LongLongMap(1 << 20, file.getParent())) {
+			journal.replay(imported, expanded);
+			assertEquals("Chunks written after the resume should be restored", 105, imported.get(5));
+			assertEquals("Torn records should be discarded", LongLongMap.NO_VALUE, imported.get(4));
+			
+			journal.finish();
+		}
+		
+		assertFalse("Completed journal should be removed", Files.exists(file));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testDifferentRun() throws IOException {
+		Path file = Files.createTempDirectory("journal_").resolve("sync.journal");
+		
+		try (Journal journal = new Journal(file, TEST_SIGNATURE)) {
+			journal.commit(new Checkpoint(Journal.PHASE_MATCHING, 0, 0, new long[4]));
+		}
+		
+		new Journal(file, "other|target|2|[doi]").close();
+	}
+}
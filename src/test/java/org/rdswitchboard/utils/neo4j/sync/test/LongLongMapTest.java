@@ -0,0 +1,91 @@
+package org.rdswitchboard.utils.neo4j.sync.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+import org.rdswitchboard.utils.neo4j.sync.collections.LongLongMap;
+
+public class LongLongMapTest {
+	
+	public static final int TEST_ENTRIES = 100000;
+	public static final long TEST_HEAP_BUDGET = 64L << 20;
+
+	@Test
+	public void testHeapMap() throws IOException {
+		try (LongLongMap map = new LongLongMap(TEST_HEAP_BUDGET, getSpillFolder())) {
+			testMap(map);
+			
+			assertFalse("Map must stay in the heap while it fits the budget", 
+					map.isSpilled());
+		}
+	}
+	
+	@Test
+	public void testSpilledMap() throws IOException {
+		try (LongLongMap map = new LongLongMap(0, getSpillFolder())) {
+			testMap(map);
+			
+			assertTrue("Map must be spilled when it does not fit the budget", 
+					map.isSpilled());
+		}
+	}
+	
+	@Test
+	public void testSnapshotIteration() throws IOException {
+		try (LongLongMap map = new LongLongMap(TEST_HEAP_BUDGET, getSpillFolder())) {
+			for (long i = 0; i < 100; ++i)
+				map.put(i, i * 2);
+			
+			long visited = 0;
+			for (long i = 0, size = map.size(); i < size; ++i) {
+				assertEquals("Entries must be visited in insertion order", 
+						i, map.keyAt(i));
+				
+				// new entries must not affect positions of existing ones
+				map.put(1000 + i, i);
+				++visited;
+			}
+			
+			assertEquals("Only the snapshot entries must be visited", 
+					100, visited);
+			assertEquals("Entries added during iteration must be stored", 
+					200, map.size());
+		}
+	}
+	
+	private static void testMap(LongLongMap map) throws IOException {
+		Map<Long, Long> expected = new HashMap<Long, Long>();
+		Random random = new Random(42);
+		
+		for (int i = 0; i < TEST_ENTRIES; ++i) {
+			long key = random.nextInt(TEST_ENTRIES * 2);
+			long value = random.nextLong();
+			
+			map.put(key, value);
+			expected.put(key, value);
+		}
+		
+		assertEquals("Map must contain all unique keys", 
+				expected.size(), map.size());
+		
+		for (Map.Entry<Long, Long> entry : expected.entrySet())
+			assertEquals("Map must return the last value stored for the key", 
+					entry.getValue().longValue(), map.get(entry.getKey()));
+		
+		assertEquals("Map must report missing keys", 
+				LongLongMap.NO_VALUE, map.get(-1));
+	}
+	
+	private static Path getSpillFolder() throws IOException {
+		return Files.createTempDirectory("map_");
+	}
+}
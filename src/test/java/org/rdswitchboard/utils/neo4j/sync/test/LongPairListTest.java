@@ -0,0 +1,43 @@
+package org.rdswitchboard.utils.neo4j.sync.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Test;
+import org.rdswitchboard.utils.neo4j.sync.collections.LongArrayAllocator;
+import org.rdswitchboard.utils.neo4j.sync.collections.LongPairList;
+
+public class LongPairListTest {
+	
+	public static final int TEST_PAIRS = 50000;
+	
+	@Test
+	public void testPairList() throws IOException {
+		testPairList(64L << 20);
+	}
+	
+	@Test
+	public void testSpilledPairList() throws IOException {
+		testPairList(0);
+	}
+	
+	private static void testPairList(long heapBudget) throws IOException {
+		LongArrayAllocator allocator = new LongArrayAllocator(heapBudget, Files.createTempDirectory("list_"));
+		try (LongPairList list = new LongPairList(allocator)) {
+			for (long i = 0; i < TEST_PAIRS; ++i)
+				list.add(i % 100, i * 3);
+			
+			assertEquals("List must keep duplicate pairs", 
+					TEST_PAIRS, list.size());
+			
+			for (long i = 0; i < TEST_PAIRS; ++i) {
+				assertEquals("Pairs must be kept in the order they have been added", 
+						i % 100, list.firstAt(i));
+				assertEquals("Pairs must be kept in the order they have been added", 
+						i * 3, list.secondAt(i));
+			}
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package org.rdswitchboard.utils.neo4j.sync.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Test;
+import org.rdswitchboard.utils.neo4j.sync.collections.LongArrayAllocator;
+import org.rdswitchboard.utils.neo4j.sync.collections.LongPairSet;
+
+public class LongPairSetTest {
+	
+	public static final int TEST_PAIRS = 50000;
+	
+	@Test
+	public void testPairSet() throws IOException {
+		testPairSet(64L << 20);
+	}
+	
+	@Test
+	public void testSpilledPairSet() throws IOException {
+		testPairSet(0);
+	}
+	
+	private static void testPairSet(long heapBudget) throws IOException {
+		LongArrayAllocator allocator = new LongArrayAllocator(heapBudget, Files.createTempDirectory("set_"));
+		try (LongPairSet set = new LongPairSet(allocator)) {
+			for (long i = 0; i < TEST_PAIRS; ++i)
+				assertTrue("New pair must be added", 
+						set.add(i, i * 3));
+			
+			assertFalse("Existing pair must not be added twice", 
+					set.add(7, 21));
+			assertEquals("Set must contain all unique pairs", 
+					TEST_PAIRS, set.size());
+
+			for (long i = 0; i < TEST_PAIRS; ++i) {
+				assertTrue("Set must contain added pair", 
+						set.contains(i, i * 3));
+				assertFalse("Set must distinguish the pair order", 
+						set.contains(i * 3, i) && i != 0);
+			}
+		}
+	}
+}
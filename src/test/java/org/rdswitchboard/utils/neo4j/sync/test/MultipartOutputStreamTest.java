@@ -0,0 +1,137 @@
+package org.rdswitchboard.utils.neo4j.sync.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.rdswitchboard.utils.neo4j.sync.s3.MultipartOutputStream;
+import org.rdswitchboard.utils.neo4j.sync.s3.PartTarget;
+
+public class MultipartOutputStreamTest {
+	
+	public static final int TEST_LENGTH = 1000003;
+	public static final int TEST_PART = 4096;
+	
+	@Test
+	public void testUpload() throws IOException {
+		byte[] data = createData(TEST_LENGTH);
+		MemoryTarget target = new MemoryTarget(0);
+		
+		try (MultipartOutputStream os = new MultipartOutputStream(target, TEST_PART, 4, 8)) {
+			// write in uneven slices to cross the part boundaries
+			for (int off = 0; off < data.length; off += 1000) 
+				os.write(data, off, Math.min(1000, data.length - off));
+		}
+		
+		assertTrue("Upload should be completed", target.completed);
+		assertArrayEquals("Parts should assemble into the written bytes", data, target.getObject());
+	}
+	
+	@Test
+	public void testEmptyUpload() throws IOException {
+		MemoryTarget target = new MemoryTarget(0);
+		
+		new MultipartOutputStream(target, TEST_PART, 2, 4).close();
+		
+		assertTrue("Empty upload should be completed", target.completed);
+		assertEquals("Empty upload should contain one empty part", 0, target.getObject().length);
+	}
+	
+	@Test
+	public void testRetry() throws IOException {
+		byte[] data = createData(TEST_LENGTH);
+		MemoryTarget target = new MemoryTarget(2);
+		
+		try (MultipartOutputStream os = new MultipartOutputStream(target, TEST_PART, 4, 8)) {
+			os.write(data);
+		}
+		
+		assertArrayEquals("Failed parts should be retried", data, target.getObject());
+	}
+	
+	@Test
+	public void testFailure() {
+		MemoryTarget target = new MemoryTarget(Integer.MAX_VALUE);
+		
+		try (MultipartOutputStream os = new MultipartOutputStream(target, TEST_PART, 2, 4)) {
+			os.write(createData(TEST_LENGTH));
+			
+			fail("Upload should fail when a part can not be uploaded");
+		} catch (IOException e) {
+			// expected
+		}
+		
+		assertFalse("Failed upload should not be completed", target.completed);
+		assertTrue("Failed upload should be aborted", target.aborted);
+	}
+	
+	private static byte[] createData(int length) {
+		byte[] data = new byte[length];
+		new Random(42).nextBytes(data);
+		
+		return data;
+	}
+	
+	/**
+	 * In-memory object which fails first uploads of every part 
+	 */
+	private static class MemoryTarget implements PartTarget {
+		private final int failures;
+		private final TreeMap<Integer, byte[]> parts = new TreeMap<Integer, byte[]>();
+		private final TreeMap<Integer, AtomicInteger> attempts = new TreeMap<Integer, AtomicInteger>();
+		
+		private volatile boolean completed;
+		private volatile boolean aborted;
+		
+		public MemoryTarget(int failures) {
+			this.failures = failures;
+		}
+		
+		@Override
+		public void uploadPart(int partNumber, byte[] data, int length, boolean last) throws IOException {
+			AtomicInteger attempt;
+			synchronized (attempts) {
+				attempt = attempts.get(partNumber);
+				if (null == attempt)
+					attempts.put(partNumber, attempt = new AtomicInteger());
+			}
+			
+			if (attempt.incrementAndGet() <= failures)
+				throw new IOException("Part " + partNumber + " is not accepted");
+			
+			synchronized (parts) {
+				parts.put(partNumber, Arrays.copyOf(data, length));
+			}
+		}
+
+		@Override
+		public void complete() {
+			completed = true;
+		}
+
+		@Override
+		public void abort() {
+			aborted = true;
+		}
+		
+		public byte[] getObject() throws IOException {
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			synchronized (parts) {
+				for (byte[] part : parts.values())
+					os.write(part);
+			}
+			
+			return os.toByteArray();
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package org.rdswitchboard.utils.neo4j.sync.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.rdswitchboard.utils.neo4j.sync.normalize.DoiNormalizer;
+import org.rdswitchboard.utils.neo4j.sync.normalize.Normalizer;
+import org.rdswitchboard.utils.neo4j.sync.normalize.Normalizers;
+import org.rdswitchboard.utils.neo4j.sync.normalize.OrcidNormalizer;
+
+public class NormalizersTest {
+	
+	private static final Set<String> TEST_KEYS = new HashSet<String>(Arrays.asList("doi", "orcid", "nla"));
+	
+	public static class ReverseNormalizer implements Normalizer {
+		@Override
+		public String normalize(String value) {
+			return new StringBuilder(value).reverse().toString();
+		}
+	}
+
+	public static class PrefixNormalizer implements Normalizer {
+		private final String prefix;
+		
+		public PrefixNormalizer(String prefix) {
+			this.prefix = prefix;
+		}
+		
+		@Override
+		public String normalize(String value) {
+			return prefix + value;
+		}
+	}
+
+	@Test
+	public void testDoi() {
+		Normalizer normalizer = new DoiNormalizer();
+		
+		assertEquals("DOI should be converted to lower case", "10.1000/abc", normalizer.normalize("10.1000/ABC"));
+		assertEquals("Resolver prefix should be removed", "10.1000/abc", normalizer.normalize("https://doi.org/10.1000/Abc"));
+		assertEquals("Old resolver prefix should be removed", "10.1000/abc", normalizer.normalize("http://dx.doi.org/10.1000/abc"));
+		assertEquals("DOI scheme should be removed", "10.1000/abc", normalizer.normalize(" doi:10.1000/abc\n"));
+		assertNull("Blank DOI should not be matched", normalizer.normalize("  "));
+	}
+	
+	@Test
+	public void testOrcid() {
+		Normalizer normalizer = new OrcidNormalizer();
+		
+		assertEquals("Check digit should be converted to upper case", "0000-0002-1825-009X", normalizer.normalize("0000-0002-1825-009x"));
+		assertEquals("Resolver prefix should be removed", "0000-0002-1825-009X", normalizer.normalize("https://orcid.org/0000-0002-1825-009X"));
+		assertEquals("Hyphens should be added", "0000-0002-1825-009X", normalizer.normalize("000000021825009X"));
+		assertEquals("Whitespace should be removed", "0000-0002-1825-0097", normalizer.normalize(" 0000 0002 1825 0097 "));
+		assertEquals("Malformed iD should only be trimmed", "0000-0001", normalizer.normalize("orcid.org/0000-0001 "));
+		assertNull("Blank iD should not be matched", normalizer.normalize(""));
+	}
+	
+	@Test
+	public void testConfiguration() {
+		Normalizers normalizers = new Normalizers("doi, nla=text, orcid=" + ReverseNormalizer.class.getName(), TEST_KEYS);
+		
+		assertEquals("Normalized key should be looked up in the shadow property", "normalized_doi", normalizers.getProperty("doi"));
+		assertEquals("Built-in normalizer should be used by name", "nla 123", normalizers.normalize("nla", " NLA  123"));
+		assertEquals("Normalizer should be created by class name", "dicro", normalizers.normalize("orcid", "orcid"));
+		assertTrue("Shadow property should be recognised", Normalizers.isShadowProperty(normalizers.getProperty("nla")));
+		
+		normalizers = new Normalizers(null, TEST_KEYS);
+		
+		assertTrue("Normalizers should not be configured", normalizers.isEmpty());
+		assertEquals("Key should be looked up as it is", "doi", normalizers.getProperty("doi"));
+		assertEquals("Value should be looked up as it is", " 10.1/A", normalizers.normalize("doi", " 10.1/A"));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownNormalizer() {
+		new Normalizers("nla", TEST_KEYS);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testNormalizerWithoutDefaultConstructor() {
+		new Normalizers("orcid=" + PrefixNormalizer.class.getName(), TEST_KEYS);
+	}
+}
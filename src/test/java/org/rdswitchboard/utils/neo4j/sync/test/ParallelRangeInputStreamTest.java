@@ -0,0 +1,106 @@
+package org.rdswitchboard.utils.neo4j.sync.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.rdswitchboard.utils.neo4j.sync.s3.ParallelRangeInputStream;
+import org.rdswitchboard.utils.neo4j.sync.s3.RangeSource;
+
+public class ParallelRangeInputStreamTest {
+	
+	public static final int TEST_LENGTH = 1000003;
+	public static final int TEST_PART = 4096;
+	
+	@Test
+	public void testSequentialRead() throws IOException {
+		byte[] data = createData(TEST_LENGTH);
+		
+		try (InputStream is = new ParallelRangeInputStream(new MemorySource(data, 0), TEST_PART, 4, 8)) {
+			assertArrayEquals("Stream should return the object bytes in order", data, IOUtils.toByteArray(is));
+		}
+	}
+	
+	@Test
+	public void testEmptyObject() throws IOException {
+		try (InputStream is = new ParallelRangeInputStream(new MemorySource(new byte[0], 0), TEST_PART, 2, 4)) {
+			assertEquals("Empty object should end the stream", -1, is.read());
+		}
+	}
+	
+	@Test
+	public void testRetry() throws IOException {
+		byte[] data = createData(TEST_LENGTH);
+		MemorySource source = new MemorySource(data, 2);
+		
+		try (InputStream is = new ParallelRangeInputStream(source, TEST_PART, 4, 8)) {
+			assertArrayEquals("Failed ranges should be retried", data, IOUtils.toByteArray(is));
+		}
+	}
+	
+	@Test
+	public void testFailure() throws IOException {
+		try (InputStream is = new ParallelRangeInputStream(new MemorySource(createData(TEST_LENGTH), Integer.MAX_VALUE), TEST_PART, 2, 4)) {
+			IOUtils.toByteArray(is);
+			
+			fail("Stream should fail when a range can not be downloaded");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	private static byte[] createData(int length) {
+		byte[] data = new byte[length];
+		new Random(42).nextBytes(data);
+		
+		return data;
+	}
+	
+	/**
+	 * In-memory object which fails first requests of every range 
+	 */
+	private static class MemorySource implements RangeSource {
+		private final byte[] data;
+		private final int failures;
+		private final AtomicInteger[] attempts;
+		
+		public MemorySource(byte[] data, int failures) {
+			this.data = data;
+			this.failures = failures;
+			this.attempts = new AtomicInteger[data.length / TEST_PART + 1];
+			for (int i = 0; i < attempts.length; ++i)
+				attempts[i] = new AtomicInteger();
+		}
+
+		@Override
+		public long getLength() {
+			return data.length;
+		}
+
+		@Override
+		public String getChecksum() {
+			return null;
+		}
+
+		@Override
+		public long getPartSize() {
+			return 0;
+		}
+
+		@Override
+		public InputStream open(long start, long end) throws IOException {
+			if (attempts[(int) (start / TEST_PART)].incrementAndGet() <= failures)
+				throw new IOException("Range " + start + " is not available");
+			
+			return new ByteArrayInputStream(data, (int) start, (int) (end - start));
+		}
+	}
+}
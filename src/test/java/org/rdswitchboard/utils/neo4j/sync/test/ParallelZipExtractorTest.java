@@ -0,0 +1,66 @@
+package org.rdswitchboard.utils.neo4j.sync.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+import org.rdswitchboard.utils.neo4j.sync.zip.ParallelZipExtractor;
+
+public class ParallelZipExtractorTest {
+	
+	@Test
+	public void testExtract() throws IOException {
+		Path folder = Files.createTempDirectory("unzip_");
+		Map<String, byte[]> files = new LinkedHashMap<String, byte[]>();
+		files.put("drop/neostore", createData(300000));
+		files.put("drop/empty", new byte[0]);
+		files.put("drop/schema/index/lucene.bin", createData(12345));
+		files.put("drop/schema/label.db", createData(77));
+		
+		Path archive = folder.resolve("drop.zip");
+		try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(archive.toFile()))) {
+			zos.putNextEntry(new ZipEntry("drop/"));
+			zos.putNextEntry(new ZipEntry("drop/schema/"));
+			zos.putNextEntry(new ZipEntry("drop/schema/index/"));
+			for (Map.Entry<String, byte[]> file : files.entrySet()) {
+				zos.putNextEntry(new ZipEntry(file.getKey()));
+				zos.write(file.getValue());
+				zos.closeEntry();
+			}
+		}
+		
+		Path output = folder.resolve("output");
+		new ParallelZipExtractor(3).extract(archive, Paths.get("drop"), output);
+		
+		assertTrue("Nested folders should be created", Files.isDirectory(output.resolve("schema/index")));
+		for (Map.Entry<String, byte[]> file : files.entrySet()) {
+			// the root folder of the archive is stripped 
+			Path path = output.resolve(file.getKey().substring("drop/".length()));
+			
+			assertTrue("File should be extracted: " + path, Files.isRegularFile(path));
+			assertEquals("File size should match: " + path, file.getValue().length, Files.size(path));
+			assertArrayEquals("File content should match: " + path, file.getValue(), Files.readAllBytes(path));
+		}
+	}
+	
+	private static byte[] createData(int length) {
+		byte[] data = new byte[length];
+		Random random = new Random(length);
+		for (int i = 0; i < length; ++i)
+			data[i] = (byte) random.nextInt(16);
+		
+		return data;
+	}
+}
@@ -0,0 +1,106 @@
+package org.rdswitchboard.utils.neo4j.sync.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.rdswitchboard.utils.neo4j.sync.zip.ParallelZipWriter;
+
+public class ParallelZipWriterTest {
+	
+	public static final int TEST_BLOCK = ParallelZipWriter.MIN_BLOCK_SIZE;
+	
+	@Test
+	public void testDeflated() throws IOException {
+		testArchive(6);
+	}
+	
+	@Test
+	public void testStored() throws IOException {
+		testArchive(0);
+	}
+	
+	private static void testArchive(int level) throws IOException {
+		Path folder = Files.createTempDirectory("zip_");
+		Map<String, byte[]> files = new HashMap<String, byte[]>();
+		files.put("db/empty", new byte[0]);
+		files.put("db/small", "researchgraph".getBytes());
+		files.put("db/block", createText(TEST_BLOCK));
+		files.put("db/text", createText(TEST_BLOCK * 3 + 1234));
+		files.put("db/random", createRandom(TEST_BLOCK * 2 + 17));
+		
+		Path archive = folder.resolve("test.zip");
+		try (ParallelZipWriter zip = new ParallelZipWriter(new FileOutputStream(archive.toFile()), level, 4, TEST_BLOCK)) {
+			zip.addDirectory("db/", System.currentTimeMillis());
+			for (Map.Entry<String, byte[]> file : files.entrySet()) {
+				Path path = folder.resolve(file.getKey().replace('/', '_'));
+				Files.write(path, file.getValue());
+				
+				zip.addFile(file.getKey(), path, file.getKey().equals("db/random"));
+			}
+		}
+		
+		try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+			assertEquals("Archive should contain all entries", files.size() + 1, zipFile.size());
+			assertTrue("Directory entry should be present", zipFile.getEntry("db/").isDirectory());
+			
+			for (Map.Entry<String, byte[]> file : files.entrySet()) {
+				ZipEntry entry = zipFile.getEntry(file.getKey());
+				assertNotNull("Entry should be present: " + file.getKey(), entry);
+				try (InputStream is = zipFile.getInputStream(entry)) {
+					assertArrayEquals("Random access content should match: " + file.getKey(), file.getValue(), IOUtils.toByteArray(is));
+				}
+			}
+			
+			if (level > 0) 
+				assertTrue("Text should be compressed", zipFile.getEntry("db/text").getCompressedSize() < TEST_BLOCK);
+		}
+		
+		try (ZipInputStream zis = new ZipInputStream(new FileInputStream(archive.toFile()))) {
+			assertEquals("First entry should be the directory", "db/", zis.getNextEntry().getName());
+			
+			ZipEntry entry;
+			int count = 0;
+			while (null != (entry = zis.getNextEntry())) {
+				assertArrayEquals("Streamed content should match: " + entry.getName(), files.get(entry.getName()), IOUtils.toByteArray(zis));
+				++count;
+			}
+			
+			assertEquals("Stream should contain all files", files.size(), count);
+			assertNull("Stream should end after the last entry", zis.getNextEntry());
+		}
+	}
+	
+	private static byte[] createText(int length) {
+		Random random = new Random(42);
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < length)
+			sb.append("node ").append(random.nextInt(1000)).append(" doi:10.1000/").append(random.nextInt(100)).append('\n');
+		
+		return sb.substring(0, length).getBytes();
+	}
+
+	private static byte[] createRandom(int length) {
+		byte[] data = new byte[length];
+		new Random(42).nextBytes(data);
+		
+		return data;
+	}
+}
@@ -0,0 +1,200 @@
+package org.rdswitchboard.utils.neo4j.sync.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.rdswitchboard.utils.neo4j.sync.Configuration;
+import org.rdswitchboard.utils.neo4j.sync.Process;
+import org.rdswitchboard.utils.neo4j.sync.SourceGraph;
+import org.rdswitchboard.utils.neo4j.sync.enums.Relationships;
+import org.rdswitchboard.utils.neo4j.sync.generator.EmbeddedSink;
+import org.rdswitchboard.utils.neo4j.sync.generator.GraphGenerator;
+import org.rdswitchboard.utils.neo4j.sync.incremental.Watermark;
+
+/**
+ * Synthesizes small generated graphs with embedded Neo4j databases
+ */
+public class ProcessTest {
+	private static final Set<String> KEYS = new HashSet<String>(Arrays.asList("doi", "orcid"));
+
+	@Test
+	public void testParallelMatching() throws Exception {
+		Properties serial = getProperties();
+		serial.setProperty(Configuration.PROPERTY_SYNC_THREADS, "1");
+		String expected = synthesize(serial);
+
+		assertTrue("Nodes should be augmented", expected.contains("augment"));
+
+		for (String match : new String[] { Process.MATCH_INDEX, Process.MATCH_HASH }) {
+			Properties parallel = getProperties();
+			parallel.setProperty(Configuration.PROPERTY_SYNC_THREADS, "4");
+			parallel.setProperty(Configuration.PROPERTY_SYNC_MATCH, match);
+
+			assertEquals("Parallel " + match + " matching should give the serial result", expected, synthesize(parallel));
+		}
+	}
+
+	@Test
+	public void testIncremental() throws Exception {
+		Path folder = Files.createTempDirectory("process_");
+		Path target = folder.resolve("client");
+		GraphGenerator.generate(new GraphGenerator("client", 0.05, 0.1, 0.5, 0, 2.5, 2), target, GraphGenerator.OUTPUT_NEO4J);
+
+		Properties properties = getProperties();
+		properties.setProperty(Configuration.PROPERTY_SYNC_INCREMENTAL, "true");
+
+		String expected = null;
+		for (int run = 0; run < 2; ++run) {
+			// every run gets a fresh copy of the same source, as a downloaded Nexus would be
+			Path source = folder.resolve("nexus" + run);
+			GraphGenerator.generate(new GraphGenerator("nexus", 0.1, 0.1, 1, 0, 2.5, 1), source, GraphGenerator.OUTPUT_NEO4J);
+
+			try (SourceGraph sourceGraph = new SourceGraph(source)) {
+				new Process(sourceGraph, target, KEYS, 2, properties).run();
+			}
+
+			assertTrue("Watermark should be written next to the database", Files.exists(Watermark.getFile(target)));
+			if (null == expected)
+				expected = getSignature(target);
+			else
+				assertEquals("Unchanged source should not change the target", expected, getSignature(target));
+		}
+
+		assertTrue("Nodes should be augmented", expected.contains("augment"));
+		assertFalse("Watermark should not be stored in the graph", expected.contains("sync_watermark"));
+	}
+
+	@Test
+	public void testSourcePrecedence() throws Exception {
+		Path folder = Files.createTempDirectory("process_");
+		Path target = folder.resolve("client");
+		Path first = folder.resolve("nexus");
+		Path second = folder.resolve("orcid");
+
+		createResearcher(target, "client", "client/1", "Client");
+		// both sources hold a copy of the same node which differs in its properties
+		createResearcher(first, "nexus", "nexus/1", "First");
+		createResearcher(second, "orcid", "nexus/1", "Second");
+
+		try (SourceGraph firstGraph = new SourceGraph(first); SourceGraph secondGraph = new SourceGraph(second)) {
+			new Process(Arrays.asList(firstGraph, secondGraph), target, KEYS, 2, getProperties()).run();
+		}
+
+		GraphDatabaseService graphDb = new GraphDatabaseFactory().newEmbeddedDatabase(Paths.get(target.toString(), Process.NEO4J_DB).toFile());
+		try (Transaction ignored = graphDb.beginTx()) {
+			List<Node> copies = new ArrayList<Node>();
+			for (Node node : graphDb.getAllNodes())
+				if ("nexus/1".equals(node.getProperty("key")))
+					copies.add(node);
+
+			assertEquals("Node held by both sources should be copied once", 1, copies.size());
+			assertEquals("Copy should come from the first source", "First", copies.get(0).getProperty("full_name"));
+
+			int augments = 0;
+			for (Relationship relationship : graphDb.getAllRelationships())
+				if (relationship.isType(Relationships.augment))
+					++augments;
+
+			assertEquals("Target node should be augmented once", 1, augments);
+		} finally {
+			graphDb.shutdown();
+		}
+	}
+
+	private static void createResearcher(Path folder, String group, String key, String name) throws IOException {
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put("key", key);
+		properties.put("source", group + ".researchgraph.org");
+		properties.put("type", "researcher");
+		properties.put("full_name", name);
+		properties.put("orcid", "0000-0002-1825-0097");
+
+		EmbeddedSink sink = new EmbeddedSink(folder);
+		try {
+			sink.addNode(0, properties, Label.label("researcher"), Label.label(group));
+		} finally {
+			sink.close();
+		}
+	}
+
+	private static Properties getProperties() {
+		Properties properties = new Properties();
+		properties.setProperty(Configuration.PROPERTY_SYNC_REPORT, "");
+		properties.setProperty(Configuration.PROPERTY_SYNC_JMX, "false");
+		properties.setProperty(Configuration.PROPERTY_SYNC_PROGRESS, "0");
+
+		return properties;
+	}
+
+	private static String synthesize(Properties properties) throws Exception {
+		Path folder = Files.createTempDirectory("process_");
+		Path source = folder.resolve("nexus");
+		Path target = folder.resolve("client");
+
+		GraphGenerator.generate(new GraphGenerator("nexus", 0.1, 0.1, 1, 0, 2.5, 1), source, GraphGenerator.OUTPUT_NEO4J);
+		GraphGenerator.generate(new GraphGenerator("client", 0.05, 0.1, 0.5, 0, 2.5, 2), target, GraphGenerator.OUTPUT_NEO4J);
+
+		try (SourceGraph sourceGraph = new SourceGraph(source)) {
+			new Process(sourceGraph, target, KEYS, 2, properties).run();
+		}
+
+		return getSignature(target);
+	}
+
+	/**
+	 * @return sorted list of node keys with labels and of undirected relationships between node keys
+	 */
+	static String getSignature(Path folder) throws IOException {
+		Set<String> lines = new TreeSet<String>();
+
+		GraphDatabaseService graphDb = new GraphDatabaseFactory().newEmbeddedDatabase(Paths.get(folder.toString(), Process.NEO4J_DB).toFile());
+		try (Transaction ignored = graphDb.beginTx()) {
+			for (Node node : graphDb.getAllNodes()) {
+				Set<String> labels = new TreeSet<String>();
+				for (Label label : node.getLabels())
+					labels.add(label.name());
+
+				lines.add("node " + node.getProperty("key", "") + " " + labels);
+			}
+
+			// a copied relationship is directed from the node expanded first, so the direction is ignored
+			for (Relationship relationship : graphDb.getAllRelationships()) {
+				String start = (String) relationship.getStartNode().getProperty("key", "");
+				String end = (String) relationship.getEndNode().getProperty("key", "");
+
+				lines.add("relationship " + relationship.getType().name() + " " 
+						+ (start.compareTo(end) < 0 ? start + " " + end : end + " " + start));
+			}
+		} finally {
+			graphDb.shutdown();
+		}
+
+		StringBuilder sb = new StringBuilder();
+		for (String line : lines)
+			sb.append(line).append('\n');
+
+		return sb.toString();
+	}
+}
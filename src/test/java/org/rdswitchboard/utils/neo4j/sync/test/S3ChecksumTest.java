@@ -0,0 +1,211 @@
+package org.rdswitchboard.utils.neo4j.sync.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.TeeInputStream;
+import org.junit.Test;
+import org.rdswitchboard.utils.neo4j.sync.s3.MultipartOutputStream;
+import org.rdswitchboard.utils.neo4j.sync.s3.ParallelRangeInputStream;
+import org.rdswitchboard.utils.neo4j.sync.s3.PartDigest;
+import org.rdswitchboard.utils.neo4j.sync.s3.RangeSource;
+import org.rdswitchboard.utils.neo4j.sync.s3.S3PartTarget;
+import org.rdswitchboard.utils.neo4j.sync.s3.S3Path;
+import org.rdswitchboard.utils.neo4j.sync.s3.S3RangeSource;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.Headers;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+/**
+ * Uploads objects with S3PartTarget and verifies them on download the way App does
+ */
+public class S3ChecksumTest {
+	public static final int TEST_PART = 4096;
+	public static final int TEST_DOWNLOAD_PART = 1000;
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		for (int length : new int[] { 1000003, TEST_PART * 8, TEST_PART, 1, 0 }) {
+			byte[] data = createData(length);
+			MemoryS3 s3 = new MemoryS3();
+			upload(s3, data);
+
+			RangeSource source = new S3RangeSource(s3.getClient(), S3Path.parse("s3://bucket/drop.zip"));
+			String expected = source.getChecksum();
+
+			assertTrue("Multipart ETag should contain the number of parts", expected.contains("-"));
+			assertEquals("Part size should be stored with the object", TEST_PART, source.getPartSize());
+			assertEquals("Download of " + length + " bytes should match the ETag", expected, download(source, data));
+		}
+	}
+
+	@Test
+	public void testCorruption() throws IOException {
+		byte[] data = createData(1000003);
+		MemoryS3 s3 = new MemoryS3();
+		upload(s3, data);
+
+		s3.object[500000] ^= 1;
+
+		RangeSource source = new S3RangeSource(s3.getClient(), S3Path.parse("s3://bucket/drop.zip"));
+		assertNotEquals("Corrupted download should not match the ETag", source.getChecksum(), download(source, s3.object));
+	}
+
+	@Test
+	public void testWithoutPartSize() throws IOException {
+		byte[] data = createData(1000003);
+		MemoryS3 s3 = new MemoryS3();
+		upload(s3, data);
+
+		// objects uploaded by other tools have no part size, so their composite ETag cannot be checked
+		s3.metadata.getUserMetadata().clear();
+
+		RangeSource source = new S3RangeSource(s3.getClient(), S3Path.parse("s3://bucket/drop.zip"));
+		assertNull("Composite ETag without part size should not be used", source.getChecksum());
+		assertEquals("Digest should fall back to the whole object", 0, source.getPartSize());
+	}
+
+	@Test
+	public void testSinglePart() throws IOException {
+		byte[] data = createData(1000003);
+		PartDigest digest = new PartDigest(0);
+		digest.write(data);
+
+		assertEquals("Digest without parts should be the plain MD5", toHex(md5(data)), digest.getChecksum());
+	}
+
+	private static void upload(MemoryS3 s3, byte[] data) throws IOException {
+		try (MultipartOutputStream os = new MultipartOutputStream(new S3PartTarget(s3.getClient(), "bucket", "drop.zip", TEST_PART), TEST_PART, 4, 8)) {
+			// write in uneven slices to cross the part boundaries
+			for (int off = 0; off < data.length; off += 1000)
+				os.write(data, off, Math.min(1000, data.length - off));
+		}
+	}
+
+	private static String download(RangeSource source, byte[] expected) throws IOException {
+		PartDigest digest = new PartDigest(source.getPartSize());
+
+		try (InputStream is = new TeeInputStream(new ParallelRangeInputStream(source, TEST_DOWNLOAD_PART, 4, 8), digest)) {
+			assertArrayEquals("Download should return the object", expected, IOUtils.toByteArray(is));
+		}
+
+		return digest.getChecksum();
+	}
+
+	private static byte[] createData(int length) {
+		byte[] data = new byte[length];
+		new Random(length).nextBytes(data);
+
+		return data;
+	}
+
+	private static byte[] md5(byte[] data) {
+		try {
+			return MessageDigest.getInstance("MD5").digest(data);
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder();
+		for (byte b : bytes)
+			sb.append(String.format("%02x", b));
+
+		return sb.toString();
+	}
+
+	/**
+	 * Single object bucket which computes the ETag of a completed multipart upload the way S3 does
+	 */
+	private static class MemoryS3 implements InvocationHandler {
+		private final Map<Integer, byte[]> parts = new TreeMap<Integer, byte[]>();
+
+		private ObjectMetadata metadata;
+		private byte[] object;
+		private String etag;
+
+		public AmazonS3 getClient() {
+			return (AmazonS3) Proxy.newProxyInstance(AmazonS3.class.getClassLoader(), new Class<?>[] { AmazonS3.class }, this);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("initiateMultipartUpload")) {
+				metadata = ((InitiateMultipartUploadRequest) args[0]).getObjectMetadata();
+
+				InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+				result.setUploadId("upload");
+				return result;
+			} else if (name.equals("uploadPart")) {
+				UploadPartRequest request = (UploadPartRequest) args[0];
+				byte[] part = IOUtils.toByteArray(request.getInputStream());
+				synchronized (parts) {
+					parts.put(request.getPartNumber(), part);
+				}
+
+				UploadPartResult result = new UploadPartResult();
+				result.setPartNumber(request.getPartNumber());
+				result.setETag(toHex(md5(part)));
+				return result;
+			} else if (name.equals("completeMultipartUpload")) {
+				ByteArrayOutputStream os = new ByteArrayOutputStream();
+				ByteArrayOutputStream digests = new ByteArrayOutputStream();
+				for (PartETag part : ((CompleteMultipartUploadRequest) args[0]).getPartETags()) {
+					os.write(parts.get(part.getPartNumber()));
+					digests.write(md5(parts.get(part.getPartNumber())));
+				}
+
+				object = os.toByteArray();
+				etag = toHex(md5(digests.toByteArray())) + "-" + parts.size();
+				return new CompleteMultipartUploadResult();
+			} else if (name.equals("getObjectMetadata")) {
+				ObjectMetadata result = new ObjectMetadata();
+				result.setContentLength(object.length);
+				result.setUserMetadata(metadata.getUserMetadata());
+				result.setHeader(Headers.ETAG, etag);
+				return result;
+			} else if (name.equals("getObject")) {
+				long[] range = ((GetObjectRequest) args[0]).getRange();
+				int end = (int) Math.min(range[1] + 1, object.length);
+
+				S3Object result = new S3Object();
+				result.setObjectContent(new S3ObjectInputStream(new ByteArrayInputStream(Arrays.copyOfRange(object, (int) range[0], end)), null));
+				return result;
+			} else if (name.equals("abortMultipartUpload")) {
+				return null;
+			}
+
+			throw new UnsupportedOperationException(name);
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package org.rdswitchboard.utils.neo4j.sync.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+import org.neo4j.graphdb.Label;
+import org.rdswitchboard.utils.neo4j.sync.match.SortMergeJoin;
+
+public class SortMergeJoinTest {
+	
+	public static final Label TEST_LABEL = Label.label("publication");
+	public static final Label TEST_OTHER_LABEL = Label.label("researcher");
+	public static final String TEST_KEY = "doi";
+	
+	@Test
+	public void testJoinInMemory() throws IOException {
+		testJoin(64L << 20);
+	}
+	
+	@Test
+	public void testJoinWithRuns() throws IOException {
+		// tiny budget forces every few tuples into a separate run file
+		testJoin(1024);
+	}
+	
+	private static void testJoin(long memoryBudget) throws IOException {
+		final Set<String> matches = new TreeSet<String>();
+		
+		try (SortMergeJoin join = new SortMergeJoin(Files.createTempDirectory("join_"), memoryBudget, 0)) {
+			for (int i = 0; i < 1000; ++i) {
+				join.addSource(TEST_LABEL, TEST_KEY, "10.1/" + i, i);
+				// duplicated source value must match every source node
+				if (i % 100 == 0)
+					join.addSource(TEST_LABEL, TEST_KEY, "10.1/" + i, 10000 + i);
+			}
+			
+			for (int i = 0; i < 1000; i += 10) 
+				join.addTarget(TEST_LABEL, TEST_KEY, "10.1/" + i, 20000 + i);
+			
+			// same value with other label must not match
+			join.addTarget(TEST_OTHER_LABEL, TEST_KEY, "10.1/5", 30000);
+			
+			long count = join.join(new SortMergeJoin.Listener() {
+				@Override
+				public void match(long targetId, long sourceId) {
+					matches.add(targetId + ":" + sourceId);
+				}
+			});
+
+			assertEquals("Join must report every matched pair", 
+					110, count);
+		}
+		
+		assertEquals("Join must produce unique pairs", 
+				110, matches.size());
+		assertEquals("Duplicated source values must match all source nodes", 
+				true, matches.contains("20100:10100") && matches.contains("20100:100"));
+	}
+}
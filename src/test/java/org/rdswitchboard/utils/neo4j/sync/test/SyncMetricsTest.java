@@ -0,0 +1,129 @@
+package org.rdswitchboard.utils.neo4j.sync.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.rdswitchboard.utils.neo4j.sync.metrics.Histogram;
+import org.rdswitchboard.utils.neo4j.sync.metrics.LogSampler;
+import org.rdswitchboard.utils.neo4j.sync.metrics.RunProfile;
+import org.rdswitchboard.utils.neo4j.sync.metrics.SyncMetrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class SyncMetricsTest {
+	
+	@Test
+	public void testHistogram() {
+		Histogram histogram = new Histogram();
+		assertEquals("Empty histogram should report zero", 0, histogram.getPercentile(0.5));
+		
+		for (int i = 1; i <= 10000; ++i)
+			histogram.record(i);
+		
+		assertEquals("Count should include every value", 10000, histogram.getCount());
+		assertEquals("Max should be exact", 10000, histogram.getMax());
+		assertEquals("Mean should be exact", 5000.5, histogram.getMean(), 0.001);
+		assertEquals("Median should be within 12.5%", 5000, histogram.getPercentile(0.5), 625);
+		assertEquals("p99 should be within 12.5%", 9900, histogram.getPercentile(0.99), 1238);
+		assertEquals("p100 should not exceed the max", 10000, histogram.getPercentile(1));
+		
+		Histogram small = new Histogram();
+		small.record(3);
+		small.record(7);
+		assertEquals("Small values should be exact", 3, small.getPercentile(0.5));
+		assertEquals("Small values should be exact", 7, small.getPercentile(0.99));
+	}
+	
+	@Test
+	public void testLogSampler() {
+		LogSampler info = new LogSampler(LogSampler.LEVEL_INFO, 1);
+		assertFalse("Info level should not print items", info.sample());
+		
+		LogSampler debug = new LogSampler(LogSampler.LEVEL_DEBUG, 3);
+		int printed = 0;
+		for (int i = 0; i < 30; ++i)
+			if (debug.sample())
+				++printed;
+		assertEquals("Debug level should print every third item", 10, printed);
+	}
+	
+	@Test
+	public void testProgress() {
+		SyncMetrics metrics = new SyncMetrics("target");
+		metrics.startPhase("matching");
+		assertEquals("Progress should be unknown without a position", -1, metrics.getPhaseProgress(), 0);
+		
+		metrics.setPosition(49, 200);
+		metrics.update(50, 10, 20, 1, 10);
+		metrics.matched(10);
+		metrics.lookup(2000);
+		assertEquals("Progress should be a share of the phase", 0.25, metrics.getPhaseProgress(), 0.0001);
+		
+		String progress = metrics.getProgress();
+		assertTrue("Progress line should show the phase: " + progress, progress.startsWith("Progress target [matching "));
+		assertTrue("Progress line should show counters: " + progress, progress.contains("processed 50, imported 10 nodes and 20 relationships"));
+		assertTrue("Progress line should show the ETA: " + progress, progress.contains("25% ETA"));
+		
+		metrics.startPhase("siblings");
+		metrics.startPhase(null);
+		assertEquals("Finished phases should be timed", 2, metrics.getPhaseTimes().size());
+	}
+	
+	@Test
+	public void testRunProfile() throws Exception {
+		RunProfile profile = new RunProfile(2);
+		profile.lookup("publication", "doi", 10000, 1);
+		profile.lookup("publication", "doi", 20000, 0);
+		profile.lookup("publication", "doi", 30000, 3);
+		profile.lookup("publication", "doi", 40000, 1);
+		profile.committed("matching", 1000, 4096, 5);
+		profile.committed("matching", 500, 2048, 3);
+		
+		for (int i = 1; i <= 5; ++i) {
+			assertTrue("Increasing degrees should qualify as hubs", profile.isHub(i * 10));
+			profile.hub(i, "key" + i, "publication", i * 10);
+		}
+		profile.hub(1, "key1", "publication", 100);
+		assertFalse("Hub should not qualify below the top entries", profile.isHub(40));
+		
+		Map<String, Long> phaseTimes = new LinkedHashMap<String, Long>();
+		phaseTimes.put("matching", 100L);
+		phaseTimes.put("siblings", 200L);
+		
+		Path file = Files.createTempFile("report", ".json");
+		try {
+			profile.write(file, Collections.<String, Object>singletonMap("level", 2), phaseTimes);
+			JsonNode report = new ObjectMapper().readTree(file.toFile());
+			
+			assertEquals("Run should be written", 2, report.path("run").path("level").asInt());
+			
+			JsonNode lookups = report.path("lookups").get(0);
+			assertEquals("Lookups should be counted per key", 4, lookups.path("lookups").asLong());
+			assertEquals("Hit rate should be the share of lookups with matches", 0.75, lookups.path("hit_rate").asDouble(), 0.0001);
+			assertEquals("Matches should sum the fan-out", 5, lookups.path("matches").asLong());
+			assertEquals("Fan-out distribution should count exact small values", 2, lookups.path("fan_out").path("distribution").path("1").asLong());
+			
+			JsonNode matching = report.path("phases").get(0);
+			assertEquals("Commits should be counted per phase", 2, matching.path("commits").asLong());
+			assertEquals("Committed operations should be summed", 1500, matching.path("committed_operations").asLong());
+			assertEquals("Phases without commits should be listed", 0, report.path("phases").get(1).path("commits").asLong());
+			
+			JsonNode hubs = report.path("hubs");
+			assertEquals("Only the top hubs should be kept", 2, hubs.size());
+			assertEquals("Hubs should be sorted by degree", 1, hubs.get(0).path("source_id").asLong());
+			assertEquals("Hub should keep its highest degree", 100, hubs.get(0).path("degree").asLong());
+			assertEquals("Second hub should be the next highest degree", 5, hubs.get(1).path("source_id").asLong());
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
@@ -1,32 +1,37 @@
 package org.rdswitchboard.utils.neo4j.sync.test;
 
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.HashSet;
-import java.util.Set;
-
-import org.junit.Test;
+import static org.junit.Assert.assertTrue;
 
+import java.util.List;
+import java.util.Properties;
 
+import org.junit.Assume;
+import org.junit.Test;
+import org.rdswitchboard.utils.neo4j.sync.Configuration;
+import org.rdswitchboard.utils.neo4j.sync.benchmark.SynthesisBenchmark;
+
+/**
+ * Runs the synthesis benchmark over small generated graphs.
+ * <p>
+ * The benchmark generates and synthesizes graphs of several sizes, which takes a while, 
+ * so it only runs with -Dsynthesis.benchmark=true. Any benchmark.* or sync.* system property is passed 
+ * to the benchmark, for example -Dbenchmark.baseline=benchmark.json to fail on regressions.
+ */
 public class SynthesisTest {
 
     @Test
-    public void testSynthesis() {
-
-        Path source = Paths.get("/Users/Admin/Downloads/NEXUS/R.Neo4j");
-        Path target = Paths.get("/Users/Admin/Downloads/X/R.Neo4j");
-        Set<String> keys = new HashSet<>();
-        keys.add("doi");
-        keys.add("orcid");
-        int syncLevel =3;
-
-        try {
-            org.rdswitchboard.utils.neo4j.sync.Process.synthesis(source, target, keys, syncLevel);
-
-        } catch (Exception e){
-             e.printStackTrace();
-        }
-
+    public void testSynthesis() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("synthesis.benchmark"));
+
+        Properties properties = new Properties();
+        properties.setProperty(Configuration.PROPERTY_BENCHMARK_SCALES, "0.2,1");
+        properties.setProperty(Configuration.PROPERTY_BENCHMARK_OUTPUT, "target/benchmark.json");
+        properties.setProperty(Configuration.PROPERTY_SYNC_REPORT, "target/sync-report.json");
+        for (String name : System.getProperties().stringPropertyNames())
+            if (name.startsWith("benchmark.") || name.startsWith("sync."))
+                properties.setProperty(name, System.getProperty(name));
+
+        List<String> regressions = SynthesisBenchmark.run(properties);
+        assertTrue("Throughput should not regress: " + regressions, regressions.isEmpty());
     }
-
 }
@@ -0,0 +1,85 @@
+package org.rdswitchboard.utils.neo4j.sync.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.rdswitchboard.utils.neo4j.sync.match.DiskBudget;
+import org.rdswitchboard.utils.neo4j.sync.match.TupleSorter;
+
+public class TupleSorterTest {
+
+	public static final int TEST_TUPLES = 2000;
+
+	@Test
+	public void testMultiPassMerge() throws IOException {
+		Path folder = Files.createTempDirectory("sorter_");
+		DiskBudget diskBudget = new DiskBudget(0);
+
+		List<Integer> ids = new ArrayList<Integer>();
+		for (int i = 0; i < TEST_TUPLES; ++i)
+			ids.add(i);
+		Collections.shuffle(ids, new Random(42));
+
+		// tiny budget writes a run every few tuples and merges only two runs at once
+		try (TupleSorter sorter = new TupleSorter("test", folder, 1024, diskBudget)) {
+			for (int id : ids)
+				sorter.add(String.format("key%05d", id / 2), id);
+
+			assertEquals("Tiny budget should merge two runs at once", 2, sorter.getFanIn());
+			assertTrue("Tuples should be written into many runs", sorter.getRuns() > 100);
+
+			try (TupleSorter.TupleReader reader = sorter.sort()) {
+				assertTrue("Runs should be merged down to the fan-in", sorter.getRuns() <= sorter.getFanIn());
+				assertEquals("Merged runs should be deleted", sorter.getRuns(), countFiles(folder));
+				assertEquals("Merged runs should be released from the disk budget", getSize(folder), diskBudget.getUsed());
+
+				for (int i = 0; i < TEST_TUPLES; ++i) {
+					TupleSorter.Tuple tuple = reader.next();
+					assertEquals("Tuples should be ordered by key", String.format("key%05d", i / 2), tuple.getKey());
+					assertEquals("Tuples should be ordered by id", i, tuple.getId());
+				}
+
+				assertNull("Every tuple should be read once", reader.next());
+			}
+		}
+
+		assertEquals("Runs should be deleted", 0, countFiles(folder));
+	}
+
+	@Test
+	public void testFanIn() {
+		assertEquals("Every merged run should take about 192 KB of the budget",
+				(64 << 20) / (192 << 10) - 2, new TupleSorter("test", null, 64 << 20, new DiskBudget(0)).getFanIn());
+	}
+
+	private static int countFiles(Path folder) throws IOException {
+		int files = 0;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+			for (Path ignored : stream)
+				++files;
+		}
+
+		return files;
+	}
+
+	private static long getSize(Path folder) throws IOException {
+		long size = 0;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+			for (Path file : stream)
+				size += Files.size(file);
+		}
+
+		return size;
+	}
+}
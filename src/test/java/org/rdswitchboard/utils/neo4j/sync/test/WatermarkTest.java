@@ -0,0 +1,170 @@
+package org.rdswitchboard.utils.neo4j.sync.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.rdswitchboard.utils.neo4j.sync.incremental.Watermark;
+import org.rdswitchboard.utils.neo4j.sync.normalize.Normalizers;
+
+public class WatermarkTest {
+	private static final Label PUBLICATION = Label.label("publication");
+	private static final Label RESEARCHER = Label.label("researcher");
+	private static final RelationshipType RELATED_TO = RelationshipType.withName("relatedTo");
+
+	private Path folder;
+	private File store;
+	private GraphDatabaseService graphDb;
+
+	private long publicationId;
+	private long researcherId;
+	private long undatedId;
+
+	@Before
+	public void setUp() throws IOException {
+		folder = Files.createTempDirectory("watermark_");
+		store = folder.resolve("graph.db").toFile();
+		graphDb = new GraphDatabaseFactory().newEmbeddedDatabase(store);
+
+		try (Transaction tx = graphDb.beginTx()) {
+			Node publication = createNode(PUBLICATION, "publication/1");
+			publication.setProperty("last_updated", "30/06/2016");
+			publication.setProperty("doi", new String[] { "10.1/a", "10.1/b" });
+
+			Node researcher = createNode(RESEARCHER, "researcher/1");
+			researcher.setProperty("last_updated", "30/06/2016");
+			publication.createRelationshipTo(researcher, RELATED_TO);
+
+			Node undated = createNode(RESEARCHER, "researcher/2");
+
+			publicationId = publication.getId();
+			researcherId = researcher.getId();
+			undatedId = undated.getId();
+			tx.success();
+		}
+	}
+
+	@After
+	public void tearDown() {
+		graphDb.shutdown();
+	}
+
+	@Test
+	public void testReadWrite() throws IOException {
+		Path file = Watermark.getFile(folder);
+		assertNull("Database without a watermark should not have one", Watermark.read(file));
+
+		Watermark watermark = createWatermark();
+		watermark.write(file);
+
+		Watermark read = Watermark.read(file);
+		assertEquals("Sync time should be stored", watermark.getSyncedAt().getMillis(), read.getSyncedAt().getMillis());
+		assertArrayEquals("Target fingerprints should be stored", watermark.getTargetNodes(), read.getTargetNodes());
+		assertArrayEquals("Source fingerprints should be stored", watermark.getSourceNodes(), read.getSourceNodes());
+
+		try (Transaction ignored = graphDb.beginTx()) {
+			int nodes = 0;
+			for (Node node : graphDb.getAllNodes()) {
+				assertFalse("Stored watermark should not report changes", read.isTargetChanged(node));
+				++nodes;
+			}
+
+			assertEquals("Watermark should not be stored in the graph", 3, nodes);
+		}
+	}
+
+	@Test
+	public void testPropertyChange() {
+		Watermark watermark = createWatermark();
+
+		try (Transaction tx = graphDb.beginTx()) {
+			// normalized copies are written by the run itself
+			graphDb.getNodeById(publicationId).setProperty(Normalizers.SHADOW_PREFIX + "doi", "10.1/a");
+			assertFalse("Shadow properties should not change the node", watermark.isSourceChanged(graphDb.getNodeById(publicationId)));
+
+			graphDb.getNodeById(undatedId).setProperty("full_name", "Smith, John");
+			assertTrue("Undated node should be changed by its properties", watermark.isTargetChanged(graphDb.getNodeById(undatedId)));
+
+			graphDb.getNodeById(publicationId).setProperty("doi", new String[] { "10.1/a", "10.1/c" });
+			assertTrue("Array element change should change the node", watermark.isTargetChanged(graphDb.getNodeById(publicationId)));
+
+			graphDb.getNodeById(researcherId).addLabel(PUBLICATION);
+			assertTrue("Label change should change the node", watermark.isTargetChanged(graphDb.getNodeById(researcherId)));
+			tx.success();
+		}
+	}
+
+	@Test
+	public void testRelationshipChange() {
+		Watermark watermark = createWatermark();
+
+		try (Transaction tx = graphDb.beginTx()) {
+			graphDb.getNodeById(researcherId).createRelationshipTo(graphDb.getNodeById(undatedId), RELATED_TO);
+
+			assertTrue("Start of a new relationship should be changed", watermark.isTargetChanged(graphDb.getNodeById(researcherId)));
+			assertTrue("End of a new relationship should be changed", watermark.isTargetChanged(graphDb.getNodeById(undatedId)));
+			assertFalse("Other nodes should not be changed", watermark.isTargetChanged(graphDb.getNodeById(publicationId)));
+
+			graphDb.getNodeById(publicationId).getSingleRelationship(RELATED_TO, Direction.OUTGOING).delete();
+			assertTrue("End of a deleted relationship should be changed", watermark.isTargetChanged(graphDb.getNodeById(publicationId)));
+			tx.success();
+		}
+	}
+
+	@Test
+	public void testReusedId() {
+		Watermark watermark = createWatermark();
+
+		try (Transaction tx = graphDb.beginTx()) {
+			graphDb.getNodeById(undatedId).delete();
+			tx.success();
+		}
+
+		// ids of deleted nodes are reused after a restart
+		graphDb.shutdown();
+		graphDb = new GraphDatabaseFactory().newEmbeddedDatabase(store);
+
+		try (Transaction tx = graphDb.beginTx()) {
+			Node created = createNode(RESEARCHER, "researcher/3");
+			Node added = createNode(RESEARCHER, "researcher/4");
+
+			assertEquals("New node should reuse the deleted id", undatedId, created.getId());
+			assertTrue("Node reusing a deleted id should be changed", watermark.isTargetChanged(created));
+			assertTrue("Node with a new id should be changed", watermark.isTargetChanged(added));
+			assertFalse("Other nodes should not be changed", watermark.isTargetChanged(graphDb.getNodeById(researcherId)));
+			tx.success();
+		}
+	}
+
+	private Watermark createWatermark() {
+		try (Transaction ignored = graphDb.beginTx()) {
+			int[] fingerprints = Watermark.getFingerprints(graphDb);
+			return new Watermark(DateTime.now(), fingerprints, fingerprints.clone());
+		}
+	}
+
+	private Node createNode(Label label, String key) {
+		Node node = graphDb.createNode(label);
+		node.setProperty("key", key);
+
+		return node;
+	}
+}